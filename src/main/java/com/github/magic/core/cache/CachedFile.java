@@ -0,0 +1,235 @@
+package com.github.magic.core.cache;
+
+import com.github.magic.core.encoder.Encoder;
+import com.github.magic.core.models.header.PreEncodedHeader;
+import com.github.magic.core.utils.FileAttributeRetriever;
+import com.github.magic.core.utils.HttpDateClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A static file held in memory by the {@link StaticFileCache}, along with the headers describing it, rendered once when the file is loaded.
+ * Small files are copied on the heap, and their compressed variants are built on first use and kept with the file.
+ * Large files are memory-mapped instead, their content stays off-heap (in the page cache) and is sent as is.</p>
+ * <br>
+ * <p>Entries are reference counted: {@link StaticFileCache#get(String)} retains the entry, which must be {@link #release() released}
+ * once the response is sent. A mapped file is only unmapped once it's out of the cache and no response uses it anymore</p>
+ */
+public final class CachedFile {
+    //Unsafe.invokeCleaner() unmaps a buffer right away instead of waiting for the GC. Looked up reflectively, null if unavailable
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    private final StaticFileCache cache;
+
+    private final File file;
+    private final long modified;
+    private final int length;
+
+    //Exactly one of them is set
+    private final byte[] content;
+    private final MappedByteBuffer mapping;
+
+    //One reference held by the cache itself, plus one per response using the file
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private final String mimeType;
+    private final String lastModified;
+    private final String etag;
+
+    private final PreEncodedHeader contentTypeHeader;
+    private final PreEncodedHeader lastModifiedHeader;
+    private final PreEncodedHeader etagHeader;
+
+    //Compressed content by encoding name
+    private final Map<String, byte[]> variants = new ConcurrentHashMap<>();
+
+    //Access tick of the last hit, used to find the least recently used entry
+    volatile long lastAccess;
+
+    //Bytes held by this entry (content and variants, or the mapping), guarded by the cache's eviction lock
+    long weight;
+
+    CachedFile(StaticFileCache cache, File file, byte[] content, long modified) {
+        this(cache, file, content, null, content.length, modified);
+    }
+
+    CachedFile(StaticFileCache cache, File file, MappedByteBuffer mapping, long modified) {
+        this(cache, file, null, mapping, mapping.capacity(), modified);
+    }
+
+    private CachedFile(StaticFileCache cache, File file, byte[] content, MappedByteBuffer mapping, int length, long modified) {
+        this.cache = cache;
+        this.file = file;
+        this.content = content;
+        this.mapping = mapping;
+        this.length = length;
+        this.modified = modified;
+        this.weight = length;
+
+        this.mimeType = FileAttributeRetriever.getMimeType(file);
+        this.lastModified = HttpDateClock.format(modified);
+        this.etag = StaticFileCache.etag(length, modified, null);
+
+        this.contentTypeHeader = new PreEncodedHeader("Content-Type", mimeType + ";charset=utf-8");
+        this.lastModifiedHeader = new PreEncodedHeader("Last-Modified", lastModified);
+        this.etagHeader = new PreEncodedHeader("ETag", etag);
+    }
+
+    /**
+     * @return {@code true} if the content is memory-mapped rather than held on the heap
+     */
+    public boolean isMapped() {
+        return mapping != null;
+    }
+
+    /**
+     * Get part of the content, without copying it
+     *
+     * @param offset the index of the first byte
+     * @param count the number of bytes
+     * @return a view of the content, which must not be modified, only valid until the file is released
+     */
+    public ByteBuffer slice(int offset, int count) {
+        //The mapping itself is read-only, heap content is wrapped as is so that its array can be handed to streams
+        return mapping != null
+                ? mapping.duplicate().position(offset).limit(offset + count)
+                : ByteBuffer.wrap(content, offset, count);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the file on the disk
+     */
+    public File file() {
+        return file;
+    }
+
+    public String mimeType() {
+        return mimeType;
+    }
+
+    public String lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param encoding the encoding the content is sent with, {@code null} for identity content
+     * @return the entity tag of the content
+     */
+    public String etag(String encoding) {
+        return encoding == null ? etag : StaticFileCache.etag(length, modified, encoding);
+    }
+
+    public PreEncodedHeader contentTypeHeader() {
+        return contentTypeHeader;
+    }
+
+    public PreEncodedHeader lastModifiedHeader() {
+        return lastModifiedHeader;
+    }
+
+    /**
+     * @return the "ETag" header of the identity content
+     */
+    public PreEncodedHeader etagHeader() {
+        return etagHeader;
+    }
+
+    /**
+     * Get the content compressed with the given encoder. The precompressed sidecar of the file is used if there's an up-to-date one,
+     * the content is compressed otherwise. Either way, it's only done once
+     *
+     * @param encoder the encoder of the accepted encoding
+     * @return the compressed content, which must not be modified
+     * @throws IOException i/o error when reading the sidecar or compressing the content
+     * @throws IllegalStateException for mapped files, which are too large to be compressed in memory
+     */
+    public byte[] encoded(Encoder encoder) throws IOException {
+        if (mapping != null)
+            throw new IllegalStateException("Mapped files are sent as is");
+
+        String encoding = encoder.toString();
+        byte[] variant = variants.get(encoding);
+
+        if (variant != null)
+            return variant;
+
+        File sidecar = CompressedFileCache.sidecar(file, encoding);
+
+        variant = sidecar != null && sidecar.length() <= cache.maximumEntrySize()
+                ? Files.readAllBytes(sidecar.toPath())
+                : encoder.encode(content, content.length);
+
+        byte[] previous = variants.putIfAbsent(encoding, variant);
+
+        if (previous != null)
+            return previous;
+
+        cache.charge(this, variant.length);
+        return variant;
+    }
+
+    /**
+     * @return the modification time of the file when it was loaded
+     */
+    public long modified() {
+        return modified;
+    }
+
+    /**
+     * Take a reference on the file, so that it stays valid even if it's evicted in the meantime
+     *
+     * @return {@code false} if the file has already been dropped, in which case it must not be used
+     */
+    boolean retain() {
+        int count;
+
+        do {
+            if ((count = references.get()) <= 0)
+                return false;
+        } while (!references.compareAndSet(count, count + 1));
+
+        return true;
+    }
+
+    /**
+     * Give back a reference taken by {@link StaticFileCache#get(String)}. The last release of a mapped file unmaps it
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0 && mapping != null && INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invokeExact((ByteBuffer) mapping);
+            } catch (Throwable ignored) {
+                //Unmapped by the GC later on
+            }
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.magic.core.cache;
+
+import com.github.magic.core.config.Config;
+import com.github.magic.core.encoder.Encoder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Compressed variants of the static files, so that a file is compressed once rather than on every request accepting an encoding.</p>
+ * <br>
+ * <p>A precompressed sidecar next to the file ({@code app.js.gz}, {@code app.js.deflate}) is preferred when it's at least as recent as the file.
+ * Otherwise, the file is compressed in memory and the result kept in a bounded LRU cache (see {@link Config#COMPRESSED_CACHE_SIZE}),
+ * keyed by path and encoding. Entries are checked against the file's modification time and length, a changed file is simply compressed again</p>
+ */
+public final class CompressedFileCache {
+    private static final Map<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    //Bytes of compressed content held by the entries, guarded by the entries map
+    private static long cachedBytes;
+
+    private CompressedFileCache() {}
+
+    /**
+     * Find the precompressed sidecar of the file for the given encoding
+     *
+     * @param file the requested file
+     * @param encoding the encoding accepted by the client ("gzip" or "deflate")
+     * @return the sidecar, or {@code null} if there's none or it's older than the file
+     */
+    public static File sidecar(File file, String encoding) {
+        String extension = switch (encoding) {
+            case "gzip" -> ".gz";
+            case "deflate" -> ".deflate";
+            default -> null;
+        };
+
+        if (extension == null)
+            return null;
+
+        File sidecar = new File(file.getPath() + extension);
+
+        //lastModified() is 0 for missing files
+        long modified = sidecar.lastModified();
+
+        return modified != 0 && modified >= file.lastModified() && sidecar.isFile() && sidecar.canRead() ? sidecar : null;
+    }
+
+    /**
+     * Get the file compressed with the given encoder, compressing (and caching) it if no up-to-date variant is cached yet
+     *
+     * @param file the file, which must fit in memory
+     * @param encoder the encoder of the accepted encoding
+     * @return the compressed content, which must not be modified
+     * @throws IOException i/o error when reading or compressing the file
+     */
+    public static byte[] compressed(File file, Encoder encoder) throws IOException {
+        Key key = new Key(file.getPath(), encoder.toString());
+        long modified = file.lastModified();
+        long length = file.length();
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+
+            if (entry != null && entry.modified() == modified && entry.length() == length)
+                return entry.content();
+        }
+
+        //Compressed outside the lock, two threads missing at once only waste one compression
+        byte[] content;
+
+        try (FileInputStream iStream = new FileInputStream(file)) {
+            byte[] raw = iStream.readAllBytes();
+            content = encoder.encode(raw, raw.length);
+        }
+
+        if (content.length <= Config.COMPRESSED_CACHE_SIZE / 8) {
+            synchronized (entries) {
+                Entry previous = entries.put(key, new Entry(modified, length, content));
+
+                if (previous != null)
+                    cachedBytes -= previous.content().length;
+
+                cachedBytes += content.length;
+                evict();
+            }
+        }
+
+        return content;
+    }
+
+    /**
+     * Drop every cached variant
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /**
+     * Drop the least recently used entries until the cache fits its size again
+     */
+    private static void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (cachedBytes > Config.COMPRESSED_CACHE_SIZE && iterator.hasNext()) {
+            cachedBytes -= iterator.next().content().length;
+            iterator.remove();
+        }
+    }
+
+    private record Key(String path, String encoding) {}
+
+    private record Entry(long modified, long length, byte[] content) {}
+}
@@ -0,0 +1,432 @@
+package com.github.magic.core.cache;
+
+import com.github.magic.core.config.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>In-memory cache of the small static files, so that serving a hot asset doesn't touch the file system at all.</p>
+ * <br>
+ * <p>Files up to {@link Config#STATIC_CACHE_ENTRY_SIZE} bytes are loaded on their first request, the cache holds at most
+ * {@link Config#STATIC_CACHE_SIZE} bytes (content and compressed variants), evicting the least recently used files past that.
+ * Larger files are memory-mapped, up to {@link Config#MAPPED_CACHE_SIZE} bytes of mappings (evicted the same way), which keeps them
+ * out of the Java heap while still serving them from the page cache.</p>
+ * <br>
+ * <p>Since hits don't check the file anymore, entries are invalidated by a {@link WatchService} on the root directory instead.
+ * If the directory can't be watched, the cache stays disabled and every request goes to the file system</p>
+ */
+public final class StaticFileCache {
+    //Files looked at to find the one to evict
+    private static final int EVICTION_SAMPLE = 8;
+
+    private static volatile StaticFileCache shared;
+
+    private final Path root;
+    private final long maximumSize;
+    private final int maximumEntrySize;
+    private final long maximumMappedSize;
+
+    private final Map<String, CachedFile> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong accessClock = new AtomicLong();
+
+    //Incremented on every invalidation, a file read while it changes isn't kept
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+    private long cachedBytes;
+    private long mappedBytes;
+
+    //Where the eviction sweep resumes, so that every file is eventually looked at
+    private Iterator<CachedFile> sweep;
+
+    //null if the root can't be watched, in which case nothing is cached
+    private final WatchService watchService;
+
+    //Cleared once the watcher stops, hits can't be trusted past that point
+    private volatile boolean watching;
+
+    /**
+     * @param root the directory of the cached files
+     * @param maximumSize the maximum bytes held by the cache
+     * @param maximumEntrySize the size of the largest file to be cached
+     */
+    public StaticFileCache(Path root, long maximumSize, int maximumEntrySize) {
+        this(root, maximumSize, maximumEntrySize, 0);
+    }
+
+    /**
+     * @param root the directory of the cached files
+     * @param maximumSize the maximum bytes held on the heap by the cache
+     * @param maximumEntrySize the size of the largest file to be held on the heap
+     * @param maximumMappedSize the maximum bytes of the larger files to be memory-mapped, 0 to only cache small files
+     */
+    public StaticFileCache(Path root, long maximumSize, int maximumEntrySize, long maximumMappedSize) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maximumSize = maximumSize;
+        this.maximumEntrySize = maximumEntrySize;
+        this.maximumMappedSize = maximumMappedSize;
+        this.watchService = startWatching();
+    }
+
+    /**
+     * @return the cache of the {@link Config#STATIC_DIR} directory
+     */
+    public static StaticFileCache shared() {
+        StaticFileCache cache = shared;
+
+        if (cache == null) {
+            synchronized (StaticFileCache.class) {
+                if ((cache = shared) == null)
+                    shared = cache = new StaticFileCache(Path.of(Config.STATIC_DIR), Config.STATIC_CACHE_SIZE, Config.STATIC_CACHE_ENTRY_SIZE, Config.MAPPED_CACHE_SIZE);
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Build the entity tag of a file, from its length and modification time. The tag of the identity content is strong, the tags of compressed
+     * content are weak: the bytes depend on how the content got compressed (sidecar, compression level), only their meaning is the same
+     *
+     * @param length the length of the file
+     * @param modified the modification time of the file
+     * @param encoding the encoding the content is sent with, {@code null} for identity content
+     * @return the entity tag, quoted
+     */
+    public static String etag(long length, long modified, String encoding) {
+        String tag = '"' + Long.toHexString(length) + '-' + Long.toHexString(modified);
+
+        return encoding == null ? tag + '"' : "W/" + tag + '-' + encoding + '"';
+    }
+
+    /**
+     * Get the cached file, loading it if it's not cached yet. The file is retained, and must be {@link CachedFile#release() released} once sent
+     *
+     * @param path the path of the file, relative to the root directory
+     * @return the cached file, or {@code null} if it isn't a readable regular file, or is too large to be cached
+     */
+    public CachedFile get(String path) {
+        if (!watching)
+            return null;
+
+        String key;
+
+        try {
+            key = root.resolve(path.startsWith("/") ? path.substring(1) : path).normalize().toString();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+
+        CachedFile cached = entries.get(key);
+
+        if (cached == null) {
+            try {
+                cached = load(key);
+            } catch (IOException e) {
+                if (Config.SHOW_ERROR) System.err.println("[-] Failed to cache " + key + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        //Dropped right after being looked up, the file system is used this time
+        if (cached == null || !cached.retain())
+            return null;
+
+        cached.lastAccess = accessClock.incrementAndGet();
+        return cached;
+    }
+
+    /**
+     * Drop every cached file
+     */
+    public void clear() {
+        invalidations.incrementAndGet();
+
+        synchronized (evictionLock) {
+            entries.values().forEach(CachedFile::release);
+            entries.clear();
+            cachedBytes = 0;
+            mappedBytes = 0;
+        }
+    }
+
+    /**
+     * Stop watching the root directory, every later request goes to the file system
+     */
+    public void close() {
+        watching = false;
+
+        if (watchService == null)
+            return;
+
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * @return the bytes currently held on the heap by the cache
+     */
+    public long size() {
+        synchronized (evictionLock) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * @return the bytes of the files currently mapped by the cache
+     */
+    public long mappedSize() {
+        synchronized (evictionLock) {
+            return mappedBytes;
+        }
+    }
+
+    int maximumEntrySize() {
+        return maximumEntrySize;
+    }
+
+    /**
+     * Account for bytes added to a cached file (e.g. a compressed variant), evicting other files if needed
+     */
+    void charge(CachedFile cached, long bytes) {
+        synchronized (evictionLock) {
+            if (entries.get(cached.file().getPath()) != cached)
+                return;
+
+            cached.weight += bytes;
+            cachedBytes += bytes;
+            evict(false);
+        }
+    }
+
+    private CachedFile load(String key) throws IOException {
+        File file = new File(key);
+
+        //Hidden files and directories are handled (and refused) by the regular file path. The root is compared by path elements, a sibling
+        //directory sharing its name as a prefix (e.g. /srv/www-private for /srv/www) isn't under it
+        if (!Path.of(key).startsWith(root)
+                || !file.isFile()
+                || file.isHidden()
+                || file.getName().startsWith(".")
+                || !file.canRead())
+            return null;
+
+        long length = file.length();
+        boolean mapped = length > maximumEntrySize;
+
+        //A single mapping can't exceed 2GB
+        if (mapped && length > Math.min(maximumMappedSize, Integer.MAX_VALUE))
+            return null;
+
+        long invalidation = invalidations.get();
+        long modified = file.lastModified();
+        CachedFile cached;
+
+        if (mapped) {
+            try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer mapping = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                cached = new CachedFile(this, file, mapping, modified);
+            }
+        } else {
+            cached = new CachedFile(this, file, Files.readAllBytes(file.toPath()), modified);
+        }
+
+        //Modified while being read, not worth caching
+        if (cached.length() != length || file.lastModified() != modified) {
+            cached.release();
+            return null;
+        }
+
+        //Most recently used already, so that making room for it doesn't evict it
+        cached.lastAccess = accessClock.incrementAndGet();
+
+        synchronized (evictionLock) {
+            CachedFile previous = entries.putIfAbsent(key, cached);
+
+            if (previous != null) {
+                cached.release();
+                return previous;
+            }
+
+            if (mapped)
+                mappedBytes += cached.weight;
+            else
+                cachedBytes += cached.weight;
+
+            evict(mapped);
+        }
+
+        //Something changed under the root since the file was read, the event might have been about this file
+        if (invalidations.get() != invalidation && (file.lastModified() != modified || file.length() != length))
+            invalidate(key);
+
+        return cached;
+    }
+
+    /**
+     * Drop the least recently used files of a tier until it fits its size again. Each time, the oldest of the next few files of the tier,
+     * in a sweep through the entries, is dropped, so that the cost doesn't grow with the number of files. Must be called with the eviction lock held
+     *
+     * @param mapped {@code true} for the mapped tier, {@code false} for the heap one
+     */
+    private void evict(boolean mapped) {
+        while (mapped ? mappedBytes > maximumMappedSize : cachedBytes > maximumSize) {
+            CachedFile oldest = null;
+            int sampled = 0;
+
+            //At most one round of the sweep, the tier may have fewer files than the sample
+            for (int scanned = 0, count = entries.size(); sampled < EVICTION_SAMPLE && scanned <= count; scanned++) {
+                if (sweep == null || !sweep.hasNext())
+                    sweep = entries.values().iterator();
+
+                if (!sweep.hasNext())
+                    break;
+
+                CachedFile cached = sweep.next();
+
+                if (cached.isMapped() != mapped)
+                    continue;
+
+                sampled++;
+
+                if (oldest == null || cached.lastAccess < oldest.lastAccess)
+                    oldest = cached;
+            }
+
+            if (oldest == null)
+                return;
+
+            //The sweep may still hand out files removed since it started
+            if (entries.remove(oldest.file().getPath(), oldest))
+                drop(oldest);
+        }
+    }
+
+    /**
+     * Account for a file removed from the entries, and give back the cache's reference on it. Must be called with the eviction lock held
+     */
+    private void drop(CachedFile cached) {
+        if (cached.isMapped())
+            mappedBytes -= cached.weight;
+        else
+            cachedBytes -= cached.weight;
+
+        cached.release();
+    }
+
+    /**
+     * Drop the file at the given path, or every file under it if it's a directory. Changing a sidecar drops the file it belongs to
+     */
+    private void invalidate(String path) {
+        invalidations.incrementAndGet();
+
+        String directoryPrefix = path + File.separator;
+
+        synchronized (evictionLock) {
+            entries.entrySet().removeIf(entry -> {
+                String key = entry.getKey();
+                boolean stale = key.equals(path)
+                        || key.startsWith(directoryPrefix)
+                        || path.equals(key + ".gz")
+                        || path.equals(key + ".deflate");
+
+                if (stale)
+                    drop(entry.getValue());
+
+                return stale;
+            });
+        }
+    }
+
+    private WatchService startWatching() {
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+
+            register(service, root);
+
+            watching = true;
+
+            Thread watcher = new Thread(() -> watch(service), "static-file-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+
+            return service;
+        } catch (IOException e) {
+            if (Config.SHOW_ERROR) System.err.println("[-] Unable to watch " + root + ", static files won't be cached: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Watch the directory and all of its subdirectories (a watch key only reports the direct children of its directory)
+     */
+    private static void register(WatchService service, Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(service,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path directory = (Path) key.watchable();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    //Events were lost, anything may have changed
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        clear();
+                        continue;
+                    }
+
+                    Path child = directory.resolve((Path) event.context());
+                    invalidate(child.toString());
+
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                        try {
+                            register(service, child);
+                        } catch (IOException e) {
+                            if (Config.SHOW_ERROR) System.err.println("[-] Unable to watch " + child + ": " + e.getMessage());
+                        }
+                    }
+                }
+
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            //Cache closed, hits can't be trusted anymore
+            watching = false;
+            clear();
+        }
+    }
+}
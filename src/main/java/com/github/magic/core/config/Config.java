@@ -44,14 +44,43 @@ public final class Config {
 
     public static final int ENCODER_BUFFER_SIZE = (1 << 15); //8192 bytes
 
+    //Compression level of the encoders, from 1 (fastest) to 9 (smallest output). Anything else falls back to zlib's default (6)
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("compressionLevel", 6);
+
     //Threshold used to determine whether an uncompressed file should be compressed based on its size
     public static final int COMPRESS_THRESHOLD = (1 << 15); //32768 bytes
 
+    //Maximum bytes of compressed static files kept in memory (see CompressedFileCache)
+    public static final int COMPRESSED_CACHE_SIZE = (1 << 25); //33554432 bytes
+
     //Maximum bytes of content sent by server (If the file exceeds this number it'll be sent in chunk-based approach)
     public static final int BODY_BUFFER_SIZE = (1 << 20); //1048576 bytes
 
     public static final int MAXIMUM_CHUNK_SIZE = (1 << 16); //65536 bytes
 
+    //Default maximum bytes of a request body (see ServerConfig#setMaximumRequestBodySize)
+    public static final long MAXIMUM_REQUEST_BODY_SIZE = Long.getLong("maxRequestBodySize", 1L << 24); //16777216 bytes
+
+
+    ////////////////////////////////////////
+    // Caching config                     //
+    ////////////////////////////////////////
+
+    //Maximum bytes of static files (and their compressed variants) held in memory by the StaticFileCache
+    public static final long STATIC_CACHE_SIZE = (1 << 26); //67108864 bytes
+
+    //Static files larger than this aren't copied on the heap
+    public static final int STATIC_CACHE_ENTRY_SIZE = (1 << 18); //262144 bytes
+
+    //Maximum bytes of the larger static files kept memory-mapped (off-heap) by the StaticFileCache, 0 disables the mapped tier
+    public static final long MAPPED_CACHE_SIZE = Long.getLong("mappedCacheSize", 1L << 30); //1073741824 bytes
+
+    //Maximum bytes of response bodies held by a ResponseCache middleware
+    public static final long RESPONSE_CACHE_SIZE = (1 << 24); //16777216 bytes
+
+    //Time to live of a cached response, when the handler doesn't set its own max-age
+    public static final int RESPONSE_CACHE_MAX_AGE = 60; //seconds
+
 
     ////////////////////////////////////////
     // MISC config                        //
@@ -63,5 +92,11 @@ public final class Config {
     //Toggle dump error to err stream behavior
     public static final boolean SHOW_ERROR = Boolean.parseBoolean(System.getProperty("error") )|| Boolean.parseBoolean(System.getenv("error")) ;
 
+    //Toggle reporting of pooled buffers that are garbage collected without being released (debugging only, costs a stack trace per acquisition)
+    public static final boolean BUFFER_LEAK_DETECTION = Boolean.parseBoolean(System.getProperty("leakDetection")) || Boolean.parseBoolean(System.getenv("leakDetection"));
+
+    //Match the regex of the routes in linear time (see LinearRegex), java.util.regex is then only used for the constructs it doesn't support
+    public static final boolean LINEAR_ROUTE_REGEX = Boolean.parseBoolean(System.getProperty("linearRouteRegex", "true"));
+
     public static final int JAVA_VERSION = VersionFinder.getJavaMajorVersion();
 }
\ No newline at end of file
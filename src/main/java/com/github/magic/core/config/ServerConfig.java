@@ -1,5 +1,8 @@
 package com.github.magic.core.config;
 
+import com.github.magic.core.consts.ExecutionMode;
+import com.github.magic.core.consts.ServingMode;
+
 import java.io.File;
 import java.net.InetSocketAddress;
 
@@ -21,7 +24,22 @@ public class ServerConfig {
 
     //Default host IP (bind to everything)
     private InetSocketAddress hostIp = new InetSocketAddress("localhost", 80);
-    
+
+    //How the connections are accepted and read, see ServingMode for the available options
+    private ServingMode servingMode = ServingMode.BLOCKING;
+
+    //The number of selector threads used in REACTOR serving mode (int)
+    private int eventLoopCount = Runtime.getRuntime().availableProcessors();
+
+    //Which kind of thread runs the transactions, see ExecutionMode for the available options
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_POOL;
+
+    //Concurrent identical GET requests wait for the first one and share its response instead of all calling the handler (boolean)
+    private boolean requestCoalescing = false;
+
+    //Longest request body accepted, larger ones are answered with 413 Content Too Large (bytes)
+    private long maximumRequestBodySize = Config.MAXIMUM_REQUEST_BODY_SIZE;
+
     public int getThreadTimeoutDuration() {
         return threadTimeoutDuration;
     }
@@ -70,5 +88,45 @@ public class ServerConfig {
         this.hostIp = hostIp;
     }
 
+    public ServingMode getServingMode() {
+        return servingMode;
+    }
+
+    public void setServingMode(ServingMode servingMode) {
+        this.servingMode = servingMode;
+    }
+
+    public int getEventLoopCount() {
+        return eventLoopCount;
+    }
+
+    public void setEventLoopCount(int eventLoopCount) {
+        this.eventLoopCount = eventLoopCount;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    public void setRequestCoalescing(boolean requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    public long getMaximumRequestBodySize() {
+        return maximumRequestBodySize;
+    }
+
+    public void setMaximumRequestBodySize(long maximumRequestBodySize) {
+        this.maximumRequestBodySize = maximumRequestBodySize;
+    }
+
     
 }
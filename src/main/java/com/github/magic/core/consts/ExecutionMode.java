@@ -0,0 +1,9 @@
+package com.github.magic.core.consts;
+
+public enum ExecutionMode {
+    //Transactions are run by the bounded TimeoutThreadPool (platform threads)
+    PLATFORM_POOL,
+
+    //Every transaction gets its own virtual thread (requires Java 21+, falls back to PLATFORM_POOL otherwise)
+    VIRTUAL_THREAD
+}
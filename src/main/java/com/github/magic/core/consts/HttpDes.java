@@ -1,5 +1,6 @@
 package com.github.magic.core.consts;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public class HttpDes {
@@ -37,4 +38,35 @@ public class HttpDes {
         statuses[504] = "Gateway Timeout";
         statuses[505] = "HTTP Version Not Supported";
     }
+
+    //Pre-encoded status lines (e.g. "HTTP/1.1 200 OK" followed by CRLF), indexed by status code
+    private static final byte[][] STATUS_LINES_1_1 = new byte[statuses.length][];
+    private static final byte[][] STATUS_LINES_1_0 = new byte[statuses.length][];
+
+    static {
+        for (int status = 100; status < statuses.length; status++) {
+            STATUS_LINES_1_1[status] = encodeStatusLine("1.1", status);
+            STATUS_LINES_1_0[status] = encodeStatusLine("1.0", status);
+        }
+    }
+
+    /**
+     * Get the status line of a response, including the trailing CRLF. The lines of HTTP/1.1 and HTTP/1.0 are encoded once at startup
+     *
+     * @param version the protocol version, without the "HTTP/" prefix
+     * @param status the http status code
+     * @return the encoded status line, which must not be modified
+     */
+    public static byte[] statusLine(String version, int status) {
+        byte[] line = null;
+
+        if ("1.1".equals(version)) line = STATUS_LINES_1_1[status];
+        else if ("1.0".equals(version)) line = STATUS_LINES_1_0[status];
+
+        return line != null ? line : encodeStatusLine(version, status);
+    }
+
+    private static byte[] encodeStatusLine(String version, int status) {
+        return ("HTTP/" + version + " " + status + " " + statuses[status] + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
 }
@@ -0,0 +1,9 @@
+package com.github.magic.core.consts;
+
+public enum ServingMode {
+    //One thread from the pool is held for the whole lifetime of each connection (blocking accept + blocking read)
+    BLOCKING,
+
+    //Connections are multiplexed over a few selector-based event loops, the pool only serves fully read requests
+    REACTOR
+}
@@ -0,0 +1,82 @@
+package com.github.magic.core.encoder;
+
+import com.github.magic.core.config.Config;
+import com.github.magic.core.utils.VirtualThreads;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Reusable {@link Deflater} instances. Every deflater holds native memory, creating (and ending) one per response costs more than
+ * compressing a small body, so they're reset and handed out again instead.</p>
+ * <br>
+ * <p>Each platform thread keeps one deflater of each kind (zlib and raw), virtual threads and nested uses go through a bounded shared queue</p>
+ */
+final class DeflaterPool {
+    private static final int LEVEL = (Config.COMPRESSION_LEVEL >= Deflater.BEST_SPEED && Config.COMPRESSION_LEVEL <= Deflater.BEST_COMPRESSION)
+            ? Config.COMPRESSION_LEVEL
+            : Deflater.DEFAULT_COMPRESSION;
+
+    //Deflaters kept in the shared queue of each kind, the others are ended
+    private static final int SHARED_LIMIT = Runtime.getRuntime().availableProcessors() * 4;
+
+    //Index 0 holds the zlib deflater, index 1 the raw one (used by gzip)
+    private static final ThreadLocal<Deflater[]> THREAD_CACHE = ThreadLocal.withInitial(() -> new Deflater[2]);
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Queue<Deflater>[] SHARED = new Queue[]{new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>()};
+    private static final AtomicInteger[] SHARED_COUNTS = {new AtomicInteger(), new AtomicInteger()};
+
+    private DeflaterPool() {}
+
+    /**
+     * @param nowrap {@code true} for a raw deflater (no zlib header nor checksum)
+     * @return a deflater ready to compress a new stream, to be given back with {@link #release(Deflater, boolean)}
+     */
+    static Deflater acquire(boolean nowrap) {
+        int kind = nowrap ? 1 : 0;
+        Deflater deflater = null;
+
+        if (!VirtualThreads.isCurrent()) {
+            Deflater[] cache = THREAD_CACHE.get();
+
+            deflater = cache[kind];
+            cache[kind] = null;
+        }
+
+        if (deflater == null && (deflater = SHARED[kind].poll()) != null)
+            SHARED_COUNTS[kind].decrementAndGet();
+
+        return deflater != null ? deflater : new Deflater(LEVEL, nowrap);
+    }
+
+    /**
+     * Reset the deflater and keep it for a later use. The deflater must not be used anymore afterward
+     *
+     * @param deflater the deflater taken from {@link #acquire(boolean)}
+     * @param nowrap the kind the deflater was acquired with
+     */
+    static void release(Deflater deflater, boolean nowrap) {
+        int kind = nowrap ? 1 : 0;
+
+        deflater.reset();
+
+        if (!VirtualThreads.isCurrent()) {
+            Deflater[] cache = THREAD_CACHE.get();
+
+            if (cache[kind] == null) {
+                cache[kind] = deflater;
+                return;
+            }
+        }
+
+        if (SHARED_COUNTS[kind].incrementAndGet() <= SHARED_LIMIT) {
+            SHARED[kind].add(deflater);
+        } else {
+            SHARED_COUNTS[kind].decrementAndGet();
+            deflater.end();
+        }
+    }
+}
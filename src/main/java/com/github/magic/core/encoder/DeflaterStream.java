@@ -0,0 +1,104 @@
+package com.github.magic.core.encoder;
+
+import com.github.magic.core.config.Config;
+import com.github.magic.core.utils.BufferPool;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Compresses everything written to it with a pooled {@link Deflater}, writing the compressed bytes to the underlying stream as soon
+ * as the deflater produces them (at most {@link Config#ENCODER_BUFFER_SIZE} bytes per write).</p>
+ * <br>
+ * <p>Gzip streams are framed by hand (header, raw deflate data, CRC32 and size trailer), since {@link java.util.zip.GZIPOutputStream}
+ * always creates its own deflater. Closing the stream finishes the compressed data, gives the deflater and buffer back and closes the underlying stream</p>
+ */
+final class DeflaterStream extends FilterOutputStream {
+    //Magic number, deflate method, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final boolean gzip;
+    private final Deflater deflater;
+    private final BufferPool.PooledBuffer pooled;
+    private final byte[] buffer;
+
+    //Checksum of the uncompressed data, gzip only
+    private final CRC32 crc;
+
+    private boolean closed;
+
+    DeflaterStream(OutputStream out, boolean gzip) throws IOException {
+        super(out);
+
+        this.gzip = gzip;
+        this.crc = gzip ? new CRC32() : null;
+
+        if (gzip)
+            out.write(GZIP_HEADER);
+
+        this.deflater = DeflaterPool.acquire(gzip);
+        this.pooled = BufferPool.heap().acquire(Config.ENCODER_BUFFER_SIZE);
+        this.buffer = pooled.array();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+
+        if (len <= 0)
+            return;
+
+        if (crc != null)
+            crc.update(b, off, len);
+
+        deflater.setInput(b, off, len);
+
+        while (!deflater.needsInput())
+            deflate();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+
+        try {
+            deflater.finish();
+
+            while (!deflater.finished())
+                deflate();
+
+            if (gzip) {
+                writeIntLE((int) crc.getValue());
+                writeIntLE((int) deflater.getBytesRead()); //Size modulo 2^32
+            }
+
+            out.close();
+        } finally {
+            DeflaterPool.release(deflater, gzip);
+            pooled.release();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int compressedSize = deflater.deflate(buffer, 0, buffer.length);
+
+        if (compressedSize > 0)
+            out.write(buffer, 0, compressedSize);
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        out.write(new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)});
+    }
+}
@@ -1,20 +1,40 @@
 package com.github.magic.core.encoder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 public abstract class Encoder {
     /**
      * Encodes the given byte array into a new byte array using a specific encoding scheme.
      *
      * <p>This method takes an input byte array and applies an encoding transformation,
-     * returning the resulting encoded byte array. The specific encoding algorithm
-     * used should be defined by the implementing class. This method is abstract and
-     * must be implemented by subclasses to provide the specific encoding logic.</p>
+     * returning the resulting encoded byte array. The content is encoded through {@link #wrap(OutputStream)},
+     * so the specific encoding algorithm is the one defined by the implementing class. Prefer {@link #wrap(OutputStream)}
+     * when the encoded content doesn't need to be held in memory (e.g. when its length doesn't have to be known beforehand)</p>
      *
      * @param byteArr The byte array to be encoded
      * @param length The length of the array
      * @return The encoded byte array
      * @throws IOException if an I/O error occurs during encoding
      */
-    public abstract byte[] encode(byte[] byteArr, int length) throws IOException;
+    public byte[] encode(byte[] byteArr, int length) throws IOException {
+        ByteArrayOutputStream streamBuffer = new ByteArrayOutputStream(Math.max(64, length >> 2));
+
+        try (OutputStream encodedStream = wrap(streamBuffer)) {
+            encodedStream.write(byteArr, 0, length);
+        }
+
+        return streamBuffer.toByteArray();
+    }
+
+    /**
+     * Wraps the given stream into a stream compressing everything written to it on the fly, so that content of any size
+     * can be encoded without being held in memory. Closing the returned stream finishes the compressed data, and also closes {@code out}
+     *
+     * @param out the stream to write the encoded bytes to
+     * @return the encoding stream
+     * @throws IOException if an I/O error occurs while writing the encoding header
+     */
+    public abstract OutputStream wrap(OutputStream out) throws IOException;
 }
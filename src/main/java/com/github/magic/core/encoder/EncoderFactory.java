@@ -3,6 +3,10 @@ package com.github.magic.core.encoder;
 import java.io.IOException;
 
 public class EncoderFactory {
+    //Encoders hold no state (the deflaters are pooled per stream), a single instance of each is shared by every response
+    private static final Encoder GZIP = new GZIPEncoder();
+    private static final Encoder DEFLATE = new DeflateEncoder();
+
     public static boolean isImplemented(String encodingType) {
         return switch (encodingType) {
             case "gzip", "deflate" -> true;
@@ -12,8 +16,8 @@ public class EncoderFactory {
 
     public static Encoder getEncoder(String encodingType) throws IOException {
         return switch (encodingType) {
-            case "gzip" -> new GZIPEncoder();
-            case "deflate" -> new DeflateEncoder();
+            case "gzip" -> GZIP;
+            case "deflate" -> DEFLATE;
             default -> null;
         };
     }
@@ -13,7 +13,8 @@ public interface Middleware {
      *
      * @param req Parsed request
      * @param res Response to be sent back
-     * @param next The callback function, if not called, the request-response cycle will be hanged, and eventually cleared out by the timeout handler
+     * @param next The callback function, if not called, the next middlewares and the handler are skipped. Unless the middleware has sent the response,
+     *             the request is left unanswered and the connection is closed, as the timeout handler would
      * @throws Exception Any exception that may be thrown from the interface
      */
     void handle(Request req, Response res, NextCallback next) throws Exception;
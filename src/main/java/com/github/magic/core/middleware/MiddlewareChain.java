@@ -0,0 +1,87 @@
+package com.github.magic.core.middleware;
+
+import com.github.magic.core.models.Request;
+import com.github.magic.core.models.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The middlewares of a route, compiled once when the route is registered (with the middlewares of the whole server in front, see
+ * {@link com.github.magic.core.models.server.Server#use(Middleware...)}).</p>
+ * <br>
+ * <p>A chain is immutable and shared by every request of the route. The progress of a request through the chain (which middleware is running,
+ * whether it called "next") is kept in a cursor owned by that request, so concurrent requests never see each other's "next" calls</p>
+ */
+public final class MiddlewareChain {
+    public static final MiddlewareChain EMPTY = new MiddlewareChain(List.of());
+
+    private final Middleware[] middlewares;
+
+    public MiddlewareChain(List<Middleware> middlewares) {
+        this.middlewares = middlewares.toArray(new Middleware[0]);
+    }
+
+    /**
+     * @param first the middlewares to run first
+     * @param then the middlewares to run afterward, may be {@code null}
+     * @return the chain running both
+     */
+    public static MiddlewareChain of(List<Middleware> first, List<Middleware> then) {
+        if (then == null || then.isEmpty())
+            return first.isEmpty() ? EMPTY : new MiddlewareChain(first);
+
+        List<Middleware> all = new ArrayList<>(first);
+        all.addAll(then);
+
+        return new MiddlewareChain(all);
+    }
+
+    /**
+     * Run the middlewares in order, each one is called once. The chain stops at the first middleware which doesn't call "next", whether it has
+     * sent the response by itself (e.g. from a cache) or not
+     *
+     * @param req the request
+     * @param res the response
+     * @return {@code true} if every middleware passed the request on, {@code false} if one of them stopped it
+     * @throws Exception exception raised by a middleware
+     */
+    public boolean run(Request req, Response res) throws Exception {
+        if (middlewares.length == 0)
+            return true;
+
+        Cursor cursor = new Cursor();
+
+        while (cursor.index < middlewares.length) {
+            cursor.nextCalled = false;
+            middlewares[cursor.index].handle(req, res, cursor);
+
+            if (!cursor.nextCalled)
+                return false;
+        }
+
+        return true;
+    }
+
+    public int size() {
+        return middlewares.length;
+    }
+
+    /**
+     * The "next" callback of a single request
+     */
+    private static final class Cursor implements Middleware.NextCallback {
+        private int index;
+
+        //Making sure that each "next" callback from middlewares is only counted once
+        private boolean nextCalled;
+
+        @Override
+        public void next() {
+            if (!nextCalled) {
+                nextCalled = true;
+                index++;
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.magic.core.middleware;
+
+import com.github.magic.core.config.Config;
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.encoder.Encoder;
+import com.github.magic.core.models.CapturedResponse;
+import com.github.magic.core.models.Request;
+import com.github.magic.core.models.Response;
+import com.github.magic.core.models.header.Headers;
+import com.github.magic.core.models.header.KnownHeaders;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Server-side cache of the responses of dynamic handlers. The first GET request of a resource goes through the handler, and what it sends
+ * (status, headers and body) is kept, later requests of the same resource are answered from memory without calling the handler at all.</p>
+ * <br>
+ * <p>Responses are keyed by path, query and the values of the configured request headers (e.g. "Accept-Language"), and expire after the
+ * max-age (or s-maxage) set by the handler in its "Cache-Control" header, or {@link Config#RESPONSE_CACHE_MAX_AGE} seconds otherwise.
+ * Handlers opt out with "no-store", "no-cache" or "private", and responses setting cookies or varying on other headers are never kept.
+ * Requests with credentials ("Authorization" or "Cookie") always go through the handler, unless "Cookie" is one of the configured headers,
+ * in which case the responses are kept per cookie.
+ * Only bodies sent from memory ({@link Response#send(String)}, {@link Response#json(String, short)}...) are captured.</p>
+ * <br>
+ * <p>The cache holds at most the configured amount of body bytes (compressed variants included), evicting the least recently used responses
+ * past that. Hits don't take any lock, the recency of the entries is approximated: the oldest of a few entries is evicted at a time</p>
+ */
+public class ResponseCache implements Middleware {
+    //Status codes which are cacheable by default (RFC 9110, section 15.1)
+    private static final short[] CACHEABLE_STATUSES = {
+            HttpCode.OK, 203, HttpCode.NO_CONTENT, 300, HttpCode.MOVED_PERMANENTLY, HttpCode.NOT_FOUND,
+            HttpCode.METHOD_NOT_ALLOWED, 410, HttpCode.URI_TOO_LONG, HttpCode.NOT_IMPLEMENTED
+    };
+
+    private final long maximumSize;
+    private final int defaultMaxAge;
+
+    //Request headers the responses depend on, lower-cased
+    private final String[] varyHeaders;
+
+    //Entries looked at to find the one to evict
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong accessClock = new AtomicLong();
+
+    //Entries are only added and removed with the eviction lock held, which guards the counters as well
+    private final Object evictionLock = new Object();
+    private long cachedBytes;
+
+    //Where the eviction sweep resumes, so that every entry is eventually looked at
+    private Iterator<Entry> sweep;
+
+    public ResponseCache(String... varyHeaders) {
+        this(Config.RESPONSE_CACHE_SIZE, Config.RESPONSE_CACHE_MAX_AGE, varyHeaders);
+    }
+
+    /**
+     * @param maximumSize the maximum bytes of body held by the cache
+     * @param defaultMaxAge the time to live (in seconds) of the responses which don't set their own max-age
+     * @param varyHeaders the request headers the responses depend on
+     */
+    public ResponseCache(long maximumSize, int defaultMaxAge, String... varyHeaders) {
+        this.maximumSize = maximumSize;
+        this.defaultMaxAge = defaultMaxAge;
+        this.varyHeaders = new String[varyHeaders.length];
+
+        for (int i = 0; i < varyHeaders.length; i++)
+            this.varyHeaders[i] = varyHeaders[i].trim().toLowerCase(Locale.ROOT);
+
+        Arrays.sort(this.varyHeaders);
+    }
+
+    @Override
+    public void handle(Request req, Response res, NextCallback next) {
+        //Responses to credentialed requests may be personalized, cookies are only keyed on when configured as a vary header
+        if (req.getMethod() != HttpMethod.GET
+                || !req.getHeaders().find(KnownHeaders.AUTHORIZATION).isEmpty()
+                || (!req.getHeaders().find(KnownHeaders.COOKIE).isEmpty() && Arrays.binarySearch(varyHeaders, "cookie") < 0)) {
+            next.next();
+            return;
+        }
+
+        String key = keyOf(req);
+        String requestCacheControl = req.getHeaders().find(KnownHeaders.CACHE_CONTROL).toLowerCase(Locale.ROOT);
+
+        //The client asks for a fresh response, which replaces the cached one
+        if (!requestCacheControl.contains("no-cache") && !requestCacheControl.contains("no-store")) {
+            Entry entry = lookup(key);
+
+            if (entry != null) {
+                res.setHeader("Age", Long.toString((System.nanoTime() - entry.created) / 1_000_000_000L));
+                entry.response.replay(res, entry::encoded);
+                return;
+            }
+        }
+
+        res.addCapture((status, headers, body, length, mimeType, lastModified) -> store(key, status, headers, body, length, mimeType, lastModified));
+        next.next();
+    }
+
+    /**
+     * Drop every cached response
+     */
+    public void clear() {
+        synchronized (evictionLock) {
+            entries.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /**
+     * @return the bytes of body currently held by the cache
+     */
+    public long size() {
+        synchronized (evictionLock) {
+            return cachedBytes;
+        }
+    }
+
+    private String keyOf(Request req) {
+        StringBuilder key = new StringBuilder(req.getPath().getRawPath());
+
+        if (req.getPath().getRawQuery() != null)
+            key.append('?').append(req.getPath().getRawQuery());
+
+        for (String header : varyHeaders)
+            key.append('\n').append(req.getHeaders().find(header));
+
+        return key.toString();
+    }
+
+    private Entry lookup(String key) {
+        Entry entry = entries.get(key);
+
+        if (entry == null)
+            return null;
+
+        if (System.nanoTime() - entry.expires < 0) {
+            entry.lastAccess = accessClock.incrementAndGet();
+            return entry;
+        }
+
+        synchronized (evictionLock) {
+            if (entries.remove(key, entry))
+                cachedBytes -= entry.weight;
+        }
+
+        return null;
+    }
+
+    private void store(String key, short status, Headers headers, byte[] body, int length, String mimeType, String lastModified) {
+        int maxAge = maxAge(status, headers);
+
+        if (maxAge <= 0 || length > maximumSize / 8)
+            return;
+
+        long now = System.nanoTime();
+        Entry entry = new Entry(key, CapturedResponse.of(status, headers, body, length, mimeType, lastModified), now, now + maxAge * 1_000_000_000L);
+
+        //Most recently used already, so that making room for it doesn't evict it
+        entry.lastAccess = accessClock.incrementAndGet();
+
+        synchronized (evictionLock) {
+            Entry previous = entries.put(key, entry);
+
+            if (previous != null)
+                cachedBytes -= previous.weight;
+
+            cachedBytes += entry.weight;
+            evict();
+        }
+    }
+
+    /**
+     * Account for bytes added to an entry (a compressed variant), evicting other entries if needed
+     */
+    private void charge(Entry entry, long bytes) {
+        synchronized (evictionLock) {
+            if (entries.get(entry.key) != entry)
+                return;
+
+            entry.weight += bytes;
+            cachedBytes += bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Find how long the response may be cached, from the headers set by the handler
+     *
+     * @return the time to live in seconds, 0 if the response mustn't be cached
+     */
+    private int maxAge(short status, Headers headers) {
+        boolean cacheable = false;
+
+        for (short cacheableStatus : CACHEABLE_STATUSES)
+            cacheable |= cacheableStatus == status;
+
+        if (!cacheable || !headers.find("Set-Cookie").isEmpty() || !isKeyedOn(headers.find(KnownHeaders.VARY)))
+            return 0;
+
+        int maxAge = defaultMaxAge;
+        boolean shared = false;
+
+        for (String directive : headers.find(KnownHeaders.CACHE_CONTROL).toLowerCase(Locale.ROOT).split(",")) {
+            directive = directive.trim();
+
+            if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private"))
+                return 0;
+
+            //s-maxage is meant for shared caches, and takes precedence over max-age
+            boolean isShared = directive.startsWith("s-maxage=");
+
+            if (isShared || (directive.startsWith("max-age=") && !shared)) {
+                try {
+                    maxAge = Integer.parseInt(directive.substring(directive.indexOf('=') + 1).trim());
+                    shared = isShared;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return maxAge;
+    }
+
+    /**
+     * @param vary the "Vary" header of the response
+     * @return {@code true} if the response only varies on the headers the cache is keyed on
+     */
+    private boolean isKeyedOn(String vary) {
+        if (vary.isEmpty())
+            return true;
+
+        for (String header : vary.split(",")) {
+            if (Arrays.binarySearch(varyHeaders, header.trim().toLowerCase(Locale.ROOT)) < 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Drop the least recently used responses until the cache fits its size again. Each time, the oldest of the next few entries of a sweep
+     * through the map is dropped, so that the cost doesn't depend on the number of entries. Must be called with the eviction lock held
+     */
+    private void evict() {
+        while (cachedBytes > maximumSize && !entries.isEmpty()) {
+            Entry oldest = null;
+
+            for (int i = 0; i < EVICTION_SAMPLE; i++) {
+                if (sweep == null || !sweep.hasNext())
+                    sweep = entries.values().iterator();
+
+                if (!sweep.hasNext())
+                    break;
+
+                Entry entry = sweep.next();
+
+                if (oldest == null || entry.lastAccess < oldest.lastAccess)
+                    oldest = entry;
+            }
+
+            //The sweep may still hand out entries removed since it started
+            if (oldest != null && entries.remove(oldest.key, oldest))
+                cachedBytes -= oldest.weight;
+        }
+    }
+
+    /**
+     * A cached response, along with its compressed variants (compressed on the first hit accepting each encoding)
+     */
+    private final class Entry {
+        private final String key;
+        private final CapturedResponse response;
+        private final long created;
+        private final long expires;
+
+        private final Map<String, byte[]> variants = new ConcurrentHashMap<>();
+
+        //Bytes held by the entry, guarded by the eviction lock
+        private long weight;
+
+        private volatile long lastAccess;
+
+        private Entry(String key, CapturedResponse response, long created, long expires) {
+            this.key = key;
+            this.response = response;
+            this.created = created;
+            this.expires = expires;
+            this.weight = response.body().length;
+        }
+
+        private byte[] encoded(Encoder encoder) throws IOException {
+            String encoding = encoder.toString();
+            byte[] variant = variants.get(encoding);
+
+            if (variant != null)
+                return variant;
+
+            variant = encoder.encode(response.body(), response.body().length);
+
+            byte[] previous = variants.putIfAbsent(encoding, variant);
+
+            if (previous != null)
+                return previous;
+
+            charge(this, variant.length);
+            return variant;
+        }
+    }
+}
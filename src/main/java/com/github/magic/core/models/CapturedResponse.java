@@ -0,0 +1,56 @@
+package com.github.magic.core.models;
+
+import com.github.magic.core.models.header.Header;
+import com.github.magic.core.models.header.Headers;
+import com.github.magic.core.models.header.PreEncodedHeader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A response body sent from memory and the headers set along with it, kept to be sent again with {@link #replay(Response)}
+ *
+ * @see Response#addCapture(Response.Capture)
+ */
+public record CapturedResponse(short status, List<PreEncodedHeader> headers, byte[] body, String mimeType, String lastModified) {
+
+    /**
+     * Copy what's been captured, only the headers set by the handler are kept: the ones describing the connection or the framing of the body are
+     * added again on every replay
+     *
+     * @see Response.Capture#captured(short, Headers, byte[], int, String, String)
+     */
+    public static CapturedResponse of(short status, Headers headers, byte[] body, int length, String mimeType, String lastModified) {
+        List<PreEncodedHeader> storedHeaders = new ArrayList<>();
+
+        for (Header header : headers) {
+            switch (header.getKey().toLowerCase(Locale.ROOT)) {
+                case "date", "connection", "keep-alive", "content-length", "content-encoding", "transfer-encoding", "age" -> {}
+                default -> storedHeaders.add(new PreEncodedHeader(header.getKey(), header.getValue()));
+            }
+        }
+
+        return new CapturedResponse(status, storedHeaders, Arrays.copyOf(body, length), mimeType, lastModified);
+    }
+
+    /**
+     * Send the response again
+     *
+     * @param res the response of the current request
+     */
+    public void replay(Response res) {
+        res.replay(status, headers, body, mimeType, lastModified);
+    }
+
+    /**
+     * Send the response again, compressed bodies are taken from the variants instead of being compressed again
+     *
+     * @param res the response of the current request
+     * @param variants the compressed variants of the body
+     */
+    public void replay(Response res, Response.Variants variants) {
+        res.replay(status, headers, body, mimeType, lastModified, variants);
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.magic.core.models;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a "Transfer-Encoding: chunked" body, the counterpart of {@link ChunkedOutputStream}. Chunk extensions and trailers are skipped.
+ * The framing is read byte by byte and the data never past the current chunk, so nothing after the body (e.g. a pipelined request) is read
+ * from the underlying stream
+ */
+public class ChunkedInputStream extends FilterInputStream {
+    //Upper bound of a chunk size line (size and extensions) and of a trailer line
+    static final int MAXIMUM_LINE_LENGTH = 4096;
+
+    //Upper bound of the whole trailer section
+    private static final int MAXIMUM_TRAILER_SIZE = 8192;
+
+    //Hex digits of the largest chunk size, which fits in a long
+    private static final int MAXIMUM_SIZE_DIGITS = 15;
+
+    //Bytes left in the current chunk
+    private long remaining;
+
+    private boolean isFirstChunk = true;
+    private boolean isTerminated;
+
+    public ChunkedInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        if (remaining == 0 && !nextChunk())
+            return -1;
+
+        int count = in.read(b, off, (int) Math.min(len, remaining));
+
+        if (count < 0)
+            throw new EOFException("Unexpected end of chunked body");
+
+        remaining -= count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] skipped = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long total = 0;
+
+        while (total < n) {
+            int count = read(skipped, 0, (int) Math.min(skipped.length, n - total));
+
+            if (count < 0)
+                break;
+
+            total += count;
+        }
+
+        return total;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() {
+    } // keep underlying connection stream open
+
+    /**
+     * Read the size line of the next chunk, or the trailers after the last one
+     *
+     * @return {@code false} once the terminating chunk has been read
+     */
+    private boolean nextChunk() throws IOException {
+        if (isTerminated)
+            return false;
+
+        //The data of the previous chunk is followed by a CRLF
+        if (!isFirstChunk && !readLine().isEmpty())
+            throw new MalformedBodyException("Malformed chunk: missing CRLF after the chunk data");
+
+        isFirstChunk = false;
+
+        remaining = parseChunkSize(readLine());
+
+        if (remaining > 0)
+            return true;
+
+        //Trailers, up to the empty line ending the body
+        int trailerSize = 0;
+        String trailer;
+
+        while (!(trailer = readLine()).isEmpty()) {
+            trailerSize += trailer.length() + 2;
+
+            if (trailerSize > MAXIMUM_TRAILER_SIZE)
+                throw new MalformedBodyException("Malformed chunk: trailer section too large");
+        }
+
+        isTerminated = true;
+        return false;
+    }
+
+    /**
+     * Parse "chunk-size [ chunk-ext ]": hex digits only (no sign, no leading whitespace), optionally followed by whitespace and the extensions
+     *
+     * @return the size of the chunk
+     */
+    private static long parseChunkSize(String sizeLine) throws MalformedBodyException {
+        long size = 0;
+        int i = 0;
+
+        for (; i < sizeLine.length(); i++) {
+            char c = sizeLine.charAt(i);
+            int digit = c >= '0' && c <= '9' ? c - '0'
+                      : c >= 'a' && c <= 'f' ? c - 'a' + 10
+                      : c >= 'A' && c <= 'F' ? c - 'A' + 10
+                      : -1;
+
+            if (digit == -1)
+                break;
+
+            size = (size << 4) | digit;
+        }
+
+        if (i == 0 || i > MAXIMUM_SIZE_DIGITS)
+            throw new MalformedBodyException("Malformed chunk size: " + sizeLine);
+
+        while (i < sizeLine.length() && (sizeLine.charAt(i) == ' ' || sizeLine.charAt(i) == '\t'))
+            i++;
+
+        if (i < sizeLine.length() && sizeLine.charAt(i) != ';')
+            throw new MalformedBodyException("Malformed chunk size: " + sizeLine);
+
+        return size;
+    }
+
+    /**
+     * @return the next line, without its line terminator (CRLF, or a bare LF)
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        while (true) {
+            int b = in.read();
+
+            if (b == -1)
+                throw new EOFException("Unexpected end of chunked body");
+
+            if (b == '\n')
+                break;
+
+            if (line.length() == MAXIMUM_LINE_LENGTH)
+                throw new MalformedBodyException("Malformed chunk: line too long");
+
+            line.append((char) b);
+        }
+
+        int length = line.length();
+
+        if (length > 0 && line.charAt(length - 1) == '\r')
+            line.setLength(length - 1);
+
+        return line.toString();
+    }
+}
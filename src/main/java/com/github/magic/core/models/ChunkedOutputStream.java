@@ -3,10 +3,19 @@ package com.github.magic.core.models;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 import static com.github.magic.core.consts.Misc.CRLF;
 
+/**
+ * Frames everything written to it as "Transfer-Encoding: chunked" content. Each {@link #write(byte[], int, int)} call becomes one chunk,
+ * callers should therefore write through a buffer (e.g. the encoder's stream) rather than byte by byte.
+ * The body must be ended with {@link #writeTerminateChunk()}
+ */
 public class ChunkedOutputStream extends FilterOutputStream {
+    //The terminating chunk is a regular chunk, with the exception that its length is zero. It's followed by an empty trailer section
+    private static final byte[] TERMINATE_CHUNK = {'0', 0x0d, 0x0a, 0x0d, 0x0a};
+
     //Tells whether the writing mode for this current stream should be normal again (after sending the termination chunk)
     private boolean isTerminated;
 
@@ -14,27 +23,38 @@ public class ChunkedOutputStream extends FilterOutputStream {
         super(out);
     }
 
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
+        //A zero length chunk would be read as the end of the body
+        if (len <= 0)
+            return;
+
+        if (isTerminated) {
+            out.write(b, off, len);
+            return;
+        }
+
         //From https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Transfer-Encoding
 
         // At the beginning of each chunk you need to add the length of the current chunk in hexadecimal format.
         // Followed by '\r\n' and then the chunk itself, followed by another '\r\n'.
-        if (!isTerminated){
-            out.write(Integer.toHexString(len).getBytes());
-            out.write(CRLF);
-        }
-
-        out.write(b);
+        out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(b, off, len);
         out.write(CRLF);
     }
 
     public void writeTerminateChunk() throws IOException {
-        isTerminated = true;
+        if (isTerminated)
+            return;
 
-        // The terminating chunk is a regular chunk, with the exception that its length is zero.
-        out.write(new byte[]{0x00});
-        out.write(CRLF);
+        isTerminated = true;
+        out.write(TERMINATE_CHUNK);
     }
 
     @Override
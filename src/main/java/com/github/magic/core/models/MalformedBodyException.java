@@ -0,0 +1,15 @@
+package com.github.magic.core.models;
+
+import java.io.IOException;
+
+/**
+ * Raised when reading a request body whose framing is broken (e.g. a malformed chunk). The rest of the connection can't be parsed anymore,
+ * the request is answered with 400 Bad Request and the connection closed
+ */
+public class MalformedBodyException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public MalformedBodyException(String message) {
+        super(message);
+    }
+}
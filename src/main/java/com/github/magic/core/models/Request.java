@@ -2,22 +2,23 @@ package com.github.magic.core.models;
 
 import com.github.magic.core.config.Config;
 import com.github.magic.core.consts.HttpMethod;
-import com.github.magic.core.consts.Misc;
 import com.github.magic.core.models.header.Header;
 import com.github.magic.core.models.header.Headers;
+import com.github.magic.core.models.header.KnownHeaders;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 
-import static com.github.magic.core.consts.Misc.CRLF;
-
 public class Request {
     //Currently supporting methods are: GET, POST, DELETE
     private HttpMethod method;
@@ -25,8 +26,17 @@ public class Request {
     //We're not supporting trailing headers
     private final Headers headers;
 
+    //The body, read lazily from the connection. Content is only set once the body has been read at once (see bodyRaw())
+    private InputStream body;
     private byte[] content;
 
+    //Longest body accepted, the "Content-Length" may already tell it's too large
+    private final long maximumBodySize;
+    private long contentLength = -1;
+
+    //Both "Transfer-Encoding" and "Content-Length" were sent, the connection can't be reused
+    private boolean hasConflictingLength;
+
     private final Socket requestSocket;
 
     //The part comes after the "?" symbol
@@ -47,7 +57,8 @@ public class Request {
     private boolean isMismatched;
 
     /**
-     * This constructor will act as a parser for the incoming data from the connection socket
+     * This constructor will act as a parser for the incoming data from the connection socket. As the parser isn't kept,
+     * this constructor should only be used for connections serving a single request
      *
      * @param socket the connection socket
      * @throws IllegalArgumentException when the request failed to parse the receive data
@@ -55,78 +66,94 @@ public class Request {
      * @throws InterruptedException 
      */
     public Request(Socket socket) throws IOException, SocketException, IllegalArgumentException {
-        InputStream data = socket.getInputStream();
+        this(new RequestParser(), socket, Config.MAXIMUM_REQUEST_BODY_SIZE, true);
+    }
+
+    /**
+     * Parse the next request of the connection. The parser is reused across the requests of a same connection, as it may already hold
+     * bytes of the next one (e.g. the pipelined requests buffered by the reactor's event loop)
+     *
+     * @param parser the parser of the connection
+     * @param socket the connection socket, which is read from whenever the parser runs out of buffered bytes
+     * @throws IOException exception may raise when reading from the input stream
+     */
+    public Request(RequestParser parser, Socket socket) throws IOException, IllegalArgumentException {
+        this(parser, socket, Config.MAXIMUM_REQUEST_BODY_SIZE);
+    }
+
+    /**
+     * Same as {@link #Request(RequestParser, Socket)}, with the maximum size of the body. The body is read lazily: whatever the handler
+     * doesn't read must be skipped with {@link #discardBody()} before the next request of the connection is parsed
+     *
+     * @param maximumBodySize the longest body accepted, reading past it raises an {@link IOException}
+     */
+    public Request(RequestParser parser, Socket socket, long maximumBodySize) throws IOException, IllegalArgumentException {
+        this(parser, socket, maximumBodySize, false);
+    }
 
+    /**
+     * @param releaseParser whether the parser is only used for this request, in which case the headers and the body are read right away and the parser's buffer released
+     */
+    private Request(RequestParser parser, Socket socket, long maximumBodySize, boolean releaseParser) throws IOException, IllegalArgumentException {
         query = new HashMap<>();
         headers = new Headers();
 
         this.requestSocket = socket;
+        this.maximumBodySize = maximumBodySize;
 
+        InputStream iStream = socket.getInputStream();
 
-        extractRequestLine(data);
+        while (!parser.parseHead()) {
+            if (parser.fill(iStream) < 0)
+                throw new IOException("[-] Request line not found");
+        }
+
+        isMismatched = parser.isMismatched();
         
         if (isMismatched && Config.SHOW_ERROR) System.err.printf("[-] %s Error: Protocol mismatched\n", requestSocket.getInetAddress());
 
         if (!isMismatched){
-            extractHeaders(data);
-            extractBody(data);
+            extractRequestLine(parser);
+            extractHeaders(parser);
+            extractBody(parser, iStream);
+        }
+
+        if (releaseParser) {
+            decodeHeaders();
+
+            if (!isMismatched)
+                bodyRaw();
+
+            parser.release();
         }
     }
 
     /**
-     * Get the request line of any request, typically looks like: "GET /testPath HTTP/1.1"
-     * 
-     * @param iStream the input stream contain the request data
-     * @throws IOException exception may raise when reading from the input stream
+     * Decode every header right away, instead of when they're first read. Headers are decoded from the parser's buffer, which may be
+     * released (or reused for the next request) while this request is still being handled
      */
-    private void extractRequestLine(InputStream iStream) throws IOException {
-        //Parse the method, version and path from the request line;
-        //Index: 0        1        2
-        //Data : [method] [path]   [version]
-        int c = iStream.read();
-        int firstSpaceIdx = 0;
-
-        String requestLine = "";
-
-        //While we're not at the EOF and the newline character
-        while (c != -1 && c != Misc.CRLF[1]) {
-            if (c != 32)
-                firstSpaceIdx++;
-
-            if (requestLine.length() == 7 && firstSpaceIdx == 0){
-                if (!validHttpMethod(requestLine.substring(0, firstSpaceIdx))){
-                    isMismatched = true;
-                    return;
-                }
-            }
-
-            requestLine += (char) c;
-            c = iStream.read();
+    public void decodeHeaders() {
+        for (Header header : headers) {
+            header.getKey();
+            header.getValue();
         }
+    }
 
-        //Maximum length for the URL is set based on this article
-        //https://saturncloud.io/blog/what-is-the-maximum-length-of-a-url-in-different-browsers/
-        if (requestLine.length() >= 2083)
-            throw new IOException("URI too long");
-
-        String[] firstLineTokens = requestLine.split(" ");
-
-        if (firstLineTokens.length < 3) {
-            //Invalid argument when parsing request line
-            throw new IOException("[-] Request line not found");
-        }
+    /**
+     * Get the request line of any request, typically looks like: "GET /testPath HTTP/1.1"
+     * 
+     * @param parser the parser holding the request head
+     */
+    private void extractRequestLine(RequestParser parser) {
+        method = parser.method();
 
-        try {
-            method = HttpMethod.valueOf(firstLineTokens[0].toUpperCase());
-        } catch (IllegalArgumentException e) {
-            //Use default GET in case we're unable to tell what request it is
+        //Use default GET in case we're unable to tell what request it is
+        if (method == null)
             method = HttpMethod.GET;
-        }
 
-        path = URI.create(firstLineTokens[1]);
+        path = URI.create(parser.target());
 
-        version = firstLineTokens[2].substring(0, firstLineTokens[2].length() - 1); //Trim off the trailing "\r" from the CRLF combo
-        version = version.substring(version.indexOf("/") + 1);            //Trim off the "http" or "https" part
+        version = parser.version();
 
         //Setting the queryParams
         String queryStr = path.getQuery();
@@ -150,64 +177,30 @@ public class Request {
     /**
      * Gets all the headers sent from the request and insert them into the {@link #headers} field
      * 
-     * @param iStream the input stream contain the request data
-     * @throws IOException exception may raise when reading from the input stream
+     * @param parser the parser holding the request head
      */
-    private void extractHeaders(InputStream iStream) throws IOException {
-        //Parse the header pairs
-        int c = iStream.read();
-        String line = "";
-
-        //While we're not at the EOF
-        while (c != -1) {
-            //If we're not at the newline
-            if (c != CRLF[1]) {
-                line += (char) c;
-            } else {
-                if (line.length() < 2 && (line.charAt(0) == 13)) {
-                    //If we're at the empty line delimiter, then stop reading
-                    break;
-                }
-
-                //Split up the line and add it into the header list
-                String[] headerEntry = line.split(": ", 0);
-
-                //Index: 0        1
-                //Data : [key] :  [value]
-
-                headers.add(new Header(headerEntry[0], headerEntry[1]));
-
-                line = "";
-            }
-
-            c = iStream.read();
-        }
+    private void extractHeaders(RequestParser parser) {
+        //Names and values are only decoded when accessed
+        for (int i = 0; i < parser.headerCount(); i++)
+            headers.add(parser.header(i));
 
         //We can resolve the hostname here if the host header is available
-        String hostHeader = headers.find("Origin");
+        String hostHeader = headers.find(KnownHeaders.ORIGIN);
 
         requestOrigin = URI.create(hostHeader);
     }
 
     /**
-     * Read and write the request's body into the {@link #content} field of this class
-     * @param iStream
+     * Open the request's body, which is read lazily (see {@link RequestParser#openBody(InputStream, long)}). The body length is given by the
+     * "Content-Length" header, or by the chunks of a "Transfer-Encoding: chunked" body. Requests without either have no body
+     *
+     * @param parser the parser holding the request head
+     * @param iStream the stream to read the rest of the body from
      */
-    private void extractBody(InputStream iStream) {
-        ByteArrayOutputStream returnStream = new ByteArrayOutputStream();
-
-        try {
-            //Request's body is optional, so we need to check in order not to accidentally block the parsing process
-            int possibleReadWithoutBlocking = iStream.available();
-
-            if (possibleReadWithoutBlocking > 0) {
-                for (int i = 0; i < possibleReadWithoutBlocking; i++) {
-                    returnStream.write(iStream.read());
-                }
-            }
-        } catch (IOException ignored) {}
-
-        this.content = returnStream.toByteArray();
+    private void extractBody(RequestParser parser, InputStream iStream) {
+        this.contentLength = parser.isChunked() ? -1 : parser.contentLength();
+        this.hasConflictingLength = parser.hasConflictingLength();
+        this.body = parser.openBody(iStream, maximumBodySize);
     }
 
     /**
@@ -223,15 +216,71 @@ public class Request {
     }
 
     /**
-     * Get the byte array form of the parsed request body
+     * Get the byte array form of the request body, read on the first call. Only the bytes which haven't been read from
+     * {@link #getBodyStream()} yet are part of it
+     *
      * @return The retrieved byte array
+     * @throws IOException exception raised when reading the body, or if it's larger than the maximum size
      */
-    public byte[] bodyRaw() {
+    public byte[] bodyRaw() throws IOException {
+        if (content == null)
+            content = body == null ? new byte[0] : body.readAllBytes();
+
         return content;
     }
-    
-    public String body(Charset charset) {
-        return new String(content, charset);
+
+    public String body(Charset charset) throws IOException {
+        return new String(bodyRaw(), charset);
+    }
+
+    /**
+     * Get the request body as a stream, read from the connection as it goes, so that large bodies don't have to be held in memory
+     *
+     * @return the body, or what's left of it
+     */
+    public InputStream getBodyStream() {
+        if (content != null)
+            return new ByteArrayInputStream(content);
+
+        return body == null ? InputStream.nullInputStream() : body;
+    }
+
+    /**
+     * @see #getBodyStream()
+     */
+    public ReadableByteChannel getBodyChannel() {
+        return Channels.newChannel(getBodyStream());
+    }
+
+    /**
+     * @return {@code true} if the "Content-Length" header is larger than the maximum size of the body
+     */
+    public boolean isBodyTooLarge() {
+        return contentLength > maximumBodySize;
+    }
+
+    /**
+     * @return {@code true} if the request has both a "Transfer-Encoding" and a "Content-Length", see {@link RequestParser#hasConflictingLength()}
+     */
+    public boolean hasConflictingLength() {
+        return hasConflictingLength;
+    }
+
+    /**
+     * Skip whatever is left of the body, so that the next request of the connection can be parsed
+     *
+     * @return {@code false} if the body couldn't be read to the end (connection error, malformed chunks, larger than the maximum size)
+     */
+    public boolean discardBody() {
+        if (body == null)
+            return true;
+
+        try {
+            body.transferTo(OutputStream.nullOutputStream());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     public Socket getRequestSocket() {
@@ -246,8 +295,8 @@ public class Request {
         return path;
     }
 
-    public byte[] getContent() {
-        return content;
+    public byte[] getContent() throws IOException {
+        return bodyRaw();
     }
 
     public URI getRequestOrigin() {
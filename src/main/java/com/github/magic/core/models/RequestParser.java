@@ -0,0 +1,911 @@
+package com.github.magic.core.models;
+
+import com.github.magic.core.config.Config;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.models.header.Header;
+import com.github.magic.core.models.header.KnownHeaders;
+import com.github.magic.core.utils.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>Reusable HTTP/1.1 request head parser, one instance is kept for the whole lifetime of a connection.</p>
+ * <br>
+ * <p>The raw bytes are read in bulk into a single {@link ByteBuffer}, instead of one {@code read()} call per byte. The head is then scanned
+ * with a byte class table, recording only the offsets of the request line parts and of each header name and value. Strings are only created
+ * when a value is actually requested. Anything read past the current request (its body, pipelined requests) stays in the buffer for the next one.</p>
+ * <br>
+ * <p>The recorded offsets are only valid for the current exchange: they're discarded as soon as the next request starts being parsed</p>
+ */
+public class RequestParser {
+    //Upper bound of the request head (request line and headers), larger heads are rejected
+    public static final int MAXIMUM_HEAD_SIZE = (1 << 16); //65536 bytes
+
+    //Initial size of the buffer, large enough for most requests
+    private static final int INITIAL_BUFFER_SIZE = (1 << 12); //4096 bytes
+
+    //The buffer never grows past a full head plus a full body
+    private static final int MAXIMUM_BUFFER_SIZE = MAXIMUM_HEAD_SIZE + Config.BODY_BUFFER_SIZE;
+
+    //Maximum length for the URL is set based on this article
+    //https://saturncloud.io/blog/what-is-the-maximum-length-of-a-url-in-different-browsers/
+    private static final int MAXIMUM_REQUEST_LINE_LENGTH = 2083;
+
+    private static final int MAXIMUM_HEADER_COUNT = 100;
+
+    //Number of ints recorded per header in headerOffsets
+    private static final int HEADER_FIELDS = 5;
+
+    //Byte classes, see https://www.rfc-editor.org/rfc/rfc9110#section-5.6.2 for the token characters
+    private static final byte OTHER = 0;
+    private static final byte TOKEN = 1;
+    private static final byte SPACE = 2;
+
+    private static final byte[] BYTE_CLASS = new byte[256];
+
+    private static final byte[] CHUNKED = "chunked".getBytes(StandardCharsets.US_ASCII);
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+    private static final byte[][] METHOD_NAMES = new byte[METHODS.length][];
+
+    static {
+        for (int c = '0'; c <= '9'; c++) BYTE_CLASS[c] = TOKEN;
+        for (int c = 'a'; c <= 'z'; c++) BYTE_CLASS[c] = TOKEN;
+        for (int c = 'A'; c <= 'Z'; c++) BYTE_CLASS[c] = TOKEN;
+
+        for (char c : "!#$%&'*+-.^_`|~".toCharArray())
+            BYTE_CLASS[c] = TOKEN;
+
+        BYTE_CLASS[' ']  = SPACE;
+        BYTE_CLASS['\t'] = SPACE;
+
+        for (int i = 0; i < METHODS.length; i++)
+            METHOD_NAMES[i] = METHODS[i].name().toLowerCase().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    //Bytes [0, limit) are the received data, the current request starts at index 0
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+    //Pooled buffer backing the buffer above, only held while there are bytes to keep
+    private BufferPool.PooledBuffer pooled;
+
+    //Where the search for the end of the head resumes when more bytes arrive
+    private int scanPosition;
+
+    //Start of the request line, past the empty lines a client may send before it
+    private int start;
+
+    //Index right after the empty line ending the head, -1 while the head is incomplete
+    private int headEnd = -1;
+
+    //End of the previous request (head and body), -1 while it's still being served
+    private int consumed = -1;
+
+    //Start of the first chunk not known to be buffered yet, -1 until the chunks are scanned (see isBodyBuffered())
+    private int chunkScanPosition = -1;
+
+    private int methodEnd;
+    private int targetStart;
+    private int targetEnd;
+    private int versionStart;
+    private int versionEnd;
+
+    //[nameStart, nameEnd, valueStart, valueEnd, slot] of each header
+    private int[] headerOffsets = new int[HEADER_FIELDS * 16];
+    private int headerCount;
+
+    //Incremented every time a request is discarded, the headers handed out for it can't be decoded anymore past that point
+    private int generation;
+
+    private long contentLength = -1;
+    private boolean chunked;
+    private boolean transferEncoded;
+    private boolean mismatched;
+
+    //Parse errors are kept, so that every later call reports the same error
+    private IOException error;
+
+    /**
+     * Read whatever the stream gives in a single call into the buffer. Blocks until at least one byte is available
+     *
+     * @param in the stream to read from
+     * @return the number of bytes read, 0 if the buffer is full, or -1 at the end of the stream
+     * @throws IOException exception raised when reading
+     */
+    public int fill(InputStream in) throws IOException {
+        discardConsumed();
+
+        if (!ensureWritable())
+            return 0;
+
+        int count = in.read(buffer.array(), buffer.limit(), buffer.capacity() - buffer.limit());
+
+        if (count > 0)
+            buffer.limit(buffer.limit() + count);
+
+        return count;
+    }
+
+    /**
+     * Read whatever is available on the channel into the buffer. Never blocks on non-blocking channels
+     *
+     * @param channel the channel to read from
+     * @return the number of bytes read, 0 if none is available or if the buffer is full, or -1 at the end of the stream
+     * @throws IOException exception raised when reading
+     */
+    public int fill(ReadableByteChannel channel) throws IOException {
+        discardConsumed();
+
+        if (!ensureWritable())
+            return 0;
+
+        int limit = buffer.limit();
+
+        buffer.limit(buffer.capacity()).position(limit);
+
+        try {
+            return channel.read(buffer);
+        } finally {
+            buffer.limit(buffer.position()).position(0);
+        }
+    }
+
+    /**
+     * Give the buffer back to the pool, once the connection is over. Headers of the current request which haven't been decoded yet can't be read anymore
+     */
+    public void release() {
+        BufferPool.PooledBuffer previous = reset();
+
+        if (previous != null)
+            previous.release();
+    }
+
+    /**
+     * Drop the buffer without giving it back to the pool, once the connection is over while something else may still read the current
+     * request's body (e.g. a timed out asynchronous handler, whose work can't be stopped). The buffer is never handed to another connection
+     */
+    public void abandon() {
+        BufferPool.PooledBuffer previous = reset();
+
+        if (previous != null)
+            previous.discard();
+    }
+
+    /**
+     * @return the pooled buffer which was held, if any
+     */
+    private BufferPool.PooledBuffer reset() {
+        BufferPool.PooledBuffer previous = pooled;
+
+        generation++;
+        scanPosition = 0;
+        start = 0;
+        headEnd = -1;
+        consumed = -1;
+        headerCount = 0;
+        contentLength = -1;
+        chunked = false;
+        transferEncoded = false;
+        chunkScanPosition = -1;
+        buffer = ByteBuffer.allocate(0);
+        pooled = null;
+
+        return previous;
+    }
+
+    /**
+     * Look for the end of the head in the buffered bytes, and parse it once found. Can be called again every time more bytes are read,
+     * the search resumes where the previous call stopped
+     *
+     * @return {@code true} if the head has been parsed (or if the data isn't HTTP, see {@link #isMismatched()})
+     * @throws IOException if the head is malformed or too large
+     */
+    public boolean parseHead() throws IOException {
+        discardConsumed();
+
+        if (error != null)
+            throw error;
+
+        if (headEnd != -1)
+            return true;
+
+        try {
+            return scanHead();
+        } catch (IOException e) {
+            error = e;
+            throw e;
+        }
+    }
+
+    /**
+     * Read the whole body of the current request, see {@link #openBody(InputStream, long)}
+     *
+     * @param in the stream holding the rest of the body
+     * @return the body (decoded if it's chunked), which may be shorter than the "Content-Length" if the stream ended early
+     * @throws IOException exception raised when reading, or if the chunked body is malformed
+     */
+    public byte[] readBody(InputStream in) throws IOException {
+        return openBody(in, Long.MAX_VALUE).readAllBytes();
+    }
+
+    /**
+     * Open the body of the current request, which is read lazily: from the buffered bytes first, then from the stream, never past the end of
+     * the body. Its length is given by the "Content-Length" header, or by the chunks of a "Transfer-Encoding: chunked" body (which are decoded).
+     * Requests without either have no body.
+     * <p>The current request is considered consumed once the body has been read to the end, which must happen before the next request is parsed.
+     * Its offsets stay valid until then</p>
+     *
+     * @param in the stream holding the rest of the body
+     * @param maximumSize the maximum length of the body, reading past it raises an {@link IOException}
+     * @return the body
+     */
+    public InputStream openBody(InputStream in, long maximumSize) {
+        if (!chunked && contentLength <= 0) {
+            consumed = headEnd;
+            return InputStream.nullInputStream();
+        }
+
+        BufferedBody source = new BufferedBody(in, chunked ? Long.MAX_VALUE : contentLength);
+
+        return new Body(source, chunked ? new ChunkedInputStream(source) : source, maximumSize);
+    }
+
+    /**
+     * @return {@code true} if the whole body of the current request is already in the buffer. A chunked body is only buffered once its
+     * last chunk and trailers are, a malformed one is reported as buffered so that the error is answered right away
+     */
+    public boolean isBodyBuffered() {
+        if (headEnd == -1)
+            return false;
+
+        if (chunked)
+            return scanChunks();
+
+        return contentLength <= 0 || buffer.limit() - headEnd >= contentLength;
+    }
+
+    /**
+     * @return {@code true} if the buffer has reached its maximum size
+     */
+    public boolean isFull() {
+        return buffer.limit() >= MAXIMUM_BUFFER_SIZE;
+    }
+
+    /**
+     * @return {@code true} if the received data doesn't look like an HTTP request at all (e.g. a TLS handshake on a plain port)
+     */
+    public boolean isMismatched() {
+        return mismatched;
+    }
+
+    /**
+     * @return the request method, or {@code null} if it isn't one of {@link HttpMethod}
+     */
+    public HttpMethod method() {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (equalsIgnoreCase(start, methodEnd, METHOD_NAMES[i]))
+                return METHODS[i];
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the request target, as sent by the client (path and query)
+     */
+    public String target() {
+        return string(targetStart, targetEnd);
+    }
+
+    /**
+     * @return the protocol version, without the "HTTP/" prefix (e.g. "1.1")
+     */
+    public String version() {
+        byte[] array = buffer.array();
+        int from = versionStart;
+
+        for (int i = versionStart; i < versionEnd; i++) {
+            if (array[i] == '/') {
+                from = i + 1;
+                break;
+            }
+        }
+
+        if (versionEnd - from == 3 && array[from] == '1' && array[from + 1] == '.') {
+            if (array[from + 2] == '1') return "1.1";
+            if (array[from + 2] == '0') return "1.0";
+        }
+
+        return string(from, versionEnd);
+    }
+
+    public int headerCount() {
+        return headerCount;
+    }
+
+    public String headerName(int index) {
+        return string(headerOffsets[HEADER_FIELDS * index], headerOffsets[HEADER_FIELDS * index + 1]);
+    }
+
+    public String headerValue(int index) {
+        return string(headerOffsets[HEADER_FIELDS * index + 2], headerOffsets[HEADER_FIELDS * index + 3]);
+    }
+
+    /**
+     * @param index the index of the header, in the order they were received
+     * @return the {@link KnownHeaders} slot of the header name, or -1 if it isn't a well-known one
+     */
+    public int headerSlot(int index) {
+        return headerOffsets[HEADER_FIELDS * index + 4];
+    }
+
+    /**
+     * Get the header at the given index, whose name and value are only decoded on first access. Like the offsets, the returned header
+     * can only be read during the current exchange, unless its name and value have been accessed before
+     *
+     * @param index the index of the header, in the order they were received
+     * @return the header
+     */
+    public Header header(int index) {
+        return new ParsedHeader(index);
+    }
+
+    /**
+     * @return the value of the "Content-Length" header, or -1 if not provided
+     */
+    public long contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return {@code true} if the body is sent with "Transfer-Encoding: chunked"
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * @return {@code true} if the request has both a "Transfer-Encoding" and a "Content-Length". The body is framed by the chunks, but the
+     * connection must be closed after the response since an intermediary may have framed it otherwise (RFC9112#6.1)
+     */
+    public boolean hasConflictingLength() {
+        return chunked && contentLength != -1;
+    }
+
+    private boolean scanHead() throws IOException {
+        byte[] array = buffer.array();
+        int limit = buffer.limit();
+        int lineStart = scanPosition;
+
+        //Rewind to the start of the line the previous call stopped in
+        while (lineStart > start && array[lineStart - 1] != '\n')
+            lineStart--;
+
+        for (int i = scanPosition; i < limit; i++) {
+            if (lineStart == start && i == start) {
+                //Robustness: ignore the empty lines preceding the request line (RFC9112#2.2)
+                if (array[i] == '\r' || array[i] == '\n') {
+                    start = lineStart = i + 1;
+                    continue;
+                }
+
+                //Anything not starting with a method token isn't HTTP, no need to wait for a line ending
+                if (BYTE_CLASS[array[i] & 0xff] != TOKEN) {
+                    mismatched = true;
+                    headEnd = limit;
+                    return true;
+                }
+            }
+
+            if (array[i] != '\n')
+                continue;
+
+            int lineEnd = (i > lineStart && array[i - 1] == '\r') ? i - 1 : i;
+
+            if (lineStart == start) {
+                parseRequestLine(lineStart, lineEnd);
+            } else if (lineEnd == lineStart) {
+                //Only chunked can be decoded, no other coding tells where the body ends (RFC9112#6.3)
+                if (transferEncoded && !chunked)
+                    throw new IOException("Unsupported Transfer-Encoding");
+
+                headEnd = i + 1;
+                scanPosition = headEnd;
+                return true;
+            } else {
+                parseHeader(lineStart, lineEnd);
+            }
+
+            lineStart = i + 1;
+        }
+
+        scanPosition = limit;
+
+        if (lineStart == start && limit - start >= MAXIMUM_REQUEST_LINE_LENGTH)
+            throw new IOException("URI too long");
+
+        if (limit - start >= MAXIMUM_HEAD_SIZE)
+            throw new IOException("Request header fields too large");
+
+        return false;
+    }
+
+    /**
+     * Parse the request line, typically looks like: "GET /testPath HTTP/1.1"
+     */
+    private void parseRequestLine(int from, int to) throws IOException {
+        //Index: 0        1        2
+        //Data : [method] [path]   [version]
+        if (to - from >= MAXIMUM_REQUEST_LINE_LENGTH)
+            throw new IOException("URI too long");
+
+        byte[] array = buffer.array();
+        int i = from;
+
+        while (i < to && BYTE_CLASS[array[i] & 0xff] == TOKEN)
+            i++;
+
+        methodEnd = i;
+
+        if (i == to || array[i] != ' ')
+            throw new IOException("[-] Request line not found");
+
+        targetStart = ++i;
+
+        while (i < to && array[i] != ' ')
+            i++;
+
+        targetEnd = i;
+
+        if (i == to || targetEnd == targetStart)
+            throw new IOException("[-] Request line not found");
+
+        versionStart = i + 1;
+        versionEnd = to;
+
+        if (versionEnd == versionStart)
+            throw new IOException("[-] Request line not found");
+    }
+
+    /**
+     * Parse a "name: value" header line, the optional whitespaces around the value are trimmed
+     */
+    private void parseHeader(int from, int to) throws IOException {
+        byte[] array = buffer.array();
+        int i = from;
+
+        while (i < to && BYTE_CLASS[array[i] & 0xff] == TOKEN)
+            i++;
+
+        if (i == from || i == to || array[i] != ':')
+            throw new IOException("Malformed header field");
+
+        int nameEnd = i++;
+
+        while (i < to && BYTE_CLASS[array[i] & 0xff] == SPACE)
+            i++;
+
+        int valueEnd = to;
+
+        while (valueEnd > i && BYTE_CLASS[array[valueEnd - 1] & 0xff] == SPACE)
+            valueEnd--;
+
+        if (headerCount == MAXIMUM_HEADER_COUNT)
+            throw new IOException("Too many header fields");
+
+        if (HEADER_FIELDS * headerCount == headerOffsets.length)
+            headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length << 1);
+
+        int slot = KnownHeaders.slotOf(array, from, nameEnd);
+        int offset = HEADER_FIELDS * headerCount++;
+
+        headerOffsets[offset]     = from;
+        headerOffsets[offset + 1] = nameEnd;
+        headerOffsets[offset + 2] = i;
+        headerOffsets[offset + 3] = valueEnd;
+        headerOffsets[offset + 4] = slot;
+
+        //The framing headers are needed before any value is requested
+        if (slot == KnownHeaders.CONTENT_LENGTH) {
+            contentLength = parseContentLength(i, valueEnd);
+        } else if (slot == KnownHeaders.TRANSFER_ENCODING) {
+            //Repeated fields make up a single list, so the final coding is the last one of the last field (RFC9110#5.3)
+            int codingStart = valueEnd;
+
+            while (codingStart > i && array[codingStart - 1] != ',')
+                codingStart--;
+
+            while (codingStart < valueEnd && BYTE_CLASS[array[codingStart] & 0xff] == SPACE)
+                codingStart++;
+
+            transferEncoded = true;
+            chunked = equalsIgnoreCase(codingStart, valueEnd, CHUNKED);
+        }
+    }
+
+    private long parseContentLength(int from, int to) throws IOException {
+        byte[] array = buffer.array();
+        long value = 0;
+
+        if (from == to || to - from > 18)
+            throw new IOException("Invalid Content-Length");
+
+        for (int i = from; i < to; i++) {
+            int digit = array[i] - '0';
+
+            if (digit < 0 || digit > 9)
+                throw new IOException("Invalid Content-Length");
+
+            value = value * 10 + digit;
+        }
+
+        if (contentLength != -1 && contentLength != value)
+            throw new IOException("Invalid Content-Length");
+
+        return value;
+    }
+
+    /**
+     * Compare the bytes in [from, to) against a lower case ASCII name
+     */
+    private boolean equalsIgnoreCase(int from, int to, byte[] lowerCaseName) {
+        if (to - from != lowerCaseName.length)
+            return false;
+
+        byte[] array = buffer.array();
+
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            int c = array[from + i];
+
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+
+            if (c != lowerCaseName[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Follow the chunk framing through the buffered bytes, resuming at the first chunk which wasn't complete on the previous call
+     *
+     * @return {@code true} if the buffer holds the body up to the empty line ending the trailers, or if the framing is malformed
+     */
+    private boolean scanChunks() {
+        byte[] array = buffer.array();
+        int limit = buffer.limit();
+        int i = chunkScanPosition == -1 ? headEnd : chunkScanPosition;
+
+        while (true) {
+            int lineEnd = indexOf('\n', i, limit);
+
+            if (lineEnd == -1)
+                return limit - i > ChunkedInputStream.MAXIMUM_LINE_LENGTH;
+
+            long size = 0;
+            int digits = 0;
+
+            for (int digit; i + digits < lineEnd && (digit = Character.digit(array[i + digits], 16)) != -1; digits++)
+                size = (size << 4) | digit;
+
+            if (digits == 0 || digits > 15)
+                return true;
+
+            if (size == 0)
+                break;
+
+            //The chunk data, followed by a line terminator
+            long dataEnd = lineEnd + 1 + size;
+
+            if (dataEnd >= limit)
+                return false;
+
+            if (array[(int) dataEnd] == '\n') {
+                i = (int) dataEnd + 1;
+            } else if (array[(int) dataEnd] == '\r') {
+                if (dataEnd + 1 >= limit)
+                    return false;
+
+                if (array[(int) dataEnd + 1] != '\n')
+                    return true;
+
+                i = (int) dataEnd + 2;
+            } else {
+                return true;
+            }
+
+            chunkScanPosition = i;
+        }
+
+        //Trailers, up to the empty line ending the body
+        for (int lineStart = indexOf('\n', i, limit) + 1; ; ) {
+            int lineEnd = indexOf('\n', lineStart, limit);
+
+            if (lineEnd == -1)
+                return false;
+
+            if (lineEnd == lineStart || (lineEnd == lineStart + 1 && array[lineStart] == '\r'))
+                return true;
+
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private int indexOf(char c, int from, int to) {
+        byte[] array = buffer.array();
+
+        for (int i = from; i < to; i++) {
+            if (array[i] == c)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private String string(int from, int to) {
+        return new String(buffer.array(), from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Drop the previous request once it has been served, keeping the bytes following it at the start of the buffer
+     */
+    private void discardConsumed() {
+        if (consumed == -1)
+            return;
+
+        int remaining = buffer.limit() - consumed;
+
+        if (remaining > 0)
+            System.arraycopy(buffer.array(), consumed, buffer.array(), 0, remaining);
+
+        buffer.limit(remaining);
+
+        //Nothing left for the next request, an idle connection doesn't need to hold a buffer
+        if (remaining == 0 && pooled != null) {
+            pooled.release();
+            pooled = null;
+            buffer = ByteBuffer.allocate(0);
+        }
+
+        generation++;
+        scanPosition = 0;
+        start = 0;
+        headEnd = -1;
+        consumed = -1;
+        headerCount = 0;
+        contentLength = -1;
+        chunked = false;
+        transferEncoded = false;
+        chunkScanPosition = -1;
+    }
+
+    /**
+     * Make room past the limit, taking a buffer from the pool (or a larger one) if needed
+     *
+     * @return {@code false} if the buffer is full and can't grow anymore
+     */
+    private boolean ensureWritable() {
+        int limit = buffer.limit();
+        int capacity = buffer.capacity();
+
+        if (limit < capacity)
+            return true;
+
+        if (capacity >= MAXIMUM_BUFFER_SIZE)
+            return false;
+
+        BufferPool.PooledBuffer grown = BufferPool.heap().acquire(capacity == 0
+                ? INITIAL_BUFFER_SIZE
+                : Math.min(capacity << 1, MAXIMUM_BUFFER_SIZE));
+
+        System.arraycopy(buffer.array(), 0, grown.array(), 0, limit);
+
+        if (pooled != null)
+            pooled.release();
+
+        pooled = grown;
+        buffer = grown.buffer();
+        buffer.limit(limit);
+        return true;
+    }
+
+    /**
+     * Header decoding its name and value from the parser's buffer on first access
+     */
+    private final class ParsedHeader extends Header {
+        private final int index;
+        private final int headerGeneration = generation;
+
+        private ParsedHeader(int index) {
+            this.index = index;
+            this.slot = headerSlot(index);
+        }
+
+        @Override
+        public String getKey() {
+            if (key == null) {
+                checkGeneration();
+                key = headerName(index);
+            }
+
+            return key;
+        }
+
+        @Override
+        public String getValue() {
+            if (value == null) {
+                checkGeneration();
+                value = headerValue(index);
+            }
+
+            return value;
+        }
+
+        private void checkGeneration() {
+            if (headerGeneration != generation)
+                throw new IllegalStateException("Request header accessed after its exchange has ended");
+        }
+    }
+
+    /**
+     * The raw bytes of the body: the buffered ones first, then the ones of the stream
+     */
+    private final class BufferedBody extends InputStream {
+        private final InputStream in;
+        private final int bodyGeneration = generation;
+
+        //Where the next buffered byte is, the buffer is exhausted once it reaches the limit
+        private int position = headEnd;
+
+        //Bytes left to read, unbounded for chunked bodies whose end is found by the decoder
+        private long remaining;
+
+        private BufferedBody(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        /**
+         * Single bytes are read by the chunk decoder, for the framing lines. Rather than one read from the stream per byte, whatever the stream
+         * has is read into the parser's buffer, where anything past the body is kept for the next request
+         */
+        @Override
+        public int read() throws IOException {
+            if (bodyGeneration != generation)
+                throw new IOException("The body isn't available anymore");
+
+            if (remaining == 0)
+                return -1;
+
+            if (position == buffer.limit() && !refill()) {
+                int b = in.read();
+
+                if (b != -1)
+                    remaining--;
+
+                return b;
+            }
+
+            if (position == buffer.limit())
+                return -1;
+
+            remaining--;
+            return buffer.array()[position++] & 0xff;
+        }
+
+        /**
+         * Read more of the stream into the parser's buffer, once every buffered byte of the body has been read. The body read so far isn't
+         * needed anymore, the buffer is filled from the end of the head again
+         *
+         * @return {@code false} if the buffer can't hold more bytes, in which case the stream must be read directly
+         */
+        private boolean refill() throws IOException {
+            buffer.limit(headEnd);
+            position = headEnd;
+
+            return fill(in) != 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (bodyGeneration != generation)
+                throw new IOException("The body isn't available anymore");
+
+            if (len == 0)
+                return 0;
+
+            if (remaining == 0)
+                return -1;
+
+            int count;
+            int max = (int) Math.min(len, remaining);
+
+            if (position < buffer.limit()) {
+                count = Math.min(max, buffer.limit() - position);
+                System.arraycopy(buffer.array(), position, b, off, count);
+                position += count;
+            } else {
+                count = in.read(b, off, max);
+
+                if (count < 0)
+                    return -1;
+            }
+
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(remaining, buffer.limit() - position + (long) in.available());
+        }
+
+        /**
+         * The body has been read to the end, anything buffered past it belongs to the next request
+         */
+        private void finish() {
+            if (bodyGeneration == generation)
+                consumed = position;
+        }
+    }
+
+    /**
+     * The decoded body, bounded by the maximum size
+     */
+    private static final class Body extends InputStream {
+        private final BufferedBody source;
+        private final InputStream decoded;
+        private final long maximumSize;
+
+        private long read;
+        private boolean isFinished;
+
+        private Body(BufferedBody source, InputStream decoded, long maximumSize) {
+            this.source = source;
+            this.decoded = decoded;
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (isFinished)
+                return -1;
+
+            if (len == 0)
+                return 0;
+
+            int count = decoded.read(b, off, len);
+
+            if (count < 0) {
+                isFinished = true;
+                source.finish();
+                return -1;
+            }
+
+            read += count;
+
+            if (read > maximumSize)
+                throw new IOException("Request body too large");
+
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return isFinished ? 0 : decoded.available();
+        }
+    }
+}
@@ -1,28 +1,45 @@
 package com.github.magic.core.models;
 
+import com.github.magic.core.cache.CachedFile;
+import com.github.magic.core.cache.CompressedFileCache;
+import com.github.magic.core.cache.StaticFileCache;
 import com.github.magic.core.config.Config;
 import com.github.magic.core.consts.HttpCode;
 import com.github.magic.core.consts.HttpDes;
-import com.github.magic.core.consts.Misc;
+import com.github.magic.core.consts.HttpMethod;
 import com.github.magic.core.encoder.Encoder;
 import com.github.magic.core.encoder.EncoderFactory;
 import com.github.magic.core.models.header.Header;
 import com.github.magic.core.models.header.Headers;
+import com.github.magic.core.models.header.KnownHeaders;
+import com.github.magic.core.models.header.PreEncodedHeader;
 import com.github.magic.core.models.threads.TransactionThread;
 import com.github.magic.core.utils.FileAttributeRetriever;
+import com.github.magic.core.utils.BufferPool;
 import com.github.magic.core.utils.Formatter;
+import com.github.magic.core.utils.HttpDateClock;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 public class Response implements Closeable {
+    //Header lines that never change, encoded once and shared by every response
+    private static final PreEncodedHeader SERVER_HEADER = new PreEncodedHeader("Server", "MagicWebServer/1.2");
+    private static final PreEncodedHeader NO_SNIFF_HEADER = new PreEncodedHeader("X-Content-Type-Options", "nosniff");
+    private static final PreEncodedHeader ACCEPT_RANGES_HEADER = new PreEncodedHeader("Accept-Ranges", "bytes");
+    private static final PreEncodedHeader CONNECTION_CLOSE_HEADER = new PreEncodedHeader("Connection", "close");
+    private static final PreEncodedHeader CONNECTION_KEEP_ALIVE_HEADER = new PreEncodedHeader("Connection", "keep-alive");
+
     //The associated request for this response
     private final Request req;
 
@@ -52,6 +69,9 @@ public class Response implements Closeable {
     //Used for HEAD http method, won't send the body of the response
     private boolean discardBody; 
 
+    //Notified of the next in-memory body sent, see #addCapture(Capture)
+    private Capture capture;
+
     /**
      * Tells if the current response cycle is trigger by the SSL handshake. 
      * <br>
@@ -83,7 +103,7 @@ public class Response implements Closeable {
 
         // If the handler force this connection to close (in case of time out request), then let it be
         // Else we check the value from the "Connection" header from the request 
-        this.isClosed = req.getHeaders().find("Connection").equalsIgnoreCase("close");
+        this.isClosed = req.getHeaders().find(KnownHeaders.CONNECTION).equalsIgnoreCase("close");
 
         //Check the keepAlive field for more infos
         this.keepAlive[0] = keepAlive[0];
@@ -105,14 +125,49 @@ public class Response implements Closeable {
      * <li>When the MIME type of the response type isn't already compressed (check out the list from the {@code COMPRESSED_DATE_TYPE } constant)</li>
      * </ul>
      *
+     * @see #acceptedEncoding(String)
+     *
      * @param mimeType The MIME-type of the request
      * @return the encoder to be used from the {@link EncoderFactory}
      * @throws IOException exception when performing compression
      */
     private Encoder shouldEncode(String mimeType) throws IOException {
-        if (req == null || req.getHeaders().find("Accept-Encoding").isEmpty())
+        String encodingType = acceptedEncoding(mimeType);
+
+        return encodingType == null ? null : EncoderFactory.getEncoder(encodingType);
+    }
+
+    /**
+     * Same criteria as {@link #shouldEncode(String)}, without instantiating the encoder
+     *
+     * @param mimeType The MIME-type of the request
+     * @return the name of the first encoding supported by both sides, or {@code null} if the response shouldn't be encoded
+     */
+    private String acceptedEncoding(String mimeType) {
+        if (req == null || req.getHeaders().find(KnownHeaders.ACCEPT_ENCODING).isEmpty() || !isCompressible(mimeType))
             return null;
 
+        //Going through the encoding list (usually separated with the comma delimiter)
+        String[] encodingTypes = req.getHeaders().find(KnownHeaders.ACCEPT_ENCODING).split(",");
+
+        for (String type : encodingTypes) {
+            type = type.trim();
+
+            type = type.toLowerCase();
+
+            if (EncoderFactory.isImplemented(type)) {
+                return type;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param mimeType The MIME-type of the content
+     * @return {@code false} if the content is already compressed, encoding it again would be a waste
+     */
+    private static boolean isCompressible(String mimeType) {
         String subType = mimeType.substring(mimeType.lastIndexOf("/") + 1);
 
         //Handles logic for whether we should encode this http response
@@ -128,38 +183,22 @@ public class Response implements Closeable {
 
         for (String string : COMPRESSED_DATA_TYPE) {
             if (subType.endsWith(string)) {
-                return null;
+                return false;
             }
         }
 
-        //Going through the encoding list (usually separated with the comma delimiter)
-        String[] encodingTypes = req.getHeaders().find("Accept-Encoding").split(",");
-
-        for (String type : encodingTypes) {
-            type = type.trim();
-
-            if (EncoderFactory.isImplemented(type.toLowerCase())) {
-                return EncoderFactory.getEncoder(type);
-            }
-        }
-
-        return null;
+        return true;
     }
 
     /**
-     * Determine the type of output stream for the response
+     * Determine the type of output stream for the response. The "Transfer-Encoding" of the request only describes the request body,
+     * the response is only framed with {@link ChunkedOutputStream} when its own length isn't known beforehand (see {@link #sendChunkedFile(File, String, String)})
      *
-     * @return {@link ChunkedOutputStream} or {@link ResponseOutputStream}
+     * @return {@link ResponseOutputStream}
      * @throws IOException I/O exception that might raise when tried to get the output stream
      */
     private OutputStream getOutputStreamType() throws IOException {
-        OutputStream out = req.getRequestSocket().getOutputStream();
-        String header = req.getHeaders().find("Transfer-Encoding");
-
-        if (header.equalsIgnoreCase("chunked"))
-            return new ChunkedOutputStream(out);
-
-        return new ResponseOutputStream(out);
+        return new ResponseOutputStream(req.getRequestSocket().getOutputStream());
     }
 
 
@@ -177,13 +216,24 @@ public class Response implements Closeable {
      * @param status the http status code
      */
     public void send(byte[] byteArr, int length, Date dateModified, String mimeType, short status) {
+        sendContent(byteArr, length, HttpDateClock.format(dateModified), mimeType, status);
+    }
+
+    /**
+     * @see #send(byte[], int, Date, String, short)
+     *
+     * @param lastModified the already rendered "Last-Modified" value
+     */
+    private void sendContent(byte[] byteArr, int length, String lastModified, String mimeType, short status) {
         //Skip if SSL handshake isn't completed
         if (!isHandshakeCompleted) return;
 
         this.status = status;
 
+        // Encode the response. Typically, we should encode this it if the file is too large
+        // or the file type of the current file isn't compressed by nature
         try{
-            this.encoder = shouldEncode(mimeType);
+            this.encoder = length > Config.COMPRESS_THRESHOLD ? shouldEncode(mimeType) : null;
         } catch (IOException e){
             this.encoder = null;
         }
@@ -191,16 +241,17 @@ public class Response implements Closeable {
         int realLength = length > 0 ? length : byteArr.length;
         byte[] content = null;
 
+        //Handed over before compression, the capture gets the same content whatever the client accepts
+        handOverCapture(byteArr, realLength, mimeType, lastModified);
+
         try{
-            // Encode the response. Typically, we should encode this it if the file is too large
-            // or the file type of the current file isn't compressed by nature
-            if (encoder != null && length > Config.COMPRESS_THRESHOLD) {
+            if (encoder != null) {
                 content = encoder.encode(byteArr, realLength);
                 realLength = content.length;
             }
 
             if (!isHeaderSent){
-                prepareHeader(dateModified, realLength, mimeType);
+                prepareHeader(lastModified, realLength, mimeType);
                 sendHeaders();
                 isHeaderSent = true;
             }
@@ -214,6 +265,21 @@ public class Response implements Closeable {
             return;
         }
 
+        logResponse(realLength);
+    }
+
+    private void handOverCapture(byte[] body, int length, String mimeType, String lastModified) {
+        if (capture == null)
+            return;
+
+        Capture current = capture;
+        capture = null;
+
+        if (!isHeaderSent)
+            current.captured(status, headers, body, length, mimeType, lastModified);
+    }
+
+    private void logResponse(long length) {
         if (Config.VERBOSE){
             String semanticPath = processSemanticPath();
             System.out.printf("[+] %-30s %5d %-50s %3d %-35s %8s\n",
@@ -222,7 +288,7 @@ public class Response implements Closeable {
                     semanticPath,
                     status,
                     HttpDes.statuses[status],
-                    Formatter.getFormatedLength(realLength)
+                    Formatter.getFormatedLength((int) Math.min(length, Integer.MAX_VALUE))
             );
         }
     }
@@ -301,11 +367,81 @@ public class Response implements Closeable {
         send(text.trim(), "application/json", status);
     }
 
+    /**
+     * Send back a response stored earlier (e.g. by a cache), the stored headers are written as is, next to the ones of the current connection
+     *
+     * @param status the http status code
+     * @param storedHeaders the headers set by the handler which produced the response
+     * @param body the body, which must not be modified
+     * @param mimeType the mimeType of the body
+     * @param lastModified the already rendered "Last-Modified" value
+     */
+    public void replay(short status, List<PreEncodedHeader> storedHeaders, byte[] body, String mimeType, String lastModified) {
+        for (PreEncodedHeader header : storedHeaders)
+            headers.putIfAbsent(header);
+
+        if (body.length == 0)
+            discardBody = true;
+
+        sendContent(body, body.length, lastModified, mimeType, status);
+    }
+
+    /**
+     * Same as {@link #replay(short, List, byte[], String, String)}, with the compressed variants of the body kept by the caller, so that
+     * the body isn't compressed again on every replay
+     *
+     * @param variants the compressed variants of the body
+     */
+    public void replay(short status, List<PreEncodedHeader> storedHeaders, byte[] body, String mimeType, String lastModified, Variants variants) {
+        Encoder variantEncoder;
+
+        try {
+            variantEncoder = body.length > Config.COMPRESS_THRESHOLD ? shouldEncode(mimeType) : null;
+        } catch (IOException e) {
+            variantEncoder = null;
+        }
+
+        if (variantEncoder == null || !isHandshakeCompleted) {
+            replay(status, storedHeaders, body, mimeType, lastModified);
+            return;
+        }
+
+        for (PreEncodedHeader header : storedHeaders)
+            headers.putIfAbsent(header);
+
+        this.status = status;
+
+        try {
+            byte[] content = variants.encoded(variantEncoder);
+
+            handOverCapture(body, body.length, mimeType, lastModified);
+            sendBytes(content, 0, content.length, lastModified, mimeType, status, variantEncoder);
+        } catch (IOException e) {
+            if (Config.SHOW_ERROR) System.err.println("[-] Failed to serve: " + (req == null ? "[Unable to get req path]" : req.getPath().getPath()));
+        }
+    }
+
+    /**
+     * Be notified of the next body sent from memory ({@link #send(byte[], int, Date, String, short)} and the methods built on it), before
+     * it's compressed and written. Responses sent any other way (files, streams, raw output) aren't captured. Captures are only used once,
+     * in the order they've been added
+     *
+     * @param capture the capture
+     */
+    public void addCapture(Capture capture) {
+        Capture previous = this.capture;
+
+        this.capture = previous == null ? capture : (status, headers, body, length, mimeType, lastModified) -> {
+            previous.captured(status, headers, body, length, mimeType, lastModified);
+            capture.captured(status, headers, body, length, mimeType, lastModified);
+        };
+    }
+
     /**
      * Set a new header for the response. This method preserve the encapsulation state of the {@link Headers} object. Invoke this method will create
      * a new {@link Header} object <br>
      *
-     * If the header already existed, it's value will be overwritten <br>
+     * If the header already existed (case-insensitively), it's value will be overwritten <br>
      *
      *
      * @param key The key (return if be blank or empty)
@@ -318,13 +454,7 @@ public class Response implements Closeable {
         if (value == null || value.isEmpty() || value.isBlank())
             return;
 
-        String existed = headers.find(key);
-
-        if (existed.isEmpty()){
-            headers.add(new Header(key.trim(), value.trim()));
-        }else{
-            headers.set(existed, value);
-        }
+        headers.put(key.trim(), value.trim());
     }
 
 
@@ -360,41 +490,40 @@ public class Response implements Closeable {
      * Prepares the <a href="https://developer.mozilla.org/en-US/docs/Glossary/CORS-safelisted_response_header">CORS safe list header</a> <br> <br>
      * This method also take in consideration the "Access-Control-Expose-Headers" header from cors for an extension of CORS safe list
      *
-     * @param lastModified Last date when the resource was modified
+     * @param lastModified Last date when the resource was modified, already rendered
      * @param length The length (of the byte array). If given negative numbers, this value represents the chunk-based serving style
      * @param mimeType The MIME-type of the content
      */
-    private void prepareHeader(Date lastModified, int length, String mimeType) {
-        setHeader("Content-Encoding", (encoder != null && length > Config.COMPRESS_THRESHOLD)
-                ? encoder.toString()
-                : null
-        ); //Content-Encoding is an exception, it must be set for every requests
+    private void prepareHeader(String lastModified, long length, String mimeType) {
+        //Headers already set by the handler take precedence over the defaults below
+        if (encoder != null)
+            headers.putIfAbsent(KnownHeaders.CONTENT_ENCODING, encoder.toString()); //Content-Encoding is an exception, it must be set for every requests
 
         if (!discardBody){
             //Set the common serving header
             //If error response, no need to set "Last-Modified"
             if (status < 400)
-                setHeader("Last-Modified", Formatter.convertTime(lastModified));
+                headers.putIfAbsent(KnownHeaders.LAST_MODIFIED, lastModified);
 
-            if (length != - 1){
-                setHeader("Content-Length", "" + length);
+            if (length >= 0){
+                headers.putIfAbsent(KnownHeaders.CONTENT_LENGTH, Long.toString(length));
             }
 
-            setHeader("Content-Type", mimeType + ";charset=utf-8");
+            headers.putIfAbsent(KnownHeaders.CONTENT_TYPE, mimeType + ";charset=utf-8");
 
             // Prevent MIME sniffing
             // https://en.wikipedia.org/wiki/Content_sniffing
-            setHeader("X-Content-Type-Options", "nosniff");
+            headers.putIfAbsent(NO_SNIFF_HEADER);
         }
 
         //Set the "dangerous" (not in the safe list) headers
-        setHeader("Server", "MagicWebServer/1.2");
-        setHeader("Date", Formatter.convertTime(null));
-        setHeader("Connection", isClosed ? "close" : "keep-alive");
-        setHeader("Accept-Ranges", "bytes");
+        headers.putIfAbsent(SERVER_HEADER);
+        headers.putIfAbsent(HttpDateClock.dateHeader());
+        headers.putIfAbsent(isClosed ? CONNECTION_CLOSE_HEADER : CONNECTION_KEEP_ALIVE_HEADER);
+        headers.putIfAbsent(ACCEPT_RANGES_HEADER);
 
         if (!isClosed)
-            setHeader("Keep-Alive", "timeout=" + keepAlive[1] + ", max=" + keepAlive[0]); //TODO hardcoded
+            headers.putIfAbsent(KnownHeaders.KEEP_ALIVE, "timeout=" + keepAlive[1] + ", max=" + keepAlive[0]); //TODO hardcoded
 
         //TODO after done on the cache part, make sure to add Cache-Control, Pragma and Expires (in case of backward compatibility) to here
         //as it's in the safe list
@@ -402,42 +531,27 @@ public class Response implements Closeable {
         //Check for this header "Access-Control-Expose-Headers" added by the cors middleware
         //as it provides extension to the current cors safe list
 
-        String exposedHeader = headers.find("Access-Control-Expose-Headers");
+        String exposedHeader = headers.find(KnownHeaders.ACCESS_CONTROL_EXPOSE_HEADERS);
 
         if (exposedHeader.equals("*")) // Allow all header to be exposed
             return;
 
         if (!exposedHeader.isEmpty()){
             ArrayList<String> exposedHeaderList = new ArrayList<>(List.of(exposedHeader.split(",")));
-            headers.getHeaders().removeIf(i -> !exposedHeaderList.contains(i.getKey()));
+            headers.removeIf(i -> !exposedHeaderList.contains(i.getKey()));
         }
     }
 
     /**
-     * Send the response line independently
-     * 
-     * @see #sendHeaders()
-     * 
-     * @throws IOException i/o error when sending
-     */
-    private void sendResponseLine() throws IOException {
-        //Compose and write the response line
-        String responseLine = "HTTP/" + (req == null ? "1.1" : req.getVersion()) + " " + status + " " + HttpDes.statuses[status];
-
-        oStream.write(responseLine.getBytes(StandardCharsets.UTF_8));
-        oStream.write(Misc.CRLF);
-    }
-
-    /**
-     * Send BOTH the {@link #sendResponseLine()} and the headers of the current response
+     * Send BOTH the status line and the headers of the current response, encoded into a single write
      * 
      * @throws IOException i/o error when sending
      */
     private void sendHeaders() throws IOException {
-        sendResponseLine();
+        byte[] statusLine = HttpDes.statusLine(req == null ? "1.1" : req.getVersion(), status);
 
         //Write the header
-        headers.write(oStream);
+        headers.write(oStream, statusLine);
     }
 
     /**
@@ -467,7 +581,7 @@ public class Response implements Closeable {
 
         //Sent as attachment
         setHeader("Content-disposition", "attachment; filename=" + fileName);
-        sendFile(realPath);
+        sendFile(path); //sendFile() resolves the path against the static directory itself
     }
 
     /**
@@ -480,6 +594,19 @@ public class Response implements Closeable {
         if (path.charAt(0) == '.')
             path = path.substring(1);
     
+        //Hot small files are served from memory, without touching the file system
+        CachedFile cached = StaticFileCache.shared().get(path);
+
+        if (cached != null) {
+            try {
+                sendCachedFile(cached);
+            } finally {
+                cached.release();
+            }
+
+            return;
+        }
+
         File file = new File(Config.STATIC_DIR + path);
         
         if (file.isDirectory()) {
@@ -508,125 +635,520 @@ public class Response implements Closeable {
     }
 
     /**
-     * Read and call the {@link #send(byte[], int, Date, String, short)} method to send the file. This method support 206 Partial Content type of response
-     * when the "Range" header is found
-     * 
-     * @see #readWithRangeHeader(String, FileInputStream, byte[], int)
-     * @see #send(byte[], int, Date, String, short)
+     * Send the file, or the part of it requested through the "Range" header (206 Partial Content). Compressible files are sent from
+     * their precompressed sidecar if any, or compressed once and then served from the {@link CompressedFileCache} when small enough to be encoded in memory.
+     * Every other file is streamed with {@link #transferFile(File, long, long)}. Revalidation requests for an unchanged file get a 304 Not Modified,
+     * without the file being read
+     *
+     * @see #parseRange(String, long)
+     * @see #isNotModified(String, long)
      *
      * @param file The base directory of the file
      * @throws IOException i/o error when sending
      */
     private void readAndSendFile(File file) throws IOException {
-        FileInputStream iStream = new FileInputStream(file);
         long fileLength = file.length();
-        String rangeHeader = req.getHeaders().find("Range");
-        byte[] arr;
-        int[] byteRead;
+        long fileModified = file.lastModified();
+        String mimeType = FileAttributeRetriever.getMimeType(file);
+        String lastModified = HttpDateClock.lastModified(file);
 
-        //TODO chunk-based response
-       /* if ( dir.file().length() > Config.BODY_BUFFER_SIZE  && oStream instanceof ChunkedOutputStream){
-            //Sending in chunks instead
-            String mimeType = dir.getMimeType();
+        //The content sent depends on the "Accept-Encoding" of the request, caches must key on it (identity and 304 included)
+        if (fileLength > Config.COMPRESS_THRESHOLD && isCompressible(mimeType))
+            headers.putIfAbsent(KnownHeaders.VARY, "Accept-Encoding");
 
-            setHeader("Transfer-Encoding", "chunked");
-
-            prepareHeader(new Date(), -1, mimeType);
-            sendResponseLine();
-            setHeaderSent(true); //"trick" the sent() method so that we can trigger it manually later after the chunked contents
+        String identityTag = StaticFileCache.etag(fileLength, fileModified, null);
+        String rangeHeader = requestedRange(identityTag, fileModified);
+        String encoding = rangeHeader.isEmpty() && fileLength > Config.COMPRESS_THRESHOLD ? acceptedEncoding(mimeType) : null;
+        File sidecar = encoding == null ? null : CompressedFileCache.sidecar(file, encoding);
 
-            //Rest of the header comes at the "Trailer"
-            List<String> headerList = new ArrayList<>();
+        //Too large to be compressed in memory, it can only be compressed on the fly. The compressed length isn't known
+        //until the end, which requires chunked framing (HTTP/1.1 only, older clients get the identity content)
+        if (encoding != null && sidecar == null && fileLength > Config.BODY_BUFFER_SIZE && !"1.1".equals(req.getVersion()))
+            encoding = null;
 
-            for (Header header : headers)
-                headerList.add(header.getKey());
+        String etag = encoding == null ? identityTag : StaticFileCache.etag(fileLength, fileModified, encoding);
 
-            setHeader("Trailer", String.join(", ", headerList));
+        if (isNotModified(etag, fileModified)){
+            sendNotModified(etag, lastModified);
+            return;
+        }
 
-            arr = new byte[Config.MAXIMUM_CHUNK_SIZE];
-            byteRead = iStream.read(arr);
+        headers.putIfAbsent(KnownHeaders.ETAG, etag);
 
-            while (byteRead != -1){
-                send(arr, byteRead, new Date(dir.file().lastModified()), dir.getMimeType(), HttpCode.OK);
+        if (encoding != null){
+            Encoder fileEncoder = EncoderFactory.getEncoder(encoding);
 
-                int avaiByte = iStream.available();
+            //Precompressed next to the file, sent as is
+            if (sidecar != null){
+                sendFileContent(sidecar, 0, sidecar.length(), lastModified, mimeType, HttpCode.OK, fileEncoder);
+            } else if (fileLength <= Config.BODY_BUFFER_SIZE){
+                //The encoders need the whole content in memory, only whole files below the body buffer size are compressed (once, then cached)
+                byte[] content = CompressedFileCache.compressed(file, fileEncoder);
 
-                if (avaiByte < 0)
-                    ((ChunkedOutputStream) oStream).writeTerminateChunk();
-                else
-                    byteRead = iStream.read(arr);
+                sendBytes(content, 0, content.length, lastModified, mimeType, HttpCode.OK, fileEncoder);
+            } else {
+                sendChunkedFile(file, lastModified, mimeType);
             }
 
-            headers.write(oStream);
             return;
-        }*/
+        }
 
-        arr = new byte[Config.BODY_BUFFER_SIZE];
+        long[] range = prepareRange(rangeHeader, fileLength);
 
-        byteRead = readWithRangeHeader(
-            rangeHeader, 
-            iStream, 
-            arr, 
-            Config.BODY_BUFFER_SIZE
-            );
+        if (range == null)
+            return;
 
-        short resCode = HttpCode.OK;
+        short resCode = rangeHeader.isEmpty() ? HttpCode.OK : HttpCode.PARTIAL_CONTENT;
 
-        if (byteRead[0] == -2){
-            //416 Range Not Satisfiable
-            sendError(HttpCode.RANGE_NOT_SATISFIABLE);
+        sendFileContent(file, range[0], range[1], lastModified, mimeType, resCode, null);
+    }
+
+    /**
+     * Send a file held by the {@link StaticFileCache}, the same way as {@link #readAndSendFile(File)} but straight from memory.
+     * Mapped files are too large to be compressed in memory, they go through {@link #readAndSendFile(File)} when the response should be encoded
+     *
+     * @param cached the cached file
+     * @throws IOException i/o error when compressing the content or writing to the socket
+     */
+    private void sendCachedFile(CachedFile cached) throws IOException {
+        if (cached.length() > Config.COMPRESS_THRESHOLD && isCompressible(cached.mimeType()))
+            headers.putIfAbsent(KnownHeaders.VARY, "Accept-Encoding");
+
+        String rangeHeader = requestedRange(cached.etag(null), cached.modified());
+        String encoding = rangeHeader.isEmpty() && cached.length() > Config.COMPRESS_THRESHOLD ? acceptedEncoding(cached.mimeType()) : null;
+
+        if (encoding != null && cached.isMapped()){
+            readAndSendFile(cached.file());
             return;
         }
 
-        if (byteRead[0] + byteRead[1] <= fileLength && !rangeHeader.isEmpty()){
-            //Read partially, response with 216 Partial Content
-            resCode = HttpCode.PARTIAL_CONTENT;
+        String etag = cached.etag(encoding);
+
+        if (isNotModified(etag, cached.modified())){
+            sendNotModified(etag, cached.lastModified());
+            return;
+        }
+
+        //Rendered once for the cached file, the defaults of prepareHeader() are only used when these are absent
+        headers.putIfAbsent(cached.contentTypeHeader());
+        headers.putIfAbsent(cached.lastModifiedHeader());
+
+        if (encoding != null){
+            Encoder fileEncoder = EncoderFactory.getEncoder(encoding);
+            byte[] content = cached.encoded(fileEncoder);
+
+            headers.putIfAbsent(KnownHeaders.ETAG, etag);
+            sendBytes(content, 0, content.length, cached.lastModified(), cached.mimeType(), HttpCode.OK, fileEncoder);
+            return;
+        }
+
+        long[] range = prepareRange(rangeHeader, cached.length());
+
+        if (range == null)
+            return;
+
+        short resCode = rangeHeader.isEmpty() ? HttpCode.OK : HttpCode.PARTIAL_CONTENT;
+
+        headers.putIfAbsent(cached.etagHeader());
+        sendBuffer(cached.slice((int) range[0], (int) range[1]), cached.lastModified(), cached.mimeType(), resCode);
+    }
+
+    /**
+     * Evaluate the "If-None-Match" and "If-Modified-Since" preconditions of the request. "If-Modified-Since" is only considered
+     * when there's no "If-None-Match", and both are only considered for GET and HEAD requests
+     *
+     * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#section-13.2.2">RFC 9110, precedence of preconditions</a>
+     *
+     * @param etag the entity tag of the content which would be sent
+     * @param modified the modification time of the resource
+     * @return {@code true} if the client's copy is still valid, and should be answered with 304 Not Modified
+     */
+    private boolean isNotModified(String etag, long modified) {
+        if (req.getMethod() != HttpMethod.GET && req.getMethod() != HttpMethod.HEAD)
+            return false;
+
+        String ifNoneMatch = req.getHeaders().find(KnownHeaders.IF_NONE_MATCH);
+
+        if (!ifNoneMatch.isEmpty()){
+            if (ifNoneMatch.trim().equals("*"))
+                return true;
+
+            //Weak comparison, "W/" prefixes are ignored
+            String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+
+            for (String candidate : ifNoneMatch.split(",")){
+                candidate = candidate.trim();
+
+                if (candidate.startsWith("W/"))
+                    candidate = candidate.substring(2);
+
+                if (candidate.equals(opaqueTag))
+                    return true;
+            }
+
+            return false;
+        }
+
+        String ifModifiedSince = req.getHeaders().find(KnownHeaders.IF_MODIFIED_SINCE);
 
-            int endByte = byteRead[0] + byteRead[1] >= fileLength
-                    ? (int) fileLength - 1
-                    : byteRead[0] + byteRead[1];
+        if (ifModifiedSince.isEmpty())
+            return false;
 
+        long since = HttpDateClock.parse(ifModifiedSince);
 
-            //Set the Content-Range header
+        //Dates are sent with a precision of one second
+        return since >= 0 && modified / 1000 <= since / 1000;
+    }
+
+    /**
+     * Answer a revalidation request with 304 Not Modified, which has no body. The validators are sent again, so that the client can update its copy
+     *
+     * @param etag the entity tag of the content
+     * @param lastModified the rendered last modified date of the resource
+     * @throws IOException i/o error when writing to the socket
+     */
+    private void sendNotModified(String etag, String lastModified) throws IOException {
+        //Skip if SSL handshake isn't completed
+        if (!isHandshakeCompleted) return;
+
+        this.status = HttpCode.NOT_MODIFIED;
+        this.encoder = null;
+        this.discardBody = true;
+
+        if (!isHeaderSent){
+            headers.putIfAbsent(KnownHeaders.ETAG, etag);
+            headers.putIfAbsent(KnownHeaders.LAST_MODIFIED, lastModified);
+
+            prepareHeader(lastModified, -1, null);
+            sendHeaders();
+            isHeaderSent = true;
+        }
+
+        logResponse(0);
+    }
+
+    /**
+     * Get the range to be sent. The "If-Range" precondition only lets the range through if the client's copy is the current one: the entity tag
+     * must match strongly (weak tags never do), or the date must be the exact modification date. Otherwise, the whole resource is sent
+     *
+     * @param etag the entity tag of the identity content
+     * @param modified the modification time of the resource
+     * @return the "Range" header of the request, or an empty string if the whole resource should be sent
+     */
+    private String requestedRange(String etag, long modified) {
+        String rangeHeader = req.getHeaders().find(KnownHeaders.RANGE);
+        String ifRange = req.getHeaders().find(KnownHeaders.IF_RANGE).trim();
+
+        if (rangeHeader.isEmpty() || ifRange.isEmpty())
+            return rangeHeader;
+
+        boolean matches = ifRange.startsWith("\"")
+                ? ifRange.equals(etag)
+                : !ifRange.startsWith("W/") && HttpDateClock.parse(ifRange) / 1000 == modified / 1000;
+
+        return matches ? rangeHeader : "";
+    }
+
+    /**
+     * Send identity content held in a buffer, e.g. a slice of a cached or memory-mapped file. On plaintext connections the buffer is written
+     * straight to the socket channel (a mapped file is then copied from the page cache by the kernel), otherwise it's copied through the stream
+     *
+     * @param content the content, from its position to its limit
+     * @param lastModified the rendered last modified date of the resource
+     * @param mimeType the MIME-type of the resource
+     * @param status the http status code
+     * @throws IOException i/o error when writing to the socket
+     */
+    private void sendBuffer(ByteBuffer content, String lastModified, String mimeType, short status) throws IOException {
+        //Skip if SSL handshake isn't completed
+        if (!isHandshakeCompleted) return;
+
+        int count = content.remaining();
+
+        this.status = status;
+        this.encoder = null;
+
+        if (!isHeaderSent){
+            prepareHeader(lastModified, count, mimeType);
+            sendHeaders();
+            isHeaderSent = true;
+        }
+
+        if (!discardBody){
+            SocketChannel socketChannel = req.getRequestSocket().getChannel();
+
+            if (socketChannel != null && oStream instanceof ResponseOutputStream){
+                //Headers have been written through the stream, make sure they're out before the content
+                oStream.flush();
+
+                while (content.hasRemaining())
+                    socketChannel.write(content);
+            } else if (content.hasArray()){
+                oStream.write(content.array(), content.arrayOffset() + content.position(), count);
+            } else {
+                try (BufferPool.PooledBuffer pooled = BufferPool.heap().acquire(Config.MAXIMUM_CHUNK_SIZE)){
+                    byte[] buffer = pooled.array();
+
+                    while (content.hasRemaining()){
+                        int length = Math.min(buffer.length, content.remaining());
+
+                        content.get(buffer, 0, length);
+                        oStream.write(buffer, 0, length);
+                    }
+                }
+            }
+        }
+
+        logResponse(count);
+    }
+
+    /**
+     * Resolve the part of the resource requested through the "Range" header, setting the "Content-Range" header for partial responses.
+     * Unsatisfiable ranges are answered with 416 Range Not Satisfiable right away
+     *
+     * @see #parseRange(String, long)
+     *
+     * @param rangeHeader the requested range, empty for the whole resource
+     * @param length the length of the whole resource
+     * @return the {@code [offset, count]} to send, or {@code null} if the response has already been sent
+     */
+    private long[] prepareRange(String rangeHeader, long length) {
+        long[] range = parseRange(rangeHeader, length);
+
+        if (range == null){
+            //416 Range Not Satisfiable
+            setHeader("Content-Range", "bytes */" + length);
+            sendError(HttpCode.RANGE_NOT_SATISFIABLE);
+            return null;
+        }
+
+        if (!rangeHeader.isEmpty()){
+            //Read partially, response with 206 Partial Content
             //https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Content-Range
-            //The part after the "/" could be set to * if unknown
-            setHeader("Content-Range","bytes " + byteRead[0] + "-" + endByte + "/" + fileLength);
+            setHeader("Content-Range","bytes " + range[0] + "-" + (range[0] + range[1] - 1) + "/" + length);
         }
 
-        send(arr, byteRead[1], new Date(file.lastModified()), FileAttributeRetriever.getMimeType(file), resCode);
+        return range;
     }
 
     /**
-     * If the "Range" header isn't provided in the request, then this method will simply read as much bytes as possible from the content, else, it'll try
-     * and read only the bytes between the offset and the upper bound from the "Range" header
+     * Send {@code count} bytes of the file as the response body
      *
-     * @return the {@code [offset,length]} of how much bytes read, or {@code [0, -1]} if read none and {@code [-2, 0]} if invalid range
+     * @param file the file to be sent
+     * @param offset the position of the first byte to send
+     * @param count the number of bytes to send
+     * @param lastModified the rendered last modified date of the resource
+     * @param mimeType the MIME-type of the resource
+     * @param status the http status code
+     * @param encoder the encoding the file content is already compressed with, {@code null} for identity content
+     * @throws IOException i/o error when reading the file or writing to the socket
      */
-    private int[] readWithRangeHeader(String rangeHeader, FileInputStream iStream, byte[] arr, int maxLength) throws IOException {
+    private void sendFileContent(File file, long offset, long count, String lastModified, String mimeType, short status, Encoder encoder) throws IOException {
+        //Skip if SSL handshake isn't completed
+        if (!isHandshakeCompleted) return;
+
+        this.status = status;
+        this.encoder = encoder;
+
+        if (!isHeaderSent){
+            prepareHeader(lastModified, count, mimeType);
+            sendHeaders();
+            isHeaderSent = true;
+        }
+
+        if (!discardBody)
+            transferFile(file, offset, count);
+
+        logResponse(count);
+    }
+
+    /**
+     * Send content held in memory as is, e.g. a cached file or its compressed variant (see {@link StaticFileCache} and {@link CompressedFileCache})
+     *
+     * @param content the content
+     * @param offset the index of the first byte to send
+     * @param count the number of bytes to send
+     * @param lastModified the rendered last modified date of the resource
+     * @param mimeType the MIME-type of the resource
+     * @param status the http status code
+     * @param encoder the encoder the content was compressed with, {@code null} for identity content
+     * @throws IOException i/o error when writing to the socket
+     */
+    private void sendBytes(byte[] content, int offset, int count, String lastModified, String mimeType, short status, Encoder encoder) throws IOException {
+        //Skip if SSL handshake isn't completed
+        if (!isHandshakeCompleted) return;
+
+        this.status = status;
+        this.encoder = encoder;
+
+        if (!isHeaderSent){
+            prepareHeader(lastModified, count, mimeType);
+            sendHeaders();
+            isHeaderSent = true;
+        }
+
+        if (!discardBody)
+            oStream.write(content, offset, count);
+
+        logResponse(count);
+    }
+
+    /**
+     * Send the whole file compressed with the accepted encoding, as a "Transfer-Encoding: chunked" body. The file is read and compressed
+     * one {@link Config#MAXIMUM_CHUNK_SIZE} slice at a time, so the memory used doesn't depend on the file size
+     *
+     * @param file the file to be sent
+     * @param lastModified the rendered last modified date of the file
+     * @param mimeType the MIME-type of the file
+     * @throws IOException i/o error when reading the file or writing to the socket
+     */
+    private void sendChunkedFile(File file, String lastModified, String mimeType) throws IOException {
+        //Skip if SSL handshake isn't completed
+        if (!isHandshakeCompleted) return;
+
+        this.status = HttpCode.OK;
+        this.encoder = shouldEncode(mimeType);
+
+        if (!isHeaderSent){
+            setHeader("Transfer-Encoding", "chunked");
+            prepareHeader(lastModified, -1, mimeType);
+            sendHeaders();
+            isHeaderSent = true;
+        }
+
+        if (!discardBody){
+            ChunkedOutputStream chunkedStream = new ChunkedOutputStream(oStream);
+
+            //Closing the encoding stream writes the compression trailer, the chunked stream itself keeps the socket open
+            try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                 OutputStream encodedStream = encoder.wrap(chunkedStream)){
+                copyRange(fileChannel, 0, fileChannel.size(), encodedStream);
+            }
+
+            chunkedStream.writeTerminateChunk();
+        }
+
+        logResponse(file.length());
+    }
+
+    /**
+     * Write {@code count} bytes of the file starting at {@code offset} to the client. On plaintext connections the file channel is
+     * transferred straight into the socket channel, letting the kernel do the copy (sendfile). SSL sockets don't expose a channel
+     * (the bytes must be encrypted in user space), so the file is copied through a pooled buffer instead
+     *
+     * @param file the file to be sent
+     * @param offset the position of the first byte to send
+     * @param count the number of bytes to send
+     * @throws IOException i/o error when reading the file or writing to the socket
+     */
+    private void transferFile(File file, long offset, long count) throws IOException {
+        SocketChannel socketChannel = req.getRequestSocket().getChannel();
+
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long position  = offset;
+            long remaining = count;
+
+            if (socketChannel != null && oStream instanceof ResponseOutputStream){
+                //Headers have been written through the stream, make sure they're out before the file
+                oStream.flush();
+
+                while (remaining > 0){
+                    long sent = fileChannel.transferTo(position, remaining, socketChannel);
+
+                    //File got truncated in the meantime
+                    if (sent <= 0) break;
+
+                    position  += sent;
+                    remaining -= sent;
+                }
+
+                return;
+            }
+
+            copyRange(fileChannel, position, remaining, oStream);
+        }
+    }
+
+    /**
+     * Copy part of the file to the given stream through a pooled buffer, one {@link Config#MAXIMUM_CHUNK_SIZE} slice at a time
+     *
+     * @param fileChannel the channel of the file
+     * @param position the position of the first byte to copy
+     * @param remaining the number of bytes to copy
+     * @param out the destination stream
+     * @throws IOException i/o error when reading the file or writing to the stream
+     */
+    private void copyRange(FileChannel fileChannel, long position, long remaining, OutputStream out) throws IOException {
+        try (BufferPool.PooledBuffer pooled = BufferPool.heap().acquire(Config.MAXIMUM_CHUNK_SIZE)){
+            byte[] buffer = pooled.array();
+            ByteBuffer byteBuffer = pooled.buffer();
+
+            while (remaining > 0){
+                byteBuffer.clear().limit((int) Math.min(buffer.length, remaining));
+
+                int read = fileChannel.read(byteBuffer, position);
+
+                //File got truncated in the meantime
+                if (read <= 0) break;
+
+                out.write(buffer, 0, read);
+
+                position  += read;
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Resolve the (single) range requested by the "Range" header. Supported forms are {@code bytes=start-end}, {@code bytes=start-} and the
+     * suffix form {@code bytes=-length}. The end position is clamped to the end of the file
+     *
+     * @param rangeHeader the value of the "Range" header (empty if not provided)
+     * @param fileLength the length of the file
+     * @return the {@code [offset, length]} to send, the whole file when no range is given, or {@code null} if the range is invalid or unsatisfiable
+     */
+    private long[] parseRange(String rangeHeader, long fileLength) {
         //TODO support multiple ranges request, currently one range supported only
         //https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Range
-        int offset       = 0;
-        int separatorIdx = 0;
-        int len          = maxLength;
+        if (rangeHeader.isEmpty())
+            return new long[]{0, fileLength};
 
-        if (!rangeHeader.isEmpty()){
-            //TODO modify the logic here
-            separatorIdx = rangeHeader.lastIndexOf("=");
+        int separatorIdx = rangeHeader.indexOf("=");
+        int dashIdx      = rangeHeader.indexOf("-", separatorIdx + 1);
 
-            //Usually for single range request, the index would typically look like this
-            //Index        0         1
-            //Value  [start]-    [end]
+        //Usually for single range request, the index would typically look like this
+        //Index        0         1
+        //Value  [start]-    [end]
+
+        if (separatorIdx == -1 || dashIdx == -1 || rangeHeader.indexOf(",") != -1)
+            return null;
 
-            if (separatorIdx == -1) return new int[]{-2, 0};
+        String startStr = rangeHeader.substring(separatorIdx + 1, dashIdx).trim();
+        String endStr   = rangeHeader.substring(dashIdx + 1).trim();
 
-            String[] range = rangeHeader.substring(separatorIdx + 1).split("-");
+        long start, end;
 
-            if (!range[0].isEmpty())                     offset = Integer.parseInt(range[0]);
-            if (range.length > 1 && !range[1].isEmpty()) len    = Integer.parseInt(range[1]);
+        try {
+            if (startStr.isEmpty()){
+                //Suffix range, the last N bytes of the file
+                long suffixLength = Long.parseLong(endStr);
+
+                if (suffixLength <= 0) return null;
+
+                start = Math.max(0, fileLength - suffixLength);
+                end   = fileLength - 1;
+            } else {
+                start = Long.parseLong(startStr);
+                end   = endStr.isEmpty() ? fileLength - 1 : Math.min(Long.parseLong(endStr), fileLength - 1);
+            }
+        } catch (NumberFormatException e){
+            return null;
         }
 
-        iStream.skip(offset);
-        return new int[]{offset, iStream.read(arr, 0, len)};
+        if (start < 0 || start >= fileLength || end < start)
+            return null;
+
+        return new long[]{start, end - start + 1};
     }
 
     /**
@@ -757,4 +1279,31 @@ public class Response implements Closeable {
     public void setHeaderSent(boolean headerSent) {
         isHeaderSent = headerSent;
     }
+
+    /**
+     * Gives the compressed variants of a replayed body, see {@link #replay(short, List, byte[], String, String, Variants)}
+     */
+    public interface Variants {
+        /**
+         * @param encoder the encoder of the accepted encoding
+         * @return the body compressed with the encoder, which must not be modified
+         * @throws IOException exception raised when compressing the body
+         */
+        byte[] encoded(Encoder encoder) throws IOException;
+    }
+
+    /**
+     * Receives a response body sent from memory, see {@link #addCapture(Capture)}
+     */
+    public interface Capture {
+        /**
+         * @param status the http status code
+         * @param headers the headers set so far, the default ones aren't added yet
+         * @param body the body, only valid during the call
+         * @param length the length of the body
+         * @param mimeType the mimeType of the body
+         * @param lastModified the rendered "Last-Modified" value
+         */
+        void captured(short status, Headers headers, byte[] body, int length, String mimeType, String lastModified);
+    }
 }
@@ -4,6 +4,17 @@ public class Header {
     protected String key;
     protected String value;
 
+    //The slot of the key in KnownHeaders (-1 if it isn't a well-known one), resolved on first use
+    protected int slot = UNRESOLVED_SLOT;
+
+    protected static final int UNRESOLVED_SLOT = -2;
+
+    /**
+     * For subclasses providing the key and value lazily, through {@link #getKey()} and {@link #getValue()}
+     */
+    protected Header() {
+    }
+
     public Header(String key, String value) {
         this.key = key.trim();
         this.value = value.trim();
@@ -15,6 +26,7 @@ public class Header {
 
     public void setKey(String key) {
         this.key = key;
+        this.slot = UNRESOLVED_SLOT;
     }
 
     public String getValue() {
@@ -24,4 +36,48 @@ public class Header {
     public void setValue(String value) {
         this.value = value;
     }
+
+    /**
+     * @return the slot of the key in {@link KnownHeaders}, or -1 if it isn't a well-known header
+     */
+    protected int slot() {
+        if (slot == UNRESOLVED_SLOT)
+            slot = KnownHeaders.slotOf(getKey());
+
+        return slot;
+    }
+
+    /**
+     * @return the number of bytes of the "key: value" line, including the trailing CRLF
+     */
+    protected int encodedLength() {
+        return getKey().length() + getValue().length() + 4;
+    }
+
+    /**
+     * Encode the "key: value" line, including the trailing CRLF. Characters outside of ISO-8859-1 can't be sent in a header, they're replaced by '?'
+     *
+     * @param dst the destination array, with at least {@link #encodedLength()} bytes left
+     * @param offset the position to write to
+     * @return the position right after the encoded line
+     */
+    protected int encode(byte[] dst, int offset) {
+        offset = encode(getKey(), dst, offset);
+        dst[offset++] = ':';
+        dst[offset++] = ' ';
+        offset = encode(getValue(), dst, offset);
+        dst[offset++] = '\r';
+        dst[offset++] = '\n';
+
+        return offset;
+    }
+
+    private static int encode(String text, byte[] dst, int offset) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            dst[offset++] = (byte) (c <= 0xff ? c : '?');
+        }
+
+        return offset;
+    }
 }
@@ -1,22 +1,36 @@
 package com.github.magic.core.models.header;
 
 import com.github.magic.core.consts.Misc;
+import com.github.magic.core.utils.BufferPool;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.function.Predicate;
 
+/**
+ * The header list of a request or a response. Next to the list (kept for iteration and ordering), the first header of every
+ * well-known name is indexed by its {@link KnownHeaders} slot, which makes {@link #find(String)} O(1) for those names
+ */
 public class Headers implements Iterable<Header> {
     ArrayList<Header> headers = new ArrayList<>();
 
+    //First header of each well-known name, indexed by slot
+    private final Header[] slots = new Header[KnownHeaders.COUNT];
 
     public void add(Header newHeader) {
         if (!headers.contains(newHeader)) {
             headers.add(newHeader);
+
+            int slot = newHeader.slot();
+
+            if (slot >= 0 && slots[slot] == null)
+                slots[slot] = newHeader;
         } else {
             //We can overwrite it
-            set(newHeader.key, newHeader.value);
+            set(newHeader.getKey(), newHeader.getValue());
         }
     }
 
@@ -30,9 +44,79 @@ public class Headers implements Iterable<Header> {
         int headerLength = headers.size();
 
         for (int i = 0; i < headerLength; i++)
-            if (headers.get(i).key.equals(key)) {
+            if (headers.get(i).getKey().equals(key)) {
                 headers.set(i, new Header(key, newValue));
             }
+
+        reindex(KnownHeaders.slotOf(key));
+    }
+
+    /**
+     * Set the value of a header, overwriting the first header of that name (case-insensitively) if it already exists
+     *
+     * @param key the key of the header
+     * @param value the new value
+     */
+    public void put(String key, String value) {
+        int slot = KnownHeaders.slotOf(key);
+
+        if (slot >= 0) {
+            put(slot, value);
+            return;
+        }
+
+        for (Header header : headers) {
+            if (header.getKey().equalsIgnoreCase(key)) {
+                header.setValue(value);
+                return;
+            }
+        }
+
+        headers.add(new Header(key, value));
+    }
+
+    /**
+     * Set the value of a well-known header, overwriting the first header of that name if it already exists
+     *
+     * @param slot the slot of the header, one of the {@link KnownHeaders} constants
+     * @param value the new value
+     */
+    public void put(int slot, String value) {
+        Header existing = slots[slot];
+
+        if (existing == null) {
+            add(new Header(KnownHeaders.name(slot), value));
+        } else if (existing instanceof PreEncodedHeader) {
+            Header replacement = new Header(existing.getKey(), value);
+
+            headers.set(headers.indexOf(existing), replacement);
+            slots[slot] = replacement;
+        } else {
+            existing.setValue(value);
+        }
+    }
+
+    /**
+     * Add a well-known header, unless a header of that name is already present
+     *
+     * @param slot the slot of the header, one of the {@link KnownHeaders} constants
+     * @param value the value
+     */
+    public void putIfAbsent(int slot, String value) {
+        if (slots[slot] == null)
+            add(new Header(KnownHeaders.name(slot), value));
+    }
+
+    /**
+     * Add the header (typically a shared {@link PreEncodedHeader}), unless a header of that name is already present
+     *
+     * @param header the header
+     */
+    public void putIfAbsent(Header header) {
+        int slot = header.slot();
+
+        if (slot >= 0 ? slots[slot] == null : find(header.getKey()).isEmpty())
+            add(header);
     }
 
     /**
@@ -42,14 +126,31 @@ public class Headers implements Iterable<Header> {
      * @return the {@code value} of the header if found, empty string {@code ""} if not found
      */
     public String find(String key) {
+        int slot = KnownHeaders.slotOf(key);
+
+        if (slot >= 0)
+            return find(slot);
+
         for (Header header : headers) {
-            if (header.key.equalsIgnoreCase(key))
-                return header.value;
+            if (header.getKey().equalsIgnoreCase(key))
+                return header.getValue();
         }
 
         return "";
     }
 
+    /**
+     * Find and return the value of a well-known header
+     *
+     * @param slot the slot of the header, one of the {@link KnownHeaders} constants
+     * @return the {@code value} of the header if found, empty string {@code ""} if not found
+     */
+    public String find(int slot) {
+        Header header = slots[slot];
+
+        return header == null ? "" : header.getValue();
+    }
+
     /**
      * Write all fields of the current header list into the "key: value" format, CRLF end-of-line behavior
      * 
@@ -57,12 +158,42 @@ public class Headers implements Iterable<Header> {
      * @throws IOException
      */
     public void write(OutputStream out) throws IOException {
-        for (Header header : headers) {
-            out.write((header.getKey() + ": " + header.getValue()).getBytes());
-            out.write(Misc.CRLF);
-        }
+        write(out, null);
+    }
 
-        out.write(Misc.CRLF); // ends header block
+    /**
+     * Encode the status line and the whole header block into a single buffer, then write it with one call
+     *
+     * @see #write(OutputStream)
+     *
+     * @param out the output stream to be write to
+     * @param statusLine the encoded status line (CRLF included) written before the headers, or {@code null} for none
+     * @throws IOException
+     */
+    public void write(OutputStream out, byte[] statusLine) throws IOException {
+        int length = (statusLine == null ? 0 : statusLine.length) + Misc.CRLF.length;
+
+        for (Header header : headers)
+            length += header.encodedLength();
+
+        try (BufferPool.PooledBuffer pooled = BufferPool.heap().acquire(length)) {
+            byte[] buffer = pooled.array();
+            int offset = 0;
+
+            if (statusLine != null) {
+                System.arraycopy(statusLine, 0, buffer, 0, statusLine.length);
+                offset = statusLine.length;
+            }
+
+            for (Header header : headers)
+                offset = header.encode(buffer, offset);
+
+            // ends header block
+            buffer[offset++] = Misc.CRLF[0];
+            buffer[offset++] = Misc.CRLF[1];
+
+            out.write(buffer, 0, offset);
+        }
     }
 
     public boolean remove(String key) {
@@ -75,14 +206,33 @@ public class Headers implements Iterable<Header> {
         int headerLength = headers.size();
 
         for (int i = 0; i < headerLength; i++)
-            if (headers.get(i).key.equals(key)) {
+            if (headers.get(i).getKey().equals(key)) {
                 headers.remove(i);
+                reindex(KnownHeaders.slotOf(key));
                 return true;
             }
 
         return false;
     }
 
+    /**
+     * Remove every header matching the filter
+     *
+     * @param filter the predicate returning {@code true} for the headers to be removed
+     * @return {@code true} if any header has been removed
+     */
+    public boolean removeIf(Predicate<Header> filter) {
+        if (!headers.removeIf(filter))
+            return false;
+
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != null && filter.test(slots[slot]))
+                reindex(slot);
+        }
+
+        return true;
+    }
+
     /**
      * Return the array list of all keys from the header list
      * @return null if no header is presented, or array list of type String if convertible
@@ -122,6 +272,7 @@ public class Headers implements Iterable<Header> {
      */
     public void clear(){
         headers.clear();
+        Arrays.fill(slots, null);
     }
 
     @Override
@@ -129,7 +280,28 @@ public class Headers implements Iterable<Header> {
         return headers.iterator();
     }
 
+    /**
+     * @return the underlying list. The well-known header index isn't updated when it's modified directly,
+     * prefer {@link #add(Header)}, {@link #remove(String)} or {@link #removeIf(Predicate)}
+     */
     public ArrayList<Header> getHeaders() {
         return headers;
     }
+
+    /**
+     * Point the slot back to the first header of its name, after the list has been modified
+     */
+    private void reindex(int slot) {
+        if (slot < 0)
+            return;
+
+        slots[slot] = null;
+
+        for (Header header : headers) {
+            if (header.slot() == slot) {
+                slots[slot] = header;
+                return;
+            }
+        }
+    }
 }
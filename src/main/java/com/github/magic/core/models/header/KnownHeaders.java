@@ -0,0 +1,173 @@
+package com.github.magic.core.models.header;
+
+import java.util.Arrays;
+
+/**
+ * <p>Registry of the well-known header names, each one owning a fixed integer slot. {@link Headers} keeps the first header of every
+ * well-known name in its slot, so that looking them up doesn't require a scan over the whole header list.</p>
+ * <br>
+ * <p>The slot of a name is resolved through a case-insensitive hash, which can be computed straight from the raw request bytes at parse time</p>
+ */
+public final class KnownHeaders {
+    //Request headers
+    public static final int HOST                            = 0;
+    public static final int CONNECTION                      = 1;
+    public static final int CONTENT_LENGTH                  = 2;
+    public static final int CONTENT_TYPE                    = 3;
+    public static final int TRANSFER_ENCODING               = 4;
+    public static final int ACCEPT                          = 5;
+    public static final int ACCEPT_ENCODING                 = 6;
+    public static final int ACCEPT_LANGUAGE                 = 7;
+    public static final int USER_AGENT                      = 8;
+    public static final int ORIGIN                          = 9;
+    public static final int REFERER                         = 10;
+    public static final int RANGE                           = 11;
+    public static final int IF_RANGE                        = 12;
+    public static final int IF_NONE_MATCH                   = 13;
+    public static final int IF_MODIFIED_SINCE               = 14;
+    public static final int CACHE_CONTROL                   = 15;
+    public static final int COOKIE                          = 16;
+    public static final int AUTHORIZATION                   = 17;
+    public static final int UPGRADE_INSECURE_REQUESTS       = 18;
+    public static final int ACCESS_CONTROL_REQUEST_METHOD   = 19;
+    public static final int ACCESS_CONTROL_REQUEST_HEADERS  = 20;
+
+    //Response headers
+    public static final int CONTENT_ENCODING                = 21;
+    public static final int CONTENT_RANGE                   = 22;
+    public static final int LAST_MODIFIED                   = 23;
+    public static final int ETAG                            = 24;
+    public static final int DATE                            = 25;
+    public static final int SERVER                          = 26;
+    public static final int KEEP_ALIVE                      = 27;
+    public static final int ACCEPT_RANGES                   = 28;
+    public static final int X_CONTENT_TYPE_OPTIONS          = 29;
+    public static final int LOCATION                        = 30;
+    public static final int VARY                            = 31;
+    public static final int ALLOW                           = 32;
+    public static final int ACCESS_CONTROL_EXPOSE_HEADERS   = 33;
+
+    //Canonical form of each name, indexed by slot
+    private static final String[] NAMES = {
+            "Host", "Connection", "Content-Length", "Content-Type", "Transfer-Encoding", "Accept", "Accept-Encoding",
+            "Accept-Language", "User-Agent", "Origin", "Referer", "Range", "If-Range", "If-None-Match", "If-Modified-Since",
+            "Cache-Control", "Cookie", "Authorization", "Upgrade-Insecure-Requests", "Access-Control-Request-Method",
+            "Access-Control-Request-Headers", "Content-Encoding", "Content-Range", "Last-Modified", "ETag", "Date", "Server",
+            "Keep-Alive", "Accept-Ranges", "X-Content-Type-Options", "Location", "Vary", "Allow", "Access-Control-Expose-Headers"
+    };
+
+    public static final int COUNT = NAMES.length;
+
+    //Open addressing table from the hash of a name to its slot (or -1), several times larger than the registry to keep probing short
+    private static final int[] TABLE = new int[256];
+    private static final int MASK = TABLE.length - 1;
+
+    private static final char[][] LOWER_CASE_NAMES = new char[COUNT][];
+
+    static {
+        Arrays.fill(TABLE, -1);
+
+        for (int slot = 0; slot < COUNT; slot++) {
+            LOWER_CASE_NAMES[slot] = NAMES[slot].toLowerCase().toCharArray();
+
+            int index = hash(NAMES[slot]) & MASK;
+
+            while (TABLE[index] != -1)
+                index = (index + 1) & MASK;
+
+            TABLE[index] = slot;
+        }
+    }
+
+    private KnownHeaders() {}
+
+    /**
+     * @param slot the slot of a well-known header
+     * @return the canonical name of the header
+     */
+    public static String name(int slot) {
+        return NAMES[slot];
+    }
+
+    /**
+     * Resolve the slot of a header name, case-insensitively
+     *
+     * @param name the header name
+     * @return the slot, or -1 if the name isn't a well-known one
+     */
+    public static int slotOf(String name) {
+        int index = hash(name) & MASK;
+        int slot;
+
+        while ((slot = TABLE[index]) != -1) {
+            char[] candidate = LOWER_CASE_NAMES[slot];
+
+            if (candidate.length == name.length() && matches(candidate, name))
+                return slot;
+
+            index = (index + 1) & MASK;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Resolve the slot of a header name held in a byte array (e.g. the raw request), case-insensitively
+     *
+     * @param array the array holding the name
+     * @param from the index of the first byte of the name
+     * @param to the index right after the name
+     * @return the slot, or -1 if the name isn't a well-known one
+     */
+    public static int slotOf(byte[] array, int from, int to) {
+        int hash = 0;
+
+        for (int i = from; i < to; i++)
+            hash = 31 * hash + toLowerCase(array[i] & 0xff);
+
+        int index = hash & MASK;
+        int slot;
+
+        while ((slot = TABLE[index]) != -1) {
+            char[] candidate = LOWER_CASE_NAMES[slot];
+
+            if (candidate.length == to - from && matches(candidate, array, from))
+                return slot;
+
+            index = (index + 1) & MASK;
+        }
+
+        return -1;
+    }
+
+    private static int hash(String name) {
+        int hash = 0;
+
+        for (int i = 0; i < name.length(); i++)
+            hash = 31 * hash + toLowerCase(name.charAt(i));
+
+        return hash;
+    }
+
+    private static boolean matches(char[] lowerCaseName, String name) {
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            if (toLowerCase(name.charAt(i)) != lowerCaseName[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean matches(char[] lowerCaseName, byte[] array, int from) {
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            if (toLowerCase(array[from + i] & 0xff) != lowerCaseName[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static int toLowerCase(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.magic.core.models.header;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable header whose line is encoded once, meant to be shared between responses for the header lines that never change
+ * (e.g. "Server: MagicWebServer/1.2")
+ */
+public final class PreEncodedHeader extends Header {
+    private final byte[] line;
+
+    public PreEncodedHeader(String key, String value) {
+        super(key, value);
+
+        line = (this.key + ": " + this.value + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void setKey(String key) {
+        throw new UnsupportedOperationException("Pre-encoded headers can't be modified");
+    }
+
+    @Override
+    public void setValue(String value) {
+        throw new UnsupportedOperationException("Pre-encoded headers can't be modified");
+    }
+
+    @Override
+    protected int encodedLength() {
+        return line.length;
+    }
+
+    @Override
+    protected int encode(byte[] dst, int offset) {
+        System.arraycopy(line, 0, dst, offset, line.length);
+        return offset + line.length;
+    }
+}
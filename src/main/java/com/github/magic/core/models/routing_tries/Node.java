@@ -3,9 +3,8 @@ package com.github.magic.core.models.routing_tries;
 import com.github.magic.core.consts.HttpMethod;
 import com.github.magic.core.middleware.Middleware;
 import com.github.magic.core.path_handler.Handler;
-import com.github.magic.core.path_handler.HandlerWithParam;
 import com.github.magic.core.utils.Formatter;
-import com.github.magic.core.utils.RegexMatcher;
+import com.github.magic.core.utils.LinearRegex;
 
 import java.util.*;
 import java.util.regex.PatternSyntaxException;
@@ -24,12 +23,118 @@ public class Node implements Cloneable{
     //The type of HTTP method
     private HttpMethod httpMethod;
 
+    //The regex of the token, compiled once when the token is set. Null for literals, wildcards and route parameters without regex
+    private LinearRegex pattern;
+
+    //The name of the route parameter, null if the token isn't one
+    private String paramName;
+
+    //Bumped whenever the node or anything below it is changed through register() or unregister(), so that unchanged subtrees can be reused
+    private long version;
+
     public Node(HttpMethod method, String token, Handler nodeHandler) {
         this.httpMethod = method;
-        this.token = token;
         this.nodeHandler = nodeHandler;
         children = new LinkedList<>();
         middlewares = new ArrayList<>();
+
+        setToken(token);
+    }
+
+    /**
+     * Set the token, and compile its regex (if any) so that lookups never have to
+     */
+    private void setToken(String token) {
+        this.token = token;
+        this.pattern = null;
+        this.paramName = null;
+
+        //Wildcards are matched by their affixes, even when they're route parameters with a regex
+        if (token.contains("*"))
+            return;
+
+        String regex = null;
+
+        if (token.startsWith(":") && token.length() > 1) {
+            //Regex can also be used in route parameter, and is encapsulated between parentheses (())
+            int regexIdx = token.indexOf("(");
+
+            paramName = token.substring(1, regexIdx == -1 ? token.length() : regexIdx);
+
+            if (regexIdx != -1)
+                regex = token.substring(regexIdx + 1, token.length() - 1);
+        } else if (isRegex(token)) {
+            regex = token;
+        }
+
+        if (regex == null)
+            return;
+
+        try {
+            pattern = LinearRegex.compile(regex);
+        } catch (PatternSyntaxException e) {
+            //Invalid regex, the token never matches as a regex
+        }
+    }
+
+    /**
+     * @return the name of the route parameter, {@code null} if the token isn't one
+     */
+    String getParamName() {
+        return paramName;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the compiled regex of the token, {@code null} if it has none (or an invalid one)
+     */
+    LinearRegex getPattern() {
+        return pattern;
+    }
+
+    /**
+     * A literal token is only ever compared with {@link String#equals(Object)}. The dot alone doesn't make a regex, so that file-like literals
+     * ("index.html") aren't matched loosely
+     *
+     * @param token the token, which isn't a route parameter
+     * @return {@code true} if the token has any regex metacharacter
+     */
+    private static boolean isRegex(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if ("\\^$|?+()[]{}".indexOf(token.charAt(i)) != -1)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>Match a path token against the compiled regex of a node</p>
+     * <p>Note that the regex behavior was modified so that it no longer handle direct character matching</p>
+     * <b>For example:</b>
+     * <p>Regex: test; Data: This is test data</p>
+     * <p>Match: false</p>
+     *
+     * @param pattern the compiled regex of a token, {@code null} never matches
+     * @param path the path holding the token, which isn't copied
+     * @return {@code true} if the regex is found between {@code start} and {@code end} in {@code path}
+     */
+    static boolean matchesPattern(LinearRegex pattern, String path, int start, int end) {
+        if (pattern == null || !pattern.find(path, start, end))
+            return false;
+
+        //The token holding the regex literally doesn't count as a match
+        String regex = pattern.pattern();
+
+        for (int i = start; i + regex.length() <= end; i++) {
+            if (path.regionMatches(i, regex, 0, regex.length()))
+                return false;
+        }
+
+        return true;
     }
 
     public void setMiddleware(List<Middleware> middlewares){
@@ -71,9 +176,20 @@ public class Node implements Cloneable{
     public synchronized void register(HttpMethod method, String endpoint, ArrayList<Middleware> middlewares, Handler nodeHandler) {
         endpoint = trimRequestParam(endpoint);
 
-        String[] tokens = endpoint.equals("/") ? new String[]{"/"} : com.github.magic.core.utils.Formatter.replaceEmptyWithRoot(endpoint.split("/", 0));
+        String[] tokens = tokenize(endpoint);
+
+        TraverseNode tNode = new TraverseNode(method);
+
+        try {
+            insert(tNode, method, tokens, middlewares, nodeHandler);
+        } finally {
+            //Every node from the root down to the route either changed or got a new descendant
+            for (Node changed : tNode.path)
+                changed.version++;
+        }
+    }
 
-        TraverseNode tNode = new TraverseNode(method, endpoint, nodeHandler);
+    private void insert(TraverseNode tNode, HttpMethod method, String[] tokens, ArrayList<Middleware> middlewares, Handler nodeHandler) {
         Node node = tNode.registerTraverse(this, tokens);
         Node tempNode = null;
 
@@ -114,6 +230,7 @@ public class Node implements Cloneable{
                     
                     if (tempNode != null){
                         node = tempNode;
+                        tNode.path.add(node);
                         continue;
                     }
                 }
@@ -121,6 +238,8 @@ public class Node implements Cloneable{
                 node.children.addFirst(newNode);
                 node = node.children.getFirst();
             }
+
+            tNode.path.add(node);
         }
 
         if (middlewares != null)
@@ -164,7 +283,7 @@ public class Node implements Cloneable{
 
             if (beforeRouteName.equals(afterRouteName)){
                 if (!afterRouteRegexPart.isEmpty())
-                    child.token = afterRoute;
+                    child.setToken(afterRoute);
 
                 return child;
             }
@@ -174,36 +293,87 @@ public class Node implements Cloneable{
         return null;
     }
 
-    public HandlerWithParam find(HttpMethod method, String endpoint) {
-        if (endpoint == null) {
-            //In case we can't parse out the endpoint, use default GET behavior
-            return null;
+    /**
+     * Remove the handler and middlewares of a route, along with the nodes left without any handler nor children. Tokens are matched the same
+     * way as {@link #register(HttpMethod, String, ArrayList, Handler)} does
+     *
+     * @param method the method of the route
+     * @param endpoint the endpoint, as registered
+     * @return {@code true} if the route was registered
+     */
+    public synchronized boolean unregister(HttpMethod method, String endpoint) {
+        String[] tokens = tokenize(trimRequestParam(endpoint));
+
+        if (tokens.length == 1) {
+            //Root path, either this node or the "/" child of another method
+            if (method == httpMethod) {
+                boolean registered = nodeHandler != null;
+
+                nodeHandler = null;
+                middlewares = new ArrayList<>();
+                version++;
+                return registered;
+            }
+
+            version++;
+            return children.removeIf(child -> child.httpMethod == method && child.token.equals("/"));
         }
 
-        endpoint = trimRequestParam(endpoint);
-        String[] tokens = endpoint.equals("/") ? new String[]{"/"} : com.github.magic.core.utils.Formatter.replaceEmptyWithRoot(endpoint.split("/", 0));
+        //The nodes from this one down to the route
+        List<Node> path = new ArrayList<>();
+        Node node = this;
+        path.add(node);
 
+        for (int i = 1; i < tokens.length; i++) {
+            Node next = null;
 
-        TraverseNode tNode = new TraverseNode(method, endpoint, null);
-        Node node = tNode.findTraverse(this, tokens);
+            for (Node child : node.children) {
+                if (child.httpMethod == method && (child.token.equals(tokens[i]) || (child.token.startsWith(":") && child.token.equals(":" + tokens[i])))) {
+                    next = child;
+                    break;
+                }
+            }
 
-        //Either not found or unable to traverse to the last token
-       if (node == null){
-           return new HandlerWithParam(
-                   null, new HashMap<>(), null
-           );
-       }
+            if (next == null)
+                return false;
 
-        return new HandlerWithParam(
-                 node.nodeHandler,
-                tNode.params,
-                node.middlewares
-        );
+            path.add(node = next);
+        }
+
+        if (node.nodeHandler == null)
+            return false;
+
+        node.nodeHandler = null;
+        node.middlewares = new ArrayList<>();
+
+        for (Node changed : path)
+            changed.version++;
+
+        //Prune the branch up to the first node still in use
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node current = path.get(i);
+
+            if (current.nodeHandler != null || !current.children.isEmpty())
+                break;
+
+            path.get(i - 1).children.remove(current);
+        }
+
+        return true;
+    }
+
+    /**
+     * Split a trimmed endpoint into tokens, the first token is always the root "/"
+     *
+     * @see #trimRequestParam(String)
+     */
+    private static String[] tokenize(String endpoint) {
+        return endpoint.equals("/") ? new String[]{"/"} : Formatter.replaceEmptyWithRoot(endpoint.split("/", 0));
     }
 
-    private String trimRequestParam(String endpoint) {
+    private static String trimRequestParam(String endpoint) {
         endpoint = endpoint.trim();
-        endpoint = com.github.magic.core.utils.Formatter.trimLeft(endpoint, '/');
+        endpoint = Formatter.trimLeft(endpoint, '/');
         endpoint = Formatter.trimRight(endpoint, '/');
 
         //This helps with the split as our iterator starts at 1, so we need an extra "" to skip (represents the root node)
@@ -213,15 +383,13 @@ public class Node implements Cloneable{
     }
 
     private static class TraverseNode extends Node {
-        protected final Map<String, String> params;
         protected int depthLayer;
-        //Track the path from the wildcard token to the furthest endpoint
-        protected String wildcardPath;
+        //The nodes walked (or created) by a registration, from the root
+        protected final List<Node> path = new ArrayList<>();
 
-        public TraverseNode(HttpMethod method, String endpoint, Handler nodeHandler) {
-            super(method, endpoint, nodeHandler);
-            params = new HashMap<>();
-            wildcardPath = "";
+        public TraverseNode(HttpMethod method) {
+            //Only holds the state of a traversal, its token is never matched
+            super(method, "/", null);
         }
 
 
@@ -229,6 +397,8 @@ public class Node implements Cloneable{
             Node returnNode   = root;
             int  iterator     = 1;
 
+            path.add(root);
+
             while (iterator < tokens.length) {
                 boolean isMatched = false;
                 String compareStr = tokens[iterator];
@@ -245,6 +415,7 @@ public class Node implements Cloneable{
 
                     if (isMatched) {
                         returnNode = child; //Advance to the child
+                        path.add(child);
                         break;
                     }
                 }
@@ -257,164 +428,6 @@ public class Node implements Cloneable{
             depthLayer = iterator;
             return returnNode;
         }
-
-        /**
-         * Traverses the URL routing trie structure to find the deepest node reachable by tokenizing the endpoint.
-         *
-         * @param tokens   the URL endpoint to traverse, using "/" as the delimiter to split the path.
-         * @return the deepest node that can be reached by following the tokens in the endpoint.
-         */
-        private Node findTraverse(Node root, String[] tokens) {
-            //Small optimization to skip the loop in case the root path is requested
-            if (tokens.length == 1 && getHttpMethod() == root.getHttpMethod())
-                return root;
-
-            boolean isFound = false, isMatched, isRegexMatched;
-            String compareStr;
-            Node returnNode = root;
-            int  iterator   = 1;
-
-            //Offsetting by 1, so we don't have to traverse the root node again
-
-            while (iterator < tokens.length) {
-                compareStr = tokens[iterator];
-                isMatched = false;
-
-                for (Node child : returnNode.children) {
-                    isRegexMatched = isTokenRegex(compareStr, child.token) != null;
-
-                    if (!child.getHttpMethod().equals(getHttpMethod()))
-                        continue;
-
-                    if (child.token.contains("*")) {
-                        //Regexes also have asterisk, but they're interpreted differently
-                        //So we'll have make sure which one is matching here
-
-                        isMatched = handleWildcard(iterator, tokens, child.token);
-                    } else if (child.token.startsWith(":") && child.token.length() > 1) {
-                        //Route parameter without name will be treated as literal string ":"
-                        //Skip the colon ":"
-                        isMatched = true;
-
-                        if (child.token.contains("("))
-                            isMatched = isRegexMatched;
-
-                        if (isMatched)
-                            params.put(child.token.substring(1, isRegexMatched ? child.token.indexOf("(") : child.token.length()), compareStr);
-                    } else {
-                        if (isRegexMatched || compareStr.equals(child.token))
-                            isMatched = true;
-                    }
-
-                    if (isMatched) {
-                        returnNode = child; //Advance to the child
-                        isFound = true;
-                        break;
-                    }
-                }
-
-                // If no matching child is found, return the current node
-                if (!isMatched) break;
-
-                // Move to the next token
-                iterator++;
-            }
-
-            depthLayer = iterator;
-
-            //Add the wildcard path so far as part of the params
-            if (params != null && !wildcardPath.isEmpty())
-                params.put("wildcard", wildcardPath);
-
-            //Only the literal wildcard allows for more sub-routes to be matched with a shorter registered path
-            if (wildcardPath.isEmpty() && depthLayer < tokens.length)
-                return null;
-
-            // Return the deepest node reached
-            return isFound ? returnNode : null;
-        }
-
-        /**
-         * Handle both the asterisk used within the regexes and the wilcard symbol itself. When the use case of wildcard symbol is detected,
-         * the attribute {@code wilcardPath} will be inserted with the value of the remaining path from the matched position.
-         * 
-         * <br>
-         * <br>
-         * 
-         * <b>Example:</b>
-         * Register path: /test/* 
-         * <br>
-         * Actualy path: "/test/value1/123" 
-         * <br>
-         * wilcardPath: value1/123 
-         * <br>
-         * 
-         * @see #findTraverse(Node, String[])
-         * 
-         * @param iterator the index of the current element from {@code tokens} list
-         * @param tokens the list of tokens having delimiter of "/"
-         * @param wildcardToken the wildcard token regisred in the tree
-         * @return true if either regex case or the wildcard symbol matched. Otherwise returns false
-         */
-        private boolean handleWildcard(int iterator, String[] tokens, String wildcardToken) {
-            //Wildcard handling
-            int wildCardIdx = wildcardToken.indexOf("*");
-
-            //Check if is there any affixes
-            String prefix = wildcardToken.substring(0, wildCardIdx);
-
-            String suffix = "";
-            
-            //Suffix can be out of bound
-            if (wildCardIdx + 1 <= wildcardToken.length())
-                suffix = wildcardToken.substring(wildCardIdx + 1);
-
-            if (tokens[iterator].startsWith(prefix) && tokens[iterator].endsWith(suffix)){
-                String[] remainingTokens = Arrays.copyOfRange(tokens, iterator, tokens.length);
-                String joinedEndpoint = String.join("/", remainingTokens);
-
-                wildcardPath = wildcardPath + "/" + joinedEndpoint;
-
-                return true;
-            }
-
-            return false;
-        }
-
-        /**
-         * <p>Try to get the regex pattern from the {@code regexToken} then compiles it</p>
-         * <p>Note that the regex behavior was modified so that it no longer handle direct character matching</p>
-         * <b>For example:</b>
-         * <p>Regex: test; Data: This is test data</p>
-         * <p>Regex compile output: null</p>
-         * 
-         * @see #findTraverse(Node, String[])
-         * 
-         * @param compareStr the string to be compiled
-         * @param regexToken the string with (potential) regex
-         * @return a string matching the regex from {@code compareStr} if found, else return null
-         */
-        private String isTokenRegex(String compareStr , String regexToken) {
-            RegexMatcher regexMatcher = new RegexMatcher();
-
-            String retGroup;
-
-            if (regexToken.startsWith(":")) {
-                //Regex can also be used in route parameter, and is encapsulated between parentheses (())
-                regexToken = regexToken.substring(
-                    Math.max(regexToken.indexOf("(") + 1, 0), 
-                    regexToken.length() - 1
-                    );
-            }
-
-            try {
-                retGroup = regexMatcher.check(compareStr, regexToken);
-            } catch (PatternSyntaxException e) {
-                return null; //Invalid regex, or regex isn't provided
-            }
-
-            return compareStr.contains(regexToken) ? null : retGroup;
-        }
     }
 
     @Override
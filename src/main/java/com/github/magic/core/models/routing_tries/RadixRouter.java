@@ -0,0 +1,432 @@
+package com.github.magic.core.models.routing_tries;
+
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.middleware.Middleware;
+import com.github.magic.core.middleware.MiddlewareChain;
+import com.github.magic.core.path_handler.Handler;
+import com.github.magic.core.path_handler.HandlerWithParam;
+import com.github.magic.core.utils.LinearRegex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Read-only lookup structure built from the routing trie ({@link Node}), so that finding a route doesn't depend on the number of registered routes.</p>
+ * <br>
+ * <p>Every {@link HttpMethod} has its own tree. The literal children of a node are found by hash, the others (regexes, wildcards, route parameters)
+ * are tried by priority: regexes first, then wildcards with affixes, route parameters and finally the bare wildcard "*". Chains of literal nodes
+ * without handler (e.g. "/api/v1/users") are compressed into a single edge.</p>
+ * <br>
+ * <p>Matching is greedy: once a child matched a token, other siblings aren't tried anymore even if the path can't be matched further down</p>
+ */
+final class RadixRouter {
+    //Priority of the children which aren't plain literals, lowest first
+    private static final int REGEX = 0, AFFIX_WILDCARD = 1, PARAM = 2, WILDCARD = 3;
+
+    //Shared results of the lookups which found no route, and of the ones which stopped on a node without handler. Only the global middlewares run
+    private final HandlerWithParam notFound;
+    private final HandlerWithParam intermediate;
+
+    //The middlewares of the whole server, in front of the ones of every route
+    private final List<Middleware> global;
+    private final MiddlewareChain globalChain;
+
+    private final Map<HttpMethod, RadixNode> roots = new EnumMap<>(HttpMethod.class);
+
+    /**
+     * Build the lookup structure of the trie. The trie must not be modified while it's being built
+     *
+     * @param root the root of the trie
+     */
+    RadixRouter(Node root) {
+        this(root, List.of(), null);
+    }
+
+    /**
+     * Build the lookup structure of the trie, sharing the subtrees of the previous structure whose nodes haven't changed since
+     * (see {@link Node#getVersion()}). Registering a route thus only rebuilds the path to that route. The trie must not be modified while it's being built
+     *
+     * @param root the root of the trie
+     * @param global the middlewares of the whole server
+     * @param previous the structure built before the last change of the trie, {@code null} to build everything. It's ignored if it was
+     *                 built with other global middlewares
+     */
+    RadixRouter(Node root, List<Middleware> global, RadixRouter previous) {
+        this.global = List.copyOf(global);
+        this.globalChain = new MiddlewareChain(this.global);
+        this.notFound = new HandlerWithParam(null, Collections.emptyMap(), null, globalChain);
+        this.intermediate = new HandlerWithParam(null, Collections.emptyMap(), Collections.emptyList(), globalChain);
+
+        if (previous != null && !previous.global.equals(this.global))
+            previous = null;
+
+        //The root path of any method besides GET is registered as a "/" child of the root
+        Map<HttpMethod, Node> methodRoots = new EnumMap<>(HttpMethod.class);
+
+        for (Node child : root.getChildren()) {
+            if (child.getToken().equals("/"))
+                methodRoots.putIfAbsent(child.getHttpMethod(), child);
+        }
+
+        for (HttpMethod method : HttpMethod.values()) {
+            Node methodRoot = method == root.getHttpMethod() ? root : methodRoots.get(method);
+            RadixNode radixRoot = new RadixNode(new String[]{"/"}, root, methodRoot, -1, this);
+
+            link(radixRoot, root, method, previous == null ? null : previous.roots.get(method));
+
+            if (methodRoot != null || radixRoot.hasChildren())
+                roots.put(method, radixRoot);
+        }
+    }
+
+    /**
+     * Find the route of the endpoint. The path is walked segment by segment over the endpoint itself, nothing is allocated unless the route has
+     * parameters (or a regex to run). Routes without parameters share an immutable empty parameter map
+     */
+    HandlerWithParam find(HttpMethod method, String endpoint) {
+        if (endpoint == null)
+            return null;
+
+        RadixNode node = roots.get(method);
+
+        if (node == null)
+            return notFound;
+
+        //Same as Node#trimRequestParam(), by offsets: surrounding blanks, then surrounding slashes
+        int start = 0, end = endpoint.length();
+
+        while (start < end && endpoint.charAt(start) <= ' ') start++;
+        while (end > start && endpoint.charAt(end - 1) <= ' ') end--;
+        while (start < end && endpoint.charAt(start) == '/') start++;
+        while (end > start && endpoint.charAt(end - 1) == '/') end--;
+
+        RouteParams params = null;
+        String wildcardPath = null;
+        boolean isPartial = false;
+
+        //Past the end (end + 1) once every segment has been consumed, the root path has none
+        int segmentStart = start < end ? start : end + 1;
+
+        while (segmentStart <= end) {
+            int segmentEnd = segmentEnd(endpoint, segmentStart, end);
+            RadixNode next = node.literals == null ? null : node.literals.get(endpoint, segmentStart, segmentEnd);
+
+            if (next != null) {
+                //The remaining segments of a compressed edge
+                int matched = 1;
+                int nextStart = segmentEnd + 1;
+
+                while (matched < next.segments.length && nextStart <= end) {
+                    int nextEnd = segmentEnd(endpoint, nextStart, end);
+
+                    if (!regionEquals(next.segments[matched], endpoint, nextStart, nextEnd))
+                        break;
+
+                    matched++;
+                    nextStart = nextEnd + 1;
+                }
+
+                segmentStart = nextStart;
+
+                if (matched < next.segments.length) {
+                    //Stopped in the middle of the edge, on a node without handler
+                    isPartial = true;
+                    break;
+                }
+
+                node = next;
+                continue;
+            }
+
+            for (RadixNode child : node.dynamic) {
+                if (child.matches(endpoint, segmentStart, segmentEnd)) {
+                    next = child;
+                    break;
+                }
+            }
+
+            if (next == null)
+                break;
+
+            if (next.kind == AFFIX_WILDCARD || next.kind == WILDCARD) {
+                wildcardPath = (wildcardPath == null ? "/" : wildcardPath + "/") + endpoint.substring(segmentStart, end);
+            } else if (next.paramName != null) {
+                if (params == null)
+                    params = new RouteParams();
+
+                params.put(next.paramName, endpoint.substring(segmentStart, segmentEnd));
+            }
+
+            node = next;
+            segmentStart = segmentEnd + 1;
+        }
+
+        //Only the literal wildcard allows for more sub-routes to be matched with a shorter registered path
+        if (wildcardPath == null && segmentStart <= end)
+            return notFound;
+
+        if (wildcardPath != null) {
+            if (params == null)
+                params = new RouteParams();
+
+            params.put("wildcard", wildcardPath);
+        }
+
+        if (isPartial)
+            return params == null ? intermediate : new HandlerWithParam(null, params, Collections.emptyList(), globalChain);
+
+        //Root path of a method which has routes, but no root handler
+        if (!node.isRoute)
+            return notFound;
+
+        return params == null ? node.resolved : new HandlerWithParam(node.handler, params, node.middlewares, node.chain);
+    }
+
+    /**
+     * @return the index of the slash ending the segment starting at {@code start}, or {@code end} for the last segment
+     */
+    private static int segmentEnd(String path, int start, int end) {
+        int slash = path.indexOf('/', start);
+
+        return slash == -1 || slash > end ? end : slash;
+    }
+
+    private static boolean regionEquals(String token, String path, int start, int end) {
+        return token.length() == end - start && path.regionMatches(start, token, 0, token.length());
+    }
+
+    /**
+     * Add the children of the trie node, which have the given method, to the radix node
+     *
+     * @param previous the radix node built for the same trie node before, whose unchanged children are reused. {@code null} if there's none
+     */
+    private void link(RadixNode parent, Node node, HttpMethod method, RadixNode previous) {
+        Map<String, RadixNode> literals = new LinkedHashMap<>();
+        List<RadixNode> dynamic = new ArrayList<>();
+        Map<Node, RadixNode> previousChildren = previous == null ? Map.of() : previous.childrenByStart();
+
+        for (Node child : node.getChildren()) {
+            if (child.getHttpMethod() != method)
+                continue;
+
+            //Root paths of other methods
+            if (node.getToken().equals("/") && child.getToken().equals("/"))
+                continue;
+
+            int kind = kindOf(child);
+
+            //Route parameter with an invalid regex, can't be matched
+            if (kind == PARAM && child.getToken().contains("(") && child.getPattern() == null)
+                continue;
+
+            RadixNode known = previousChildren.get(child);
+
+            if (known != null && known.version == child.getVersion()) {
+                if (kind != -1)
+                    dynamic.add(known);
+                else
+                    literals.putIfAbsent(child.getToken(), known);
+
+                continue;
+            }
+
+            if (kind != -1) {
+                RadixNode radixChild = new RadixNode(new String[]{child.getToken()}, child, child, kind, this);
+                link(radixChild, child, method, known);
+                dynamic.add(radixChild);
+                continue;
+            }
+
+            //Literal, compressed with its single literal descendants as long as they have no handler
+            List<String> segments = new ArrayList<>();
+            Node last = child;
+            segments.add(last.getToken());
+
+            while (last.getNodeHandler() == null && last.getMiddlewares().isEmpty()) {
+                Node onlyChild = null;
+                int count = 0;
+
+                for (Node grandChild : last.getChildren()) {
+                    if (grandChild.getHttpMethod() == method) {
+                        onlyChild = grandChild;
+                        count++;
+                    }
+                }
+
+                if (count != 1 || kindOf(onlyChild) != -1)
+                    break;
+
+                last = onlyChild;
+                segments.add(last.getToken());
+            }
+
+            RadixNode radixChild = new RadixNode(segments.toArray(new String[0]), child, last, -1, this);
+            link(radixChild, last, method, known);
+
+            //The first registered literal wins, just like in the trie
+            literals.putIfAbsent(child.getToken(), radixChild);
+        }
+
+        if (!literals.isEmpty())
+            parent.literals = new LiteralTable(literals);
+
+        //Stable, siblings of the same priority keep the order of the trie
+        dynamic.sort((a, b) -> Integer.compare(a.kind, b.kind));
+        parent.dynamic = dynamic.toArray(new RadixNode[0]);
+    }
+
+    /**
+     * @return the priority of the node, -1 for plain literals
+     */
+    private static int kindOf(Node node) {
+        String token = node.getToken();
+
+        if (token.equals("*"))
+            return WILDCARD;
+
+        if (token.contains("*"))
+            return AFFIX_WILDCARD;
+
+        if (node.getPattern() != null)
+            return REGEX;
+
+        if (node.getParamName() != null)
+            return PARAM;
+
+        return -1;
+    }
+
+    private static final class RadixNode {
+        //The tokens of the edge leading to this node, more than one for a compressed chain of literals
+        private final String[] segments;
+        private final int kind;
+
+        //The trie node at the start of the edge, and its version when this node was built
+        private final Node start;
+        private final long version;
+
+        //Copied from the trie node at the end of the edge, which may change afterward. Absent (false or null) for roots without handler
+        private final boolean isRoute;
+        private final Handler handler;
+        private final List<Middleware> middlewares;
+        private final String paramName;
+
+        //The global middlewares then the ones of the route, only the global ones if there's no handler to run after them
+        private final MiddlewareChain chain;
+        private final LinearRegex pattern;
+
+        //Wildcard affixes
+        private final String prefix, suffix;
+
+        //Children which are plain literals, by token. Null if there's none
+        private LiteralTable literals;
+
+        //The other children, by priority
+        private RadixNode[] dynamic = new RadixNode[0];
+
+        //The result of the lookups ending on this node without any parameter
+        private final HandlerWithParam resolved;
+
+        private RadixNode(String[] segments, Node start, Node source, int kind, RadixRouter router) {
+            this.segments = segments;
+            this.kind = kind;
+            this.start = start;
+            this.version = start.getVersion();
+            this.isRoute = source != null;
+            this.handler = source == null ? null : source.getNodeHandler();
+            this.middlewares = source == null ? null : List.copyOf(source.getMiddlewares());
+            this.paramName = source == null ? null : source.getParamName();
+            this.pattern = source == null ? null : source.getPattern();
+            this.chain = handler == null ? router.globalChain : MiddlewareChain.of(router.global, middlewares);
+            this.resolved = new HandlerWithParam(handler, Collections.emptyMap(), middlewares, chain);
+
+            String token = segments[0];
+            int wildcardIdx = token.indexOf('*');
+
+            this.prefix = wildcardIdx == -1 ? null : token.substring(0, wildcardIdx);
+            this.suffix = wildcardIdx == -1 ? null : token.substring(wildcardIdx + 1);
+        }
+
+        /**
+         * @return {@code true} if the segment between {@code start} and {@code end} in {@code path} matches this (non literal) node
+         */
+        private boolean matches(String path, int start, int end) {
+            return switch (kind) {
+                case AFFIX_WILDCARD, WILDCARD -> end - start >= Math.max(prefix.length(), suffix.length())
+                        && path.startsWith(prefix, start)
+                        && path.startsWith(suffix, end - suffix.length());
+                case PARAM -> true;
+                //Regex literals also match themselves
+                default -> (paramName == null && regionEquals(segments[0], path, start, end)) || Node.matchesPattern(pattern, path, start, end);
+            };
+        }
+
+        private boolean hasChildren() {
+            return literals != null || dynamic.length > 0;
+        }
+
+        private Map<Node, RadixNode> childrenByStart() {
+            Map<Node, RadixNode> children = new IdentityHashMap<>();
+
+            if (literals != null) {
+                for (RadixNode child : literals.values) {
+                    if (child != null)
+                        children.put(child.start, child);
+                }
+            }
+
+            for (RadixNode child : dynamic)
+                children.put(child.start, child);
+
+            return children;
+        }
+    }
+
+    /**
+     * Open addressing hash table of the literal children, looked up with a segment of the path rather than a string, so that no substring is created
+     */
+    private static final class LiteralTable {
+        private final String[] keys;
+        private final RadixNode[] values;
+        private final int mask;
+
+        private LiteralTable(Map<String, RadixNode> entries) {
+            //At most half full
+            int capacity = Integer.highestOneBit(Math.max(entries.size(), 1) * 4);
+
+            keys = new String[capacity];
+            values = new RadixNode[capacity];
+            mask = capacity - 1;
+
+            for (Map.Entry<String, RadixNode> entry : entries.entrySet()) {
+                int index = entry.getKey().hashCode() & mask;
+
+                while (keys[index] != null)
+                    index = (index + 1) & mask;
+
+                keys[index] = entry.getKey();
+                values[index] = entry.getValue();
+            }
+        }
+
+        private RadixNode get(String path, int start, int end) {
+            //Same as String#hashCode() over the segment
+            int hash = 0;
+
+            for (int i = start; i < end; i++)
+                hash = 31 * hash + path.charAt(i);
+
+            for (int index = hash & mask; keys[index] != null; index = (index + 1) & mask) {
+                if (regionEquals(keys[index], path, start, end))
+                    return values[index];
+            }
+
+            return null;
+        }
+    }
+}
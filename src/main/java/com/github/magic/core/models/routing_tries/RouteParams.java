@@ -0,0 +1,94 @@
+package com.github.magic.core.models.routing_tries;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The parameters captured by a route lookup. Routes have a handful of parameters at most, so they're kept in a single array (keys and values
+ * interleaved) and looked up linearly, which is cheaper than hashing for that size and allocates only once
+ */
+final class RouteParams extends AbstractMap<String, String> {
+    private String[] entries = new String[8];
+    private int size;
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+
+        return index == -1 ? null : entries[index + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int index = indexOf(key);
+
+        if (index != -1) {
+            String previous = entries[index + 1];
+            entries[index + 1] = value;
+            return previous;
+        }
+
+        if (size * 2 == entries.length)
+            entries = Arrays.copyOf(entries, entries.length * 2);
+
+        entries[size * 2] = key;
+        entries[size * 2 + 1] = value;
+        size++;
+
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (next >= size)
+                            throw new NoSuchElementException();
+
+                        int index = next++ * 2;
+                        return new SimpleImmutableEntry<>(entries[index], entries[index + 1]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size * 2; i += 2) {
+            if (entries[i].equals(key))
+                return i;
+        }
+
+        return -1;
+    }
+}
@@ -6,13 +6,28 @@ import com.github.magic.core.path_handler.Handler;
 import com.github.magic.core.path_handler.HandlerWithParam;
 
 import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * <p>The routes of a server. Routes are registered in a trie of {@link Node}, which is compiled into an immutable lookup structure ({@link RadixRouter})
+ * after every change.</p>
+ * <br>
+ * <p>Changes are serialized and copy-on-write: the trie is only touched by writers, which publish a new snapshot once done. Lookups only read
+ * the current snapshot, they never lock and never see a route being registered or removed halfway, so routes can be changed while serving</p>
+ */
 public class URITries {
     Node root;
 
+    //Snapshot of the trie, replaced (never modified) after every change
+    private volatile RadixRouter router;
+
+    //Middlewares run before the ones of every route (and before the static files), compiled into the snapshot
+    private List<Middleware> globalMiddlewares = List.of();
+
     public URITries(Handler func) {
         //The root path for serving
         this.root = new Node(HttpMethod.GET, "/", func);
+        this.router = new RadixRouter(root);
     }
 
     public URITries(){
@@ -21,37 +36,75 @@ public class URITries {
 
     //Register handler for get request
     public void get(String endpoint, ArrayList<Middleware> middlewares, Handler func) {
-        root.register(HttpMethod.GET, endpoint, middlewares, func);
+        register(HttpMethod.GET, endpoint, middlewares, func);
     }
 
     //Register handler for post request
     public void post(String endpoint, ArrayList<Middleware> middlewares, Handler func) {
-        root.register(HttpMethod.POST, endpoint, middlewares, func);
+        register(HttpMethod.POST, endpoint, middlewares, func);
     }
 
     //Register handler for delete request
     public void delete(String endpoint, ArrayList<Middleware> middlewares, Handler func) {
-        root.register(HttpMethod.DELETE, endpoint, middlewares, func);
+        register(HttpMethod.DELETE, endpoint, middlewares, func);
     }
 
     public void put(String endpoint, ArrayList<Middleware> middlewares, Handler func) {
-        root.register(HttpMethod.PUT, endpoint, middlewares, func);
+        register(HttpMethod.PUT, endpoint, middlewares, func);
     }
 
     public void options(String endpoint, ArrayList<Middleware> middlewares, Handler func) {
-        root.register(HttpMethod.OPTIONS, endpoint, middlewares, func);
+        register(HttpMethod.OPTIONS, endpoint, middlewares, func);
+    }
+
+    /**
+     * Remove a route, requests in flight which already found it still run it
+     *
+     * @param method the method of the route
+     * @param endpoint the endpoint, as registered
+     * @return {@code true} if the route was registered
+     */
+    public synchronized boolean remove(HttpMethod method, String endpoint) {
+        boolean removed = root.unregister(method, endpoint);
+
+        if (removed)
+            router = new RadixRouter(root, globalMiddlewares, router);
+
+        return removed;
     }
 
     //Get the handler method based on the url endpoint
     public HandlerWithParam find(HttpMethod method, String path) {
-        return root.find(method, path);
+        return router.find(method, path);
     }
 
+    /**
+     * Get the routing trie. It must not be modified directly, register routes through this class instead so that they're published to the lookups
+     */
     public Node getRoot() {
         return root;
     }
 
-    public void setRoot(Node root) {
+    public synchronized void setRoot(Node root) {
         this.root = root;
+        this.router = new RadixRouter(root, globalMiddlewares, null);
+    }
+
+    /**
+     * Add middlewares in front of the middlewares of every route, in order. They also run when no route matches (e.g. for the static files)
+     *
+     * @param middlewares the middlewares
+     */
+    public synchronized void use(Middleware... middlewares) {
+        List<Middleware> global = new ArrayList<>(globalMiddlewares);
+        global.addAll(List.of(middlewares));
+
+        globalMiddlewares = List.copyOf(global);
+        router = new RadixRouter(root, globalMiddlewares, null);
+    }
+
+    private synchronized void register(HttpMethod method, String endpoint, ArrayList<Middleware> middlewares, Handler func) {
+        root.register(method, endpoint, middlewares, func);
+        router = new RadixRouter(root, globalMiddlewares, router);
     }
 }
@@ -0,0 +1,39 @@
+package com.github.magic.core.models.server;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Creates server sockets backed by a {@link ServerSocketChannel}. The accepted sockets then expose their {@link java.nio.channels.SocketChannel}
+ * through {@link java.net.Socket#getChannel()}, which allows the response to hand static files over to the kernel with
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} instead of copying them through the heap.
+ * The sockets still behave as regular blocking sockets otherwise.
+ */
+public class ChannelServerSocketFactory extends ServerSocketFactory {
+    @Override
+    public ServerSocket createServerSocket() throws IOException {
+        return ServerSocketChannel.open().socket();
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return createServerSocket(port, 50, null);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+        return createServerSocket(port, backlog, null);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog, InetAddress ifAddress) throws IOException {
+        ServerSocket serverSocket = createServerSocket();
+        serverSocket.bind(new InetSocketAddress(ifAddress, port), backlog);
+
+        return serverSocket;
+    }
+}
@@ -0,0 +1,273 @@
+package com.github.magic.core.models.server;
+
+import com.github.magic.core.config.Config;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A hashed timing wheel, used to keep track of the transactions' deadlines with a single thread.</p>
+ * <br>
+ * <p>The wheel is an array of buckets, each covering one tick. A timeout is hashed into the bucket of the tick it expires on,
+ * and keeps the number of full wheel rotations left before it's due. Every tick, the worker thread only looks at one bucket,
+ * so both {@link #schedule(Runnable, long, TimeUnit)} and {@link Timeout#cancel()} are O(1), regardless of how many deadlines are pending.</p>
+ * <br>
+ * <p>Expired tasks are run on a separate executor, as they usually perform blocking I/O (closing sockets) which would otherwise delay the next ticks.</p>
+ */
+public class HashedWheelTimer {
+    //Tick duration of the shared timer (ms)
+    private static final long DEFAULT_TICK_DURATION = 100;
+
+    //Number of buckets of the shared timer, one rotation covers DEFAULT_TICK_DURATION * DEFAULT_WHEEL_SIZE ms
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static volatile HashedWheelTimer sharedTimer;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+
+    //Timeouts are only handed over to the worker thread through these queues, so that the buckets are never shared between threads
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Thread worker;
+    private volatile boolean running = true;
+    private final long startTime;
+    private long tick;
+
+    /**
+     * @param tickDuration the duration of a tick, which is also the precision of the timer
+     * @param unit the unit of {@code tickDuration}
+     * @param wheelSize the number of buckets (rounded up to the next power of two)
+     * @param taskExecutor the executor running the expired tasks
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize, Executor taskExecutor) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+
+        this.tickDuration = unit.toNanos(Math.max(1, tickDuration));
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+        this.taskExecutor = taskExecutor;
+
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Bucket();
+
+        startTime = System.nanoTime();
+
+        worker = new Thread(this::work, "magic-wheel-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Returns the timer shared by every server of this process, created on first use
+     *
+     * @return the shared timer
+     */
+    public static HashedWheelTimer getDefault() {
+        if (sharedTimer == null) {
+            synchronized (HashedWheelTimer.class) {
+                if (sharedTimer == null) {
+                    ExecutorService expiredTaskPool = Executors.newCachedThreadPool(task -> {
+                        Thread thread = new Thread(task, "magic-wheel-timer-task");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+                    sharedTimer = new HashedWheelTimer(DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, expiredTaskPool);
+                }
+            }
+        }
+
+        return sharedTimer;
+    }
+
+    /**
+     * Schedule the task to be run once after the given delay, unless the returned timeout is cancelled before
+     *
+     * @param task the task to be run on expiry
+     * @param delay the delay
+     * @param unit the unit of {@code delay}
+     * @return the handle to cancel the task with
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the worker thread. Pending timeouts are dropped without being run
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void work() {
+        while (running) {
+            long deadline = tickDuration * (tick + 1);
+            long sleepTime = deadline - (System.nanoTime() - startTime);
+
+            if (sleepTime > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    if (!running) return;
+                }
+
+                continue;
+            }
+
+            removeCancelledTimeouts();
+            transferPendingTimeouts();
+
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.state.get() != Timeout.ST_INIT)
+                continue;
+
+            long expireTick = timeout.deadline / tickDuration;
+
+            //Already overdue timeouts go into the current bucket
+            long targetTick = Math.max(expireTick, tick);
+
+            timeout.remainingRounds = (targetTick - tick) / wheel.length;
+            wheel[(int) (targetTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * The handle of a scheduled task
+     */
+    public final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        //Only touched by the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the task if it hasn't been run yet
+         *
+         * @return {@code true} if the task won't be run anymore because of this call
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED))
+                return false;
+
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED))
+                return;
+
+            try {
+                taskExecutor.execute(task);
+            } catch (Throwable t) {
+                if (Config.SHOW_ERROR) System.err.println("[-] Failed to run expired task: " + t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts hashed to a single tick
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                head = timeout.next;
+
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            else
+                tail = timeout.prev;
+
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        private void expire() {
+            Timeout timeout = head;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.github.magic.core.models.server;
+
+import com.github.magic.core.config.Config;
+import com.github.magic.core.config.ServerConfig;
+import com.github.magic.core.models.RequestParser;
+import com.github.magic.core.models.routing_tries.URITries;
+import com.github.magic.core.models.threads.TransactionThread;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>Selector based serving core, used when {@link ServerConfig#getServingMode()} is set to REACTOR.</p>
+ * <br>
+ * <p>The listening thread only accepts connections and hands them over (round-robin) to one of the {@link EventLoop}s. Each loop
+ * multiplexes its connections with a single {@link Selector}, buffering the incoming bytes into the connection's {@link RequestParser} until a whole request is available.
+ * Only then the connection is taken off the selector, switched back to blocking mode and served by a worker from the thread pool
+ * through {@link TransactionThread#serve()}. Once the response is written, the connection goes back to its loop.</p>
+ * <br>
+ * <p>Idle connections therefore don't hold any worker thread, which is what the BLOCKING mode does for the whole keep-alive lifetime.</p>
+ */
+public class Reactor {
+    //How often the loops wake up to close idle connections (ms)
+    private static final int IDLE_CHECK_INTERVAL = 1000;
+
+    private final Server serverInstance;
+    private final URITries tries;
+    private final ServerConfig serverConfig;
+
+    private final EventLoop[] loops;
+    private ExecutorService workers;
+
+    //Set once bound, see close()
+    private volatile ServerSocketChannel serverChannel;
+
+    public Reactor(Server serverInstance, URITries tries, ServerConfig serverConfig) {
+        this.serverInstance = serverInstance;
+        this.tries = tries;
+        this.serverConfig = serverConfig;
+        this.loops = new EventLoop[Math.max(1, serverConfig.getEventLoopCount())];
+    }
+
+    /**
+     * Bind to the given address, then accept connections until the server channel is closed (see {@link #close()}) or the current thread is interrupted
+     *
+     * @param address the address to bind to
+     * @throws IOException exception raised when binding or accepting
+     */
+    public void listen(InetSocketAddress address) throws IOException {
+        workers = TimeoutThreadPool.getExecutor(serverConfig);
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            //Config server for being to being able to rebind after previous timeout state
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(address);
+
+            this.serverChannel = serverChannel;
+
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop();
+
+                Thread loopThread = new Thread(loops[i], "magic-event-loop-" + i);
+                loopThread.setDaemon(true);
+                loopThread.start();
+            }
+
+            if (Config.VERBOSE) System.out.println("[+] Server is listening on port " + address.getPort() + " with " + loops.length + " event loop(s)");
+
+            int next = 0;
+
+            while (serverChannel.isOpen() && !Thread.currentThread().isInterrupted()) {
+                SocketChannel channel;
+
+                try {
+                    channel = serverChannel.accept();
+                } catch (ClosedChannelException e) {
+                    //Closed by close() (or by an interrupt) while waiting
+                    break;
+                }
+
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+
+                loop.register(new Connection(channel, loop));
+            }
+        } finally {
+            for (EventLoop loop : loops) {
+                if (loop != null)
+                    loop.shutdown();
+            }
+
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop accepting connections, {@link #listen(InetSocketAddress)} returns and the event loops are shut down
+     */
+    public void close() {
+        ServerSocketChannel channel = serverChannel;
+
+        if (channel == null)
+            return;
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (Config.SHOW_ERROR) System.err.println("[-] Failed to close the server channel: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the port the reactor is listening on, or -1 if it isn't bound yet
+     */
+    public int getLocalPort() {
+        ServerSocketChannel channel = serverChannel;
+
+        return channel == null ? -1 : channel.socket().getLocalPort();
+    }
+
+    /**
+     * A single selector thread, owning every connection registered to it
+     */
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+
+        //Connections waiting to be (re)registered, filled by the acceptor and the workers
+        private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+
+        private volatile boolean running = true;
+
+        private EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        private void register(Connection connection) {
+            pending.add(connection);
+            selector.wakeup();
+        }
+
+        private void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            List<Connection> ready = new ArrayList<>();
+            long lastIdleCheck = System.currentTimeMillis();
+
+            while (running) {
+                try {
+                    selector.select(IDLE_CHECK_INTERVAL);
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        Connection connection = (Connection) key.attachment();
+
+                        if (!key.isValid() || !key.isReadable())
+                            continue;
+
+                        if (!connection.read()) {
+                            connection.close();
+                        } else if (connection.isRequestComplete()) {
+                            key.cancel();
+                            ready.add(connection);
+                        }
+                    }
+
+                    //Cancelled keys are only deregistered on the next selection, which must happen
+                    //before the channels can be switched back to blocking mode
+                    if (!ready.isEmpty()) {
+                        selector.selectNow();
+
+                        for (Connection connection : ready)
+                            connection.dispatch();
+
+                        ready.clear();
+                    }
+
+                    Connection connection;
+
+                    while ((connection = pending.poll()) != null) {
+                        //Pipelined request already sitting in the buffer, no need to wait for the selector
+                        if (connection.isRequestComplete())
+                            connection.dispatch();
+                        else
+                            connection.register(selector);
+                    }
+
+                    if (System.currentTimeMillis() - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+                        closeIdleConnections();
+                        lastIdleCheck = System.currentTimeMillis();
+                    }
+                } catch (IOException | ClosedSelectorException e) {
+                    if (Config.SHOW_ERROR) System.err.println("[-] Event loop error: " + e.getMessage());
+                }
+            }
+
+            for (SelectionKey key : selector.keys())
+                ((Connection) key.attachment()).close();
+
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+
+        /**
+         * Idle connections are closed after {@link ServerConfig#getThreadRequestReadTimeoutDuration()}, the same way
+         * the socket read timeout does in BLOCKING mode
+         */
+        private void closeIdleConnections() {
+            long now = System.currentTimeMillis();
+
+            for (SelectionKey key : selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+
+                if (now - connection.lastActive > serverConfig.getThreadRequestReadTimeoutDuration()) {
+                    key.cancel();
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Per connection state: the channel, the transaction serving it and its request parser, which buffers the incoming bytes
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final TransactionThread transaction;
+        private final RequestParser parser;
+
+        //Set once the buffered bytes are enough to serve the next request
+        private boolean requestReady;
+
+        private long lastActive = System.currentTimeMillis();
+
+        private Connection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            this.transaction = new TransactionThread(channel.socket(), tries, serverInstance);
+            this.parser = transaction.getParser();
+
+            //Parked exchanges are resumed by a worker, with a new deadline
+            transaction.setWorkers(task -> TimeoutThreadPool.submitWithTimer(workers, serverConfig, task, transaction));
+        }
+
+        /**
+         * Read whatever is available on the channel into the parser's buffer
+         *
+         * @return {@code false} if the peer has closed the connection
+         */
+        private boolean read() {
+            try {
+                int count = parser.fill(channel);
+
+                if (count < 0)
+                    return false;
+
+                if (count > 0)
+                    lastActive = System.currentTimeMillis();
+
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Check if the buffer holds a whole request, which is the head (ended by an empty line) followed by its body: {@code Content-Length}
+         * bytes, or every chunk up to the last one and the trailers (see {@link RequestParser#isBodyBuffered()})
+         */
+        private boolean isRequestComplete() {
+            if (requestReady)
+                return true;
+
+            try {
+                if (!parser.parseHead())
+                    return false;
+
+                //Body larger than what we're willing to buffer, the worker reads the rest of it from the socket
+                requestReady = parser.isMismatched() || parser.isBodyBuffered() || parser.isFull();
+            } catch (IOException e) {
+                //Malformed or oversized head, hand it over anyway so that the client gets an error back
+                requestReady = true;
+            }
+
+            return requestReady;
+        }
+
+        /**
+         * Switch the channel back to blocking mode and let a worker serve the buffered request.
+         * Should only be called from the event loop thread, after the channel has been deregistered from the selector
+         */
+        private void dispatch() {
+            try {
+                channel.configureBlocking(true);
+                TimeoutThreadPool.submitWithTimer(workers, serverConfig, this::serve, transaction);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void serve() {
+            boolean keepAlive;
+
+            try {
+                keepAlive = transaction.serve();
+            } catch (IOException e) {
+                keepAlive = false;
+            }
+
+            //The connection is taken back once the asynchronous handler is done
+            if (transaction.isParked()) {
+                transaction.park(this::afterServe);
+                return;
+            }
+
+            afterServe(keepAlive);
+        }
+
+        private void afterServe(boolean keepAlive) {
+            if (!keepAlive || !channel.isOpen()) {
+                close();
+                return;
+            }
+
+            //Any pipelined bytes are kept by the parser for the next request
+            requestReady = false;
+            lastActive = System.currentTimeMillis();
+
+            try {
+                channel.configureBlocking(false);
+                loop.register(this);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void register(Selector selector) {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, this);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+
+            parser.release();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.magic.core.models.server;
+
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.models.CapturedResponse;
+import com.github.magic.core.models.Request;
+import com.github.magic.core.models.Response;
+import com.github.magic.core.models.header.KnownHeaders;
+import com.github.magic.core.path_handler.Handler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Single-flight execution of the handlers: while a GET request of a resource is being handled, identical requests arriving in the meantime
+ * don't call the handler again, they wait for the first one to finish and send a copy of its response instead. This keeps a stampede of clients
+ * (e.g. right after a cached response expired) from hitting the handler, and whatever it calls, all at once.</p>
+ * <br>
+ * <p>Requests are identical when they have the same path, query and values of the key headers ("Accept" and "Accept-Language" by default).
+ * Requests carrying credentials ("Cookie", "Authorization") may get a personal response, they're always handled on their own. Only responses
+ * sent from memory can be shared, if the first request doesn't send one (files, streams, errors), or if its response sets cookies or varies on
+ * other headers, the waiting requests are handled on their own as well</p>
+ *
+ * @see com.github.magic.core.config.ServerConfig#setRequestCoalescing(boolean)
+ */
+public final class RequestCoalescer {
+    private static final String[] DEFAULT_KEY_HEADERS = {"Accept", "Accept-Language"};
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    //Request headers the requests are keyed on, lower-cased
+    private final String[] keyHeaders;
+
+    public RequestCoalescer() {
+        this(DEFAULT_KEY_HEADERS);
+    }
+
+    /**
+     * @param keyHeaders the request headers the responses depend on, requests only share a response if they have the same values for them
+     */
+    public RequestCoalescer(String... keyHeaders) {
+        this.keyHeaders = new String[keyHeaders.length];
+
+        for (int i = 0; i < keyHeaders.length; i++)
+            this.keyHeaders[i] = keyHeaders[i].trim().toLowerCase(Locale.ROOT);
+
+        Arrays.sort(this.keyHeaders);
+    }
+
+    /**
+     * Handle the request, or wait for the identical request in flight and replay its response
+     *
+     * @param handler the handler of the request
+     * @param req the request
+     * @param res the response
+     * @param timeout the maximum time (in ms) to wait for the request in flight, the request is handled on its own past that
+     * @throws IOException exception raised by the handler
+     */
+    public void handle(Handler handler, Request req, Response res, long timeout) throws IOException {
+        if (req.getMethod() != HttpMethod.GET
+                || !req.getHeaders().find(KnownHeaders.COOKIE).isEmpty()
+                || !req.getHeaders().find(KnownHeaders.AUTHORIZATION).isEmpty()) {
+            handler.handle(req, res);
+            return;
+        }
+
+        String key = keyOf(req);
+        Flight flight = new Flight();
+        Flight inFlight = flights.putIfAbsent(key, flight);
+
+        if (inFlight == null) {
+            lead(key, flight, handler, req, res);
+            return;
+        }
+
+        CapturedResponse response = null;
+
+        try {
+            response = inFlight.await(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (response != null)
+            response.replay(res);
+        else
+            handler.handle(req, res);
+    }
+
+    /**
+     * @return the number of requests currently in flight
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private String keyOf(Request req) {
+        StringBuilder key = new StringBuilder(req.getPath().getRawPath());
+
+        if (req.getPath().getRawQuery() != null)
+            key.append('?').append(req.getPath().getRawQuery());
+
+        for (String header : keyHeaders)
+            key.append('\n').append(req.getHeaders().find(header));
+
+        return key.toString();
+    }
+
+    private void lead(String key, Flight flight, Handler handler, Request req, Response res) throws IOException {
+        res.addCapture((status, headers, body, length, mimeType, lastModified) -> {
+            //A personal response (or one depending on headers the waiting requests may not share) is left to them to build
+            if (headers.find("Set-Cookie").isEmpty() && isKeyedOn(headers.find(KnownHeaders.VARY)))
+                flight.response = CapturedResponse.of(status, headers, body, length, mimeType, lastModified);
+        });
+
+        try {
+            handler.handle(req, res);
+        } finally {
+            //Requests arriving from now on start a new flight, the ones already waiting get this response
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+    }
+
+    /**
+     * @param vary the "Vary" header of the response
+     * @return {@code true} if the response only varies on the key headers, or on "Accept-Encoding" which is negotiated again on every replay
+     */
+    private boolean isKeyedOn(String vary) {
+        if (vary.isEmpty())
+            return true;
+
+        for (String header : vary.split(",")) {
+            header = header.trim().toLowerCase(Locale.ROOT);
+
+            if (!header.equals("accept-encoding") && Arrays.binarySearch(keyHeaders, header) < 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static final class Flight {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        //Set by the first request before it's done, null if its response can't be shared
+        private volatile CapturedResponse response;
+
+        /**
+         * @return the response of the request in flight, or {@code null} if it couldn't be captured in time
+         */
+        private CapturedResponse await(long timeout) throws InterruptedException {
+            return done.await(timeout, TimeUnit.MILLISECONDS) ? response : null;
+        }
+    }
+}
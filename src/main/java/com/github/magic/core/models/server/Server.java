@@ -2,10 +2,13 @@ package com.github.magic.core.models.server;
 
 import com.github.magic.core.config.Config;
 import com.github.magic.core.config.ServerConfig;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.consts.ServingMode;
 import com.github.magic.core.middleware.Middleware;
 import com.github.magic.core.models.routing_tries.URITries;
 import com.github.magic.core.models.threads.ShutdownThread;
 import com.github.magic.core.models.threads.TransactionThread;
+import com.github.magic.core.path_handler.AsyncHandler;
 import com.github.magic.core.path_handler.Handler;
 import com.github.magic.ssl.models.SSLServer;
 
@@ -14,8 +17,13 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 public class Server implements Runnable {
     private final URITries tries;
@@ -28,6 +36,14 @@ public class Server implements Runnable {
 
     private String upgradeInsecureRequestURL = "";
 
+    //Only used when request coalescing is enabled in the server config
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+
+    //Set once listening, see close()
+    private volatile ServerSocket serverSocket;
+    private volatile Selector acceptSelector;
+    private volatile Reactor reactor;
+
 
     public Server(int port, URITries tries, ServerConfig serverConfig) {
         this.tries = tries;
@@ -60,11 +76,24 @@ public class Server implements Runnable {
     public synchronized void listen(int port) {
         this.port = port;
 
+        //The reactor only speaks plain HTTP, SSL connections are still served the blocking way
+        if (serverConfig.getServingMode() == ServingMode.REACTOR && !(this instanceof SSLServer)) {
+            try {
+                reactor = new Reactor(this, tries, serverConfig);
+                reactor.listen(new InetSocketAddress(hostIP.getHostName(), port));
+            } catch (IOException e) {
+                if (Config.SHOW_ERROR) System.err.println("[-] Exception occur. Using port: " + port);
+            }
+
+            return;
+        }
+
         try {
             ServerSocket serverSocket;
             Socket sock;
             TransactionThread transactionThread;
-            TimeoutThreadPool threadPool;
+            ExecutorService threadPool;
+            Selector acceptSelector;
 
             try {
                 serverSocket = configureServer();
@@ -73,29 +102,138 @@ public class Server implements Runnable {
                 return;
             }
 
-            if (Config.VERBOSE) System.out.println("[+] Server is listening on port " + port);
+            if (Config.VERBOSE) System.out.println("[+] Server is listening on port " + serverSocket.getLocalPort());
 
-            threadPool = TimeoutThreadPool.getDefault(serverConfig);
+            threadPool = TimeoutThreadPool.getExecutor(serverConfig);
+            acceptSelector = openAcceptSelector(serverSocket);
 
-            while (serverSocket != null && !serverSocket.isClosed()) {
-                sock = serverSocket.accept();
+            this.acceptSelector = acceptSelector;
+            this.serverSocket = serverSocket;
+
+            while (!serverSocket.isClosed()) {
+                sock = accept(serverSocket, acceptSelector);
+
+                //Closed while waiting
+                if (sock == null)
+                    break;
 
                 sock.setSoTimeout(serverConfig.getThreadRequestReadTimeoutDuration());
                 sock.setTcpNoDelay(true);
 
                 transactionThread = new TransactionThread(sock, tries, this);
-                threadPool.submitWithTimer(transactionThread, serverSocket);
+                parkOn(transactionThread, threadPool);
+                TimeoutThreadPool.submitWithTimer(threadPool, serverConfig, transactionThread);
             }
 
+            if (acceptSelector != null)
+                acceptSelector.close();
+
             Runtime.getRuntime().addShutdownHook(new ShutdownThread());
         } catch (IOException e) {
-            if (Config.SHOW_ERROR) System.err.println("[-] Exception occur. Using port: " + port);
+            //Closing the server socket ends a blocking accept() with an exception
+            ServerSocket current = this.serverSocket;
+
+            if (Config.SHOW_ERROR && (current == null || !current.isClosed())) System.err.println("[-] Exception occur. Using port: " + port);
         }
 
     }
 
+    /**
+     * Channel backed server sockets (see {@link ChannelServerSocketFactory}) are accepted through a selector. A blocking
+     * {@link ServerSocketChannel#accept()} is interruptible and would close the server socket whenever the listening thread gets interrupted,
+     * while a plain {@link ServerSocket} simply keeps on listening
+     *
+     * @param serverSocket the bound server socket
+     * @return the selector to wait for incoming connections with, or {@code null} if the socket doesn't have a channel
+     * @throws IOException exception raised when opening the selector
+     */
+    private Selector openAcceptSelector(ServerSocket serverSocket) throws IOException {
+        ServerSocketChannel channel = serverSocket.getChannel();
+
+        if (channel == null)
+            return null;
+
+        Selector selector = Selector.open();
+
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+
+        return selector;
+    }
+
+    private Socket accept(ServerSocket serverSocket, Selector acceptSelector) throws IOException {
+        if (acceptSelector == null)
+            return serverSocket.accept();
+
+        while (true) {
+            acceptSelector.select();
+            acceptSelector.selectedKeys().clear();
+
+            //An interrupt only wakes the selector up, clear it so that the next select() blocks again
+            Thread.interrupted();
+
+            if (serverSocket.isClosed())
+                return null;
+
+            SocketChannel channel = serverSocket.getChannel().accept();
+
+            if (channel != null) {
+                channel.configureBlocking(true);
+                return channel.socket();
+            }
+        }
+    }
+
+    /**
+     * Stop accepting connections, the one being listened on returns. Connections already accepted are served until they're over
+     */
+    public void close() {
+        Reactor currentReactor = reactor;
+
+        if (currentReactor != null)
+            currentReactor.close();
+
+        ServerSocket currentSocket = serverSocket;
+
+        if (currentSocket == null)
+            return;
+
+        try {
+            currentSocket.close();
+        } catch (IOException e) {
+            if (Config.SHOW_ERROR) System.err.println("[-] Failed to close the server socket: " + e.getMessage());
+        }
+
+        Selector selector = acceptSelector;
+
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    /**
+     * @return the port the server is listening on (the one picked by the system when listening on port 0), or -1 if it isn't listening yet
+     */
+    public int getLocalPort() {
+        Reactor currentReactor = reactor;
+
+        if (currentReactor != null)
+            return currentReactor.getLocalPort();
+
+        ServerSocket currentSocket = serverSocket;
+
+        return currentSocket == null ? -1 : currentSocket.getLocalPort();
+    }
+
+    /**
+     * Parked connections (see {@link com.github.magic.core.path_handler.AsyncHandler}) are resumed by the pool, with a new deadline
+     */
+    private void parkOn(TransactionThread transactionThread, ExecutorService threadPool) {
+        transactionThread.setWorkers(task -> TimeoutThreadPool.submitWithTimer(threadPool, serverConfig, task, transactionThread));
+    }
+
     protected ServerSocket configureServer() throws IOException {
-        setServerSocketFactory(ServerSocketFactory.getDefault());
+        //Channel backed sockets, so that static files can be sent with zero-copy
+        setServerSocketFactory(new ChannelServerSocketFactory());
 
         return getServerSocket();
     }
@@ -128,13 +266,21 @@ public class Server implements Runnable {
     }
 
     public void put(String path, Middleware[] middlewares, Handler mainHandler) {
-        tries.delete(path, new ArrayList<>(List.of(middlewares)), mainHandler);
+        tries.put(path, new ArrayList<>(List.of(middlewares)), mainHandler);
     }
 
     public void get(String path, Handler mainHandler) {
         tries.get(path, null, mainHandler);
     }
 
+    public void post(String path, Handler mainHandler) {
+        tries.post(path, null, mainHandler);
+    }
+
+    public void delete(String path, Handler mainHandler) {
+        tries.delete(path, null, mainHandler);
+    }
+
     public void put(String path, Handler mainHandler) {
         tries.put(path, null, mainHandler);
     }
@@ -143,6 +289,58 @@ public class Server implements Runnable {
         tries.options(path, null, mainHandler);
     }
 
+    //Asynchronous handlers, registered under their own names: overloads taking an AsyncHandler would be picked for every expression lambda
+    //(e.g. "(req, res) -> res.send(...)"), which then doesn't compile since it returns nothing
+    public void getAsync(String path, Middleware[] middlewares, AsyncHandler mainHandler) {
+        tries.get(path, new ArrayList<>(List.of(middlewares)), mainHandler);
+    }
+
+    public void postAsync(String path, Middleware[] middlewares, AsyncHandler mainHandler) {
+        tries.post(path, new ArrayList<>(List.of(middlewares)), mainHandler);
+    }
+
+    public void deleteAsync(String path, Middleware[] middlewares, AsyncHandler mainHandler) {
+        tries.delete(path, new ArrayList<>(List.of(middlewares)), mainHandler);
+    }
+
+    public void optionsAsync(String path, Middleware[] middlewares, AsyncHandler mainHandler) {
+        tries.options(path, new ArrayList<>(List.of(middlewares)), mainHandler);
+    }
+
+    public void putAsync(String path, Middleware[] middlewares, AsyncHandler mainHandler) {
+        tries.put(path, new ArrayList<>(List.of(middlewares)), mainHandler);
+    }
+
+    public void getAsync(String path, AsyncHandler mainHandler) {
+        tries.get(path, null, mainHandler);
+    }
+
+    public void postAsync(String path, AsyncHandler mainHandler) {
+        tries.post(path, null, mainHandler);
+    }
+
+    public void deleteAsync(String path, AsyncHandler mainHandler) {
+        tries.delete(path, null, mainHandler);
+    }
+
+    public void putAsync(String path, AsyncHandler mainHandler) {
+        tries.put(path, null, mainHandler);
+    }
+
+    public void optionsAsync(String path, AsyncHandler mainHandler) {
+        tries.options(path, null, mainHandler);
+    }
+
+    //Middlewares run for every request, before the ones of the route
+    public void use(Middleware... middlewares) {
+        tries.use(middlewares);
+    }
+
+    //Routes can be removed (and added) while serving, requests in flight aren't affected
+    public boolean remove(HttpMethod method, String path) {
+        return tries.remove(method, path);
+    }
+
 
     /**
      * Setter & Getter
@@ -212,4 +410,8 @@ public class Server implements Runnable {
     public ServerConfig getServerConfig() {
         return serverConfig;
     }
+
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
 }
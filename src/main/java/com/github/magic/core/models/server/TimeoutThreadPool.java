@@ -2,10 +2,14 @@ package com.github.magic.core.models.server;
 
 import com.github.magic.core.config.Config;
 import com.github.magic.core.config.ServerConfig;
+import com.github.magic.core.consts.ExecutionMode;
 import com.github.magic.core.models.threads.TransactionThread;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.concurrent.*;
 
 public class TimeoutThreadPool extends ThreadPoolExecutor {
@@ -34,6 +38,39 @@ public class TimeoutThreadPool extends ThreadPoolExecutor {
         return retPool;
     }
 
+    /**
+     * Returns the executor matching the {@link ServerConfig#getExecutionMode()}. For {@link ExecutionMode#VIRTUAL_THREAD}, an executor
+     * starting a new virtual thread per task is returned, which is only available from Java 21. On older runtimes, this method falls back
+     * to the {@link #getDefault(ServerConfig)} pool.
+     *
+     * <p>The virtual thread executor is looked up reflectively, so that the project can still be compiled against Java 17</p>
+     *
+     * @param config the server config
+     * @return the executor to submit transactions to
+     */
+    public static ExecutorService getExecutor(ServerConfig config) {
+        if (config.getExecutionMode() != ExecutionMode.VIRTUAL_THREAD)
+            return getDefault(config);
+
+        if (Config.JAVA_VERSION >= 21) {
+            try {
+                MethodHandle factory = MethodHandles.publicLookup().findStatic(
+                        Executors.class,
+                        "newVirtualThreadPerTaskExecutor",
+                        MethodType.methodType(ExecutorService.class)
+                );
+
+                return (ExecutorService) factory.invoke();
+            } catch (Throwable e) {
+                if (Config.SHOW_ERROR) System.err.println("[-] Unable to create virtual thread executor: " + e.getMessage());
+            }
+        }
+
+        if (Config.VERBOSE) System.out.println("[+] Virtual threads aren't supported by Java " + Config.JAVA_VERSION + ", using the platform thread pool instead");
+
+        return getDefault(config);
+    }
+
     @Override
     public void execute(Runnable command) {
         super.execute(command);
@@ -45,40 +82,73 @@ public class TimeoutThreadPool extends ThreadPoolExecutor {
     }
 
     /**
-     * Submits the task to the thread pool while spawning an extra thread to ensure non-blocking behavior when time out at {@value Config#THREAD_TIMEOUT_DURATION}
+     * Submits the transaction to the executor, and closes it if it's still running after {@link ServerConfig#getThreadTimeoutDuration()} ms
+     *
+     * @see #submitWithTimer(ExecutorService, ServerConfig, Runnable, Closeable)
      *
+     * @param executor          The executor returned from {@link #getExecutor(ServerConfig)}
+     * @param config            The server config
      * @param transactionThread The transaction thread to be run
-     * @param serverSocket      current server socket instance
-     * @deprecated I'm currently re-writing this method as it's very expensive in terms of memory.
      */
-    protected void submitWithTimer(TransactionThread transactionThread, ServerSocket serverSocket) {
-        //Handle with Future<?> for timeout
-        Future<?> status = submit(transactionThread);
+    protected static void submitWithTimer(ExecutorService executor, ServerConfig config, TransactionThread transactionThread) {
+        submitWithTimer(executor, config, transactionThread, transactionThread);
+    }
+
+    /**
+     * Submits the task to the executor while registering its deadline on the shared {@link HashedWheelTimer}. If the task hasn't
+     * completed by then, it's interrupted and {@code onTimeout} is closed (which, for a transaction, serves back the response and closes the socket).
+     * The deadline is cancelled as soon as the task completes, so no extra thread is ever created per task.
+     *
+     * @param executor  The executor returned from {@link #getExecutor(ServerConfig)}
+     * @param config    The server config
+     * @param task      The task to be run
+     * @param onTimeout The resource to be closed when the task times out
+     */
+    protected static void submitWithTimer(ExecutorService executor, ServerConfig config, Runnable task, Closeable onTimeout) {
+        TimedTask timedTask = new TimedTask(task, onTimeout);
+
+        timedTask.timeout = HashedWheelTimer.getDefault().schedule(
+                timedTask::expire,
+                config.getThreadTimeoutDuration(),
+                TimeUnit.MILLISECONDS
+        );
+
+        try {
+            executor.execute(timedTask);
+        } catch (RejectedExecutionException e) {
+            timedTask.timeout.cancel();
+            timedTask.expire();
+        }
+    }
+
+    /**
+     * Task cancelling its own deadline once done
+     */
+    private static class TimedTask extends FutureTask<Void> {
+        private final Closeable onTimeout;
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        private TimedTask(Runnable task, Closeable onTimeout) {
+            super(task, null);
+            this.onTimeout = onTimeout;
+        }
+
+        @Override
+        protected void done() {
+            if (timeout != null)
+                timeout.cancel();
+        }
 
-        //System.out.println(getActiveCount());
+        private void expire() {
+            //Already done (the connection may be parked, or serving its next request), it isn't ours to close anymore
+            if (!cancel(true))
+                return;
 
-        new Thread(() -> {
             try {
-                status.get(config.getThreadTimeoutDuration(), TimeUnit.MILLISECONDS);
-            } catch (InterruptedException | TimeoutException | ExecutionException e) {
-                status.cancel(true);
-                transactionThread.close(); //Serve back 500 Internal Server Error case
-
-                if (e instanceof InterruptedException) {
-                    if (Config.VERBOSE)
-                        System.out.println("[+] FATAL: Server has been interrupted. Shutting down... ");
-
-                    if (serverSocket.isBound()) {
-                        try {
-                            serverSocket.close();
-                        } catch (IOException ex) {
-                            throw new RuntimeException(ex);
-                        }
-                    }
-
-                    Thread.currentThread().interrupt();
-                }
+                onTimeout.close(); //Serve back 500 Internal Server Error case
+            } catch (IOException e) {
+                if (Config.SHOW_ERROR) System.err.println("[-] Failed to close timed out task: " + e.getMessage());
             }
-        }).start();
+        }
     }
 }
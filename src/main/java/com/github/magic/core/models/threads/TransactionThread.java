@@ -4,13 +4,17 @@ import com.github.magic.core.config.Config;
 import com.github.magic.core.config.ServerConfig;
 import com.github.magic.core.consts.HttpCode;
 import com.github.magic.core.consts.HttpMethod;
-import com.github.magic.core.middleware.Middleware;
+import com.github.magic.core.models.MalformedBodyException;
 import com.github.magic.core.models.Request;
+import com.github.magic.core.models.RequestParser;
 import com.github.magic.core.models.Response;
 import com.github.magic.core.models.header.Header;
 import com.github.magic.core.models.header.Headers;
+import com.github.magic.core.models.header.KnownHeaders;
 import com.github.magic.core.models.routing_tries.URITries;
+import com.github.magic.core.models.server.HashedWheelTimer;
 import com.github.magic.core.models.server.Server;
+import com.github.magic.core.path_handler.AsyncHandler;
 import com.github.magic.core.path_handler.HandlerWithParam;
 import com.github.magic.core.path_handler.StaticFileHandler;
 import com.github.magic.core.utils.Formatter;
@@ -23,11 +27,14 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class TransactionThread implements Runnable, Closeable {
-    //Making sure that each "next" callback from middlewares should only be called once
-    private static boolean isNextMiddlewareCalled = false;
-
     private final Socket   sock;
     private final Server serverInstance;
     private Response res;
@@ -37,6 +44,18 @@ public class TransactionThread implements Runnable, Closeable {
     //Used for Https connection, so that the request won't accidentally parse the handshake request
     private boolean isHandshakeCompleted;
 
+    //The total amount of request, response cycle can be done through this connection
+    private int counter = Config.MAX_SERVE_PER_CONNECTION;
+
+    //Kept for the whole connection, as it may hold bytes read ahead of the current request
+    private final RequestParser parser = new RequestParser();
+
+    //Runs the rest of the connection once a parked exchange is over, null if the connection can't be parked
+    private Executor workers;
+
+    //Stage of the asynchronous handler of the current exchange, set when the exchange is left pending (see AsyncHandler)
+    private CompletableFuture<?> pending;
+
     public TransactionThread(Socket sock, URITries tries, Server serverInstance) {
         this.sock = sock;
         this.tries = tries;
@@ -45,22 +64,46 @@ public class TransactionThread implements Runnable, Closeable {
 
     @Override
     public void run() {
+        serveConnection();
+    }
+
+    /**
+     * Serve the requests of the connection until it's over (then close it), or until an exchange is parked
+     */
+    private void serveConnection() {
         try {
             try {
                 handleConnection(sock);
             } finally {
-                try {
-                    // [RFC9112#9.6] close socket gracefully
-                    // (except SSL socket which doesn't support half-closing)
-                    if (!(sock instanceof SSLSocket)) {
-                        sock.shutdownOutput(); // half-close socket (only output)
-                        StreamTransfer.transfer(sock.getInputStream(), null, -1); // consume input
-                    }
-                } finally {
-                    sock.close(); // and finally close socket fully
-                }
+                if (pending == null)
+                    closeConnection();
             }
         } catch (IOException ignored){}
+
+        //Only handed over once this thread is done with the connection
+        if (pending != null)
+            park(keepAlive -> {
+                if (keepAlive)
+                    serveConnection();
+                else
+                    try {
+                        closeConnection();
+                    } catch (IOException ignored) {}
+            });
+    }
+
+    private void closeConnection() throws IOException {
+        try {
+            // [RFC9112#9.6] close socket gracefully
+            // (except SSL socket which doesn't support half-closing)
+            if (!(sock instanceof SSLSocket)) {
+                sock.shutdownOutput(); // half-close socket (only output)
+                StreamTransfer.transfer(sock.getInputStream(), null, -1); // consume input
+            }
+        } finally {
+            sock.close(); // and finally close socket fully
+            parser.release();
+        }
     }
 
     /**
@@ -87,75 +130,225 @@ public class TransactionThread implements Runnable, Closeable {
     }
 
     private void handleConnection(Socket sock) throws IOException {
+        prepareHandshake();
+
+        do {
+            if (!handleExchange() || pending != null)
+                break;
+        } while (transactionContinue());
+    }
+
+    /**
+     * Let the asynchronous handlers park the connection (see {@link AsyncHandler}), instead of waiting for their stage on the worker thread
+     *
+     * @param workers runs the rest of the connection once the stage completes, on a worker thread with a deadline
+     */
+    public void setWorkers(Executor workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * @return {@code true} if the last exchange was left pending by an asynchronous handler, and must be handed over with {@link #park(Consumer)}
+     */
+    public boolean isParked() {
+        return pending != null;
+    }
+
+    /**
+     * Hand the pending exchange over to the stage of its handler. Once the stage completes, the response is closed on a worker, then the
+     * connection continues there. If the stage is still pending after {@link ServerConfig#getThreadTimeoutDuration()}, it's cancelled and the
+     * connection closed, the same way a synchronous handler times out.
+     * <p>Should only be called once the current thread is done with the connection</p>
+     *
+     * @param then called with whether the connection should be kept open (same as {@link #serve()}), once the response is closed
+     */
+    public void park(Consumer<Boolean> then) {
+        CompletableFuture<?> future = pending;
+        AtomicBoolean settled = new AtomicBoolean();
+
+        HashedWheelTimer.Timeout deadline = HashedWheelTimer.getDefault().schedule(() -> {
+            if (!settled.compareAndSet(false, true))
+                return;
+
+            //Cancelling the stage doesn't stop the handler's work, which may still read the body from the parser's buffer
+            future.cancel(true);
+            close();
+            parser.abandon();
+        }, serverInstance.getServerConfig().getThreadTimeoutDuration(), TimeUnit.MILLISECONDS);
+
+        future.whenComplete((ignored, error) -> {
+            if (!settled.compareAndSet(false, true))
+                return;
+
+            deadline.cancel();
+            workers.execute(() -> {
+                pending = null;
+                then.accept(finishExchange(error) && transactionContinue());
+            });
+        });
+    }
+
+    /**
+     * Close the response of a parked exchange
+     *
+     * @param error the exception which completed the stage, if any
+     * @return {@code false} if the connection must be closed
+     */
+    private boolean finishExchange(Throwable error) {
+        try {
+            try {
+                if (error != null) {
+                    handleException(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    return false;
+                }
+            } finally {
+                res.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (!req.discardBody())
+            return false;
+
+        counter--;
+        return true;
+    }
+
+    /**
+     * Serve exactly one request-response cycle from an already buffered request. Used by the reactor, where the event loop
+     * has read the whole request into {@link #getParser()} before handing the connection over to a worker thread
+     *
+     * @return {@code true} if the connection should be kept open for the next request. Meaningless if the exchange is parked (see {@link #isParked()})
+     * @throws IOException exception raised when reading the request or writing the response
+     */
+    public boolean serve() throws IOException {
+        prepareHandshake();
+
+        return handleExchange() && transactionContinue();
+    }
+
+    public RequestParser getParser() {
+        return parser;
+    }
+
+    private void prepareHandshake(){
+        if (isHandshakeCompleted)
+            return;
+
         if (sock instanceof SSLSocket){
             ((SSLSocket) sock).addHandshakeCompletedListener((ignored) -> isHandshakeCompleted = true);
         }else{
             //HTTP doesn't have ssl handshake, simply skip this step
             isHandshakeCompleted = true;
         }
+    }
 
-        HandlerWithParam handlerWithParam = new HandlerWithParam(null, null, null);
+    /**
+     * Parse a single request with the connection's parser, then route and serve it
+     *
+     * @return {@code false} if the connection must be closed after this cycle
+     * @throws IOException exception raised when closing the response
+     */
+    private boolean handleExchange() throws IOException {
+        HandlerWithParam handlerWithParam;
 
-        //The total amount of request, response cycle can be done through this connection
-        int counter = Config.MAX_SERVE_PER_CONNECTION;
+        req = null;
+        res = new Response(sock.getOutputStream());
 
-        do {
-            req = null;
-            res = new Response(sock.getOutputStream());
+        try {
+            //handle this case the same as request timeout
+            if (counter < 0) throw new InterruptedIOException();
 
-            try {
-                //handle this case the same as request timeout
-                if (counter < 0) throw new InterruptedIOException();
+            req = new Request(parser, sock, serverInstance.getServerConfig().getMaximumRequestBodySize());
+
+            //Protocol mismatched then close the connection immediately
+            if (req == null || req.isMismatched()) return false;
 
-                req = new Request(sock);
+            res = new Response(req,
+                    new int[]{Config.MAX_SERVE_PER_CONNECTION, serverInstance.getServerConfig().getThreadRequestReadTimeoutDuration()} ,
+                    isHandshakeCompleted);
 
-                //Protocol mismatched then close the connection immediately
-                if (req == null || req.isMismatched()) break;
+            //Only support from version 1.1 downwards
+            if (!compatibleHttpVersion() || upgradeSecure()) return false;
 
-                res = new Response(req, 
-                        new int[]{Config.MAX_SERVE_PER_CONNECTION, serverInstance.getServerConfig().getThreadRequestReadTimeoutDuration()} ,
-                        isHandshakeCompleted);
+            //The body is framed by its chunks, but the connection is closed afterward (RFC9112#6.1)
+            if (req.hasConflictingLength())
+                res.setHeader("Connection", "close");
 
-                //Only support from version 1.1 downwards
-                if (!compatibleHttpVersion() || upgradeSecure()) break;
+            //The body isn't read at all, the connection can't be reused
+            if (req.isBodyTooLarge()) {
+                res.setHeader("Connection", "close");
+                res.sendError(HttpCode.CONTENT_TOO_LARGE);
+                return false;
+            }
 
-                handlerWithParam = tries.find(req.getMethod(), req.getPath().getPath());
+            handlerWithParam = tries.find(req.getMethod(), req.getPath().getPath());
 
-                req.setParams(handlerWithParam.params());
+            req.setParams(handlerWithParam.params());
 
+            //Only run the main handler if none of the middlewares have served the response
+            if (handlerWithParam.chain().run(req, res)) {
                 if (handlerWithParam.handler() == null) {
                     // use default version
                     handleDefaultMethod();
+                } else if (workers != null && handlerWithParam.handler() instanceof AsyncHandler asyncHandler) {
+                    if (handleAsync(asyncHandler))
+                        return true;
                 } else {
-                    //Only run the subsequent middlewares and the main handler if none former middlewares have served the response
-                    List<Middleware> middlewares = handlerWithParam.middlewares();
-                    Queue<Middleware> callStack = new LinkedList<>(middlewares);
-
-                    while (!callStack.isEmpty()){
-                        isNextMiddlewareCalled = false;
-                        Middleware currentMiddleware = callStack.element();
-
-                        currentMiddleware.handle(req, res, () -> {
-                            if (!isNextMiddlewareCalled){
-                                try{
-                                    callStack.remove();
-                                    isNextMiddlewareCalled = true;
-                                } catch (NoSuchElementException ignored) {}
-                            }
-                        });
-                    }
-
-                    handlerWithParam.handler().handle(req, res);
+                    ServerConfig serverConfig = serverInstance.getServerConfig();
+
+                    //Identical requests in flight share a single call of the handler
+                    if (serverConfig.isRequestCoalescing())
+                        serverInstance.getRequestCoalescer().handle(handlerWithParam.handler(), req, res, serverConfig.getThreadTimeoutDuration());
+                    else
+                        handlerWithParam.handler().handle(req, res);
                 }
-            } catch (Throwable t) {
-                handleException(t);
-                break; // proceed to close connection
-            } finally {
-                res.close(); // close response and flush output
+            } else if (!res.isHeaderSent()) {
+                //A middleware stopped the request without answering it, the next request can't be answered in order
+                return false;
             }
+        } catch (Throwable t) {
+            handleException(t);
+            return false; // proceed to close connection
+        } finally {
+            //A parked response is closed once the handler is done with it
+            if (pending == null)
+                res.close(); // close response and flush output
+        }
 
-            counter--;
-        } while (transactionContinue());
+        //The next request starts right after the body, whatever the handler has read of it
+        if (pending == null && !req.discardBody())
+            return false;
+
+        counter--;
+        return true;
+    }
+
+    /**
+     * Run the asynchronous handler, and leave the exchange pending if its stage isn't complete yet
+     *
+     * @return {@code true} if the exchange is left pending
+     * @throws Throwable the exception which completed the stage
+     */
+    private boolean handleAsync(AsyncHandler handler) throws Throwable {
+        //The parser may be abandoned (on timeout) while the handler still reads the request
+        req.decodeHeaders();
+
+        CompletableFuture<?> future = handler.handleAsync(req, res).toCompletableFuture();
+
+        if (!future.isDone()) {
+            pending = future;
+            return true;
+        }
+
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() == null ? e : e.getCause();
+        }
+
+        return false;
     }
 
     /**
@@ -201,7 +394,7 @@ public class TransactionThread implements Runnable, Closeable {
 
     private void handleException(Throwable t) {
         //Connections that are abruptedly disconnected by client doesn't need a response
-        if (t.getMessage().startsWith("Connection reset"))
+        if (t.getMessage() != null && t.getMessage().startsWith("Connection reset"))
             return;
            
         if (req == null) {
@@ -216,8 +409,17 @@ public class TransactionThread implements Runnable, Closeable {
                 return;
             }
 
-            if (isHandshakeCompleted) 
+            if (isHandshakeCompleted) {
+                res.setHeader("Connection", "close");
                 res.sendError(HttpCode.BAD_REQUEST, "Invalid request: " + t.getMessage());
+            }
+        } else if (t instanceof MalformedBodyException) {
+            //The end of the body can't be found, neither can the next request
+            res.setHeader("Connection", "close");
+            res.sendError(HttpCode.BAD_REQUEST, "Invalid request: " + t.getMessage());
+        } else if (t instanceof IOException && "Request body too large".equals(t.getMessage())) {
+            res.setHeader("Connection", "close");
+            res.sendError(HttpCode.CONTENT_TOO_LARGE);
         } else {
             res.sendError(HttpCode.INTERNAL_SERVER_ERROR, "Server error :(\nHere's what happened: " + t.getMessage());
         }
@@ -264,10 +466,11 @@ public class TransactionThread implements Runnable, Closeable {
      * @return flag tells if the current connection should be continue
      */
     private boolean transactionContinue(){
-        String reqConnectionStatus = req.getHeaders().find("Connection");
+        String reqConnectionStatus = req.getHeaders().find(KnownHeaders.CONNECTION);
 
         return  reqConnectionStatus.isEmpty()
                 && !"close".equalsIgnoreCase(reqConnectionStatus)
+                && !req.hasConflictingLength()
                 && !req.getVersion().equalsIgnoreCase("1.0");
     }
 
@@ -0,0 +1,46 @@
+package com.github.magic.core.path_handler;
+
+import com.github.magic.core.models.Request;
+import com.github.magic.core.models.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>Handler which sends its response asynchronously, once the returned stage completes (e.g. after a call to a downstream service).
+ * It's registered with the "Async" variants of the routing methods: {@code app.getAsync("/path", (req, res) -> fetch().thenAccept(res::send))}.</p>
+ * <br>
+ * <p>While the stage is pending, the connection is parked: the worker thread goes back to the pool, and the rest of the connection is served
+ * by a worker once the stage completes. A stage still pending after {@link com.github.magic.core.config.ServerConfig#getThreadTimeoutDuration()}
+ * is cancelled, and the connection closed, just like a synchronous handler running for too long. A stage completed exceptionally
+ * is answered with an error, just like an exception thrown by a synchronous handler</p>
+ */
+public interface AsyncHandler extends Handler {
+    /**
+     * @param req the request
+     * @param res the response, which should be sent before the returned stage completes
+     * @return the stage completing once the response is sent
+     * @throws IOException exception raised before the asynchronous part starts
+     */
+    CompletionStage<?> handleAsync(Request req, Response res) throws IOException;
+
+    /**
+     * Wait for the stage on the current thread, used wherever the connection can't be parked (e.g. when identical requests are coalesced)
+     */
+    @Override
+    default void handle(Request req, Response res) throws IOException {
+        try {
+            handleAsync(req, res).toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the asynchronous handler");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException)
+                throw ioException;
+
+            throw new IOException(e.getCause());
+        }
+    }
+}
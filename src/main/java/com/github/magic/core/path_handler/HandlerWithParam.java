@@ -1,8 +1,18 @@
 package com.github.magic.core.path_handler;
 
 import com.github.magic.core.middleware.Middleware;
+import com.github.magic.core.middleware.MiddlewareChain;
 
 import java.util.List;
 import java.util.Map;
 
-public record HandlerWithParam(Handler handler, Map<String, String> params, List<Middleware> middlewares) {}
+/**
+ * The result of a route lookup
+ *
+ * @param chain the compiled middlewares to run before the handler (including the ones of the whole server)
+ */
+public record HandlerWithParam(Handler handler, Map<String, String> params, List<Middleware> middlewares, MiddlewareChain chain) {
+    public HandlerWithParam(Handler handler, Map<String, String> params, List<Middleware> middlewares) {
+        this(handler, params, middlewares, middlewares == null ? MiddlewareChain.EMPTY : new MiddlewareChain(middlewares));
+    }
+}
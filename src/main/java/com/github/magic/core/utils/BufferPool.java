@@ -0,0 +1,313 @@
+package com.github.magic.core.utils;
+
+import com.github.magic.core.config.Config;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Size-classed pool of I/O buffers, so that serving a request doesn't allocate (and later collect) its buffers every time.</p>
+ * <br>
+ * <p>Buffer sizes are powers of two, from {@link #MINIMUM_SIZE} up to {@link Config#BODY_BUFFER_SIZE}, larger requests are simply allocated.
+ * Every thread keeps a few released buffers of each class for itself, the others go to a bounded queue shared by all the threads.
+ * Virtual threads are short-lived, they always go through the shared queues.</p>
+ * <br>
+ * <p>Buffers are handed out as {@link PooledBuffer}, to be released exactly once (typically with a try-with-resources). When
+ * {@link Config#BUFFER_LEAK_DETECTION} is on, buffers garbage collected without being released are reported along with where they were acquired</p>
+ */
+public final class BufferPool {
+    public static final int MINIMUM_SIZE = (1 << 12); //4096 bytes
+
+    private static final int MINIMUM_SHIFT = Integer.numberOfTrailingZeros(MINIMUM_SIZE);
+
+    //Number of size classes, the largest one being the body buffer size
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(Config.BODY_BUFFER_SIZE) - MINIMUM_SHIFT + 1;
+
+    //Buffers kept per thread for each class, buffers up to this size get THREAD_CACHE_SIZE slots, larger ones a single slot
+    private static final int THREAD_CACHE_SIZE = 4;
+    private static final int THREAD_CACHE_LARGE_THRESHOLD = Config.MAXIMUM_CHUNK_SIZE;
+
+    //Bytes kept in the shared queue of each class
+    private static final int SHARED_BYTES_PER_CLASS = (1 << 24); //16 MB
+
+    private static final BufferPool HEAP = new BufferPool(false);
+    private static final BufferPool DIRECT = new BufferPool(true);
+
+    private static final Cleaner LEAK_CLEANER = Config.BUFFER_LEAK_DETECTION ? Cleaner.create() : null;
+
+    private final boolean direct;
+
+    private final Queue<PooledBuffer>[] shared;
+    private final AtomicInteger[] sharedCounts;
+
+    private final ThreadLocal<PooledBuffer[][]> threadCaches;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder unpooled = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private BufferPool(boolean direct) {
+        this.direct = direct;
+        this.shared = new Queue[CLASS_COUNT];
+        this.sharedCounts = new AtomicInteger[CLASS_COUNT];
+
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            shared[i] = new ConcurrentLinkedQueue<>();
+            sharedCounts[i] = new AtomicInteger();
+        }
+
+        threadCaches = ThreadLocal.withInitial(() -> {
+            PooledBuffer[][] cache = new PooledBuffer[CLASS_COUNT][];
+
+            for (int i = 0; i < CLASS_COUNT; i++)
+                cache[i] = new PooledBuffer[sizeOf(i) <= THREAD_CACHE_LARGE_THRESHOLD ? THREAD_CACHE_SIZE : 1];
+
+            return cache;
+        });
+    }
+
+    /**
+     * @return the pool of heap buffers, whose {@link PooledBuffer#array()} can be used with streams
+     */
+    public static BufferPool heap() {
+        return HEAP;
+    }
+
+    /**
+     * @return the pool of direct buffers, meant for channel I/O
+     */
+    public static BufferPool direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Get a cleared buffer of at least the given capacity
+     *
+     * @param minCapacity the minimum capacity
+     * @return the buffer, to be released once done with it
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        int sizeClass = classOf(minCapacity);
+        PooledBuffer pooled = null;
+
+        if (sizeClass < 0) {
+            unpooled.increment();
+            pooled = new PooledBuffer(this, allocate(minCapacity), -1);
+        } else {
+            PooledBuffer[] cache = VirtualThreads.isCurrent() ? null : threadCaches.get()[sizeClass];
+
+            if (cache != null) {
+                for (int i = cache.length - 1; i >= 0 && pooled == null; i--) {
+                    pooled = cache[i];
+                    cache[i] = null;
+                }
+            }
+
+            if (pooled == null && (pooled = shared[sizeClass].poll()) != null)
+                sharedCounts[sizeClass].decrementAndGet();
+
+            if (pooled != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                pooled = new PooledBuffer(this, allocate(sizeOf(sizeClass)), sizeClass);
+            }
+        }
+
+        pooled.buffer.clear();
+        pooled.acquired();
+        outstanding.incrementAndGet();
+
+        return pooled;
+    }
+
+    /**
+     * @return a snapshot of the pool usage counters
+     */
+    public Metrics metrics() {
+        return new Metrics(hits.sum(), misses.sum(), unpooled.sum(), discarded.sum(), leaks.sum(), outstanding.get());
+    }
+
+    private void release(PooledBuffer pooled) {
+        outstanding.decrementAndGet();
+
+        int sizeClass = pooled.sizeClass;
+
+        if (sizeClass < 0)
+            return;
+
+        PooledBuffer[] cache = VirtualThreads.isCurrent() ? null : threadCaches.get()[sizeClass];
+
+        if (cache != null) {
+            for (int i = 0; i < cache.length; i++) {
+                if (cache[i] == null) {
+                    cache[i] = pooled;
+                    return;
+                }
+            }
+        }
+
+        if (sharedCounts[sizeClass].incrementAndGet() <= SHARED_BYTES_PER_CLASS / sizeOf(sizeClass)) {
+            shared[sizeClass].add(pooled);
+        } else {
+            sharedCounts[sizeClass].decrementAndGet();
+            discarded.increment();
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static int classOf(int capacity) {
+        if (capacity <= MINIMUM_SIZE)
+            return 0;
+
+        int sizeClass = (32 - Integer.numberOfLeadingZeros(capacity - 1)) - MINIMUM_SHIFT;
+
+        return sizeClass < CLASS_COUNT ? sizeClass : -1;
+    }
+
+    private static int sizeOf(int sizeClass) {
+        return MINIMUM_SIZE << sizeClass;
+    }
+
+    /**
+     * A buffer borrowed from the pool
+     */
+    public static final class PooledBuffer implements AutoCloseable {
+        private final BufferPool pool;
+        private final ByteBuffer buffer;
+        private final int sizeClass;
+
+        private boolean inUse;
+
+        //Only set when leak detection is on, shared with the cleaner
+        private final LeakTracker tracker;
+
+        private PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+            this.pool = pool;
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+
+            if (LEAK_CLEANER != null) {
+                tracker = new LeakTracker(pool);
+                LEAK_CLEANER.register(this, tracker);
+            } else {
+                tracker = null;
+            }
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * @return the backing array of a heap buffer
+         * @throws UnsupportedOperationException for direct buffers
+         */
+        public byte[] array() {
+            return buffer.array();
+        }
+
+        public int capacity() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Give the buffer back to the pool. The buffer must not be used anymore afterward
+         */
+        public void release() {
+            if (!inUse) {
+                if (tracker != null)
+                    throw new IllegalStateException("Buffer released twice", tracker.acquiredAt);
+
+                return;
+            }
+
+            inUse = false;
+
+            if (tracker != null)
+                tracker.acquiredAt = null;
+
+            pool.release(this);
+        }
+
+        /**
+         * Give the buffer up without returning it to the pool, when it may still be read by code which can't be stopped (e.g. the work of a
+         * timed out handler). It's left to the garbage collector, so that it's never handed to another borrower
+         */
+        public void discard() {
+            if (!inUse)
+                return;
+
+            inUse = false;
+
+            if (tracker != null)
+                tracker.acquiredAt = null;
+
+            pool.outstanding.decrementAndGet();
+            pool.discarded.increment();
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+
+        private void acquired() {
+            inUse = true;
+
+            if (tracker != null)
+                tracker.acquiredAt = new Throwable("Buffer acquired here");
+        }
+    }
+
+    /**
+     * Run by the cleaner once a buffer is unreachable, reports it if it was still acquired
+     */
+    private static final class LeakTracker implements Runnable {
+        private final BufferPool pool;
+        private volatile Throwable acquiredAt;
+
+        private LeakTracker(BufferPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            Throwable site = acquiredAt;
+
+            if (site == null)
+                return;
+
+            pool.leaks.increment();
+            pool.outstanding.decrementAndGet();
+
+            if (Config.SHOW_ERROR) {
+                System.err.println("[-] Buffer garbage collected without being released");
+                site.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Pool usage counters, used to size the pool
+     *
+     * @param hits acquisitions served by a released buffer
+     * @param misses acquisitions which had to allocate a buffer
+     * @param unpooled acquisitions too large to be pooled
+     * @param discarded buffers dropped because the pool was full, or given up with {@link PooledBuffer#discard()}
+     * @param leaks buffers collected without being released (only counted with leak detection on)
+     * @param outstanding buffers currently acquired
+     */
+    public record Metrics(long hits, long misses, long unpooled, long discarded, long leaks, int outstanding) {}
+}
@@ -1,11 +1,8 @@
 package com.github.magic.core.utils;
 
-import java.text.SimpleDateFormat;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.TemporalAccessor;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 
 public class Formatter {
     public static String getFormatedLength(int length) {
@@ -29,14 +26,16 @@ public class Formatter {
         return length + " " + sizeTable[unitIndex];
     }
 
+    /**
+     * Render the date for the HTTP headers, e.g. "Thu, 01 Jan 1970 00:00:01 UTC"
+     *
+     * @see HttpDateClock
+     *
+     * @param date the date, {@code null} for the current date (which is cached for the current second)
+     * @return the rendered date
+     */
     public static String convertTime(Date date) {
-        if (date == null)
-            date = new Date();
-
-        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        return dateFormat.format(date);
+        return HttpDateClock.format(date);
     }
 
     public static String trimLeft(String s, char c) {
@@ -0,0 +1,143 @@
+package com.github.magic.core.utils;
+
+import com.github.magic.core.models.header.PreEncodedHeader;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Shared clock for the dates sent in the headers ("Date", "Last-Modified").</p>
+ * <br>
+ * <p>The current date is rendered (both as a string and as an encoded "Date" header line) at most once per second, then published through
+ * a volatile field, so readers never lock. File modification dates are cached per path, and re-rendered only when the file's mtime changes</p>
+ */
+public final class HttpDateClock {
+    //Same output as the former "EEE, dd MMM yyyy HH:mm:ss z" SimpleDateFormat in UTC, but immutable and thread-safe
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'UTC'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
+
+    //Upper bound of the Last-Modified cache, which is simply cleared once full
+    private static final int LAST_MODIFIED_CACHE_SIZE = 1024;
+
+    private static volatile Tick current = new Tick(System.currentTimeMillis() / 1000);
+
+    private static final Map<String, LastModified> lastModifiedCache = new ConcurrentHashMap<>();
+
+    private HttpDateClock() {}
+
+    /**
+     * @return the current date, rendered for the current second
+     */
+    public static String now() {
+        return tick().text;
+    }
+
+    /**
+     * @return the "Date" header of the current second, already encoded
+     */
+    public static PreEncodedHeader dateHeader() {
+        return tick().header;
+    }
+
+    /**
+     * Render the given date
+     *
+     * @param date the date, {@code null} for the current date
+     * @return the rendered date
+     */
+    public static String format(Date date) {
+        return date == null ? now() : format(date.getTime());
+    }
+
+    /**
+     * Render the given date
+     *
+     * @param epochMillis the date, in milliseconds since the epoch
+     * @return the rendered date
+     */
+    public static String format(long epochMillis) {
+        return FORMATTER.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    /**
+     * Get the "Last-Modified" value of the file, which is only rendered again when its modification time changes
+     *
+     * @param file the file
+     * @return the rendered modification date
+     */
+    public static String lastModified(File file) {
+        long modified = file.lastModified();
+        String path = file.getPath();
+        LastModified entry = lastModifiedCache.get(path);
+
+        if (entry != null && entry.modified() == modified)
+            return entry.text();
+
+        if (lastModifiedCache.size() >= LAST_MODIFIED_CACHE_SIZE)
+            lastModifiedCache.clear();
+
+        String text = format(modified);
+        lastModifiedCache.put(path, new LastModified(modified, text));
+
+        return text;
+    }
+
+    /**
+     * Parse a date sent by a client (e.g. "If-Modified-Since"), in the format of {@link #format(long)} or the standard GMT one
+     *
+     * @param text the date
+     * @return the date in milliseconds since the epoch, or -1 if the date isn't valid
+     */
+    public static long parse(String text) {
+        text = text.trim();
+
+        //This server renders the zone as "UTC", which RFC 1123 parsing doesn't know about
+        if (text.endsWith(" UTC"))
+            text = text.substring(0, text.length() - 4) + " GMT";
+
+        try {
+            return ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static Tick tick() {
+        long second = System.currentTimeMillis() / 1000;
+        Tick tick = current;
+
+        //Concurrent renders of the same second are harmless, whichever is published last wins
+        if (tick.second != second) {
+            tick = new Tick(second);
+            current = tick;
+        }
+
+        return tick;
+    }
+
+    /**
+     * The current date, for a given second
+     */
+    private static final class Tick {
+        private final long second;
+        private final String text;
+        private final PreEncodedHeader header;
+
+        private Tick(long second) {
+            this.second = second;
+            this.text = format(second * 1000);
+            this.header = new PreEncodedHeader("Date", text);
+        }
+    }
+
+    private record LastModified(long modified, String text) {}
+}
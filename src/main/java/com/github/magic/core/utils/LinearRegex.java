@@ -0,0 +1,697 @@
+package com.github.magic.core.utils;
+
+import com.github.magic.core.config.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * <p>Regex searched in linear time, for the regex of the routes, which are matched against untrusted path segments. The regex is compiled
+ * into a Thompson NFA and simulated one code point at a time (every state is visited at most once per code point), so the cost of a search
+ * is bounded by the length of the input times the size of the regex, whatever the input. {@link Pattern} backtracks instead, and some
+ * regex ("(a+)+b") take exponential time on crafted inputs.</p>
+ * <br>
+ * <p>Only the RE2-style subset is supported: literals, ".", classes ("[a-z]", "[^/]", "\d", "\w", "\s" and their negations), groups ("(...)",
+ * "(?:...)"), alternation, repetitions ("*", "+", "?", "{n,m}", greedy or lazy) and the "^" "$" anchors. Anything else (back references,
+ * lookarounds, possessive quantifiers, flags...) falls back to {@link Pattern}, as does a regex whose NFA would be too large</p>
+ *
+ * @see Config#LINEAR_ROUTE_REGEX
+ */
+public final class LinearRegex {
+    //Upper bound of the number of instructions, larger regex (mostly large counted repetitions) fall back to Pattern
+    private static final int MAX_PROGRAM_SIZE = 1 << 12;
+
+    //Instruction codes
+    private static final int CHAR = 0;
+    private static final int SPLIT = 1;
+    private static final int JUMP = 2;
+    private static final int BEGIN = 3;
+    private static final int END = 4;
+    private static final int MATCH = 5;
+
+    private final String regex;
+
+    //Either the NFA (code, operands and classes of each instruction) or the fallback pattern is set
+    private final int[] code;
+    private final int[] x;
+    private final int[] y;
+    private final CharClass[] classes;
+    private final Pattern fallback;
+
+    private LinearRegex(String regex, Program program, Pattern fallback) {
+        this.regex = regex;
+        this.fallback = fallback;
+
+        if (program == null) {
+            code = x = y = null;
+            classes = null;
+            return;
+        }
+
+        code = program.code.stream().mapToInt(Integer::intValue).toArray();
+        x = program.x.stream().mapToInt(Integer::intValue).toArray();
+        y = program.y.stream().mapToInt(Integer::intValue).toArray();
+        classes = program.classes.toArray(new CharClass[0]);
+    }
+
+    /**
+     * Compile the regex, with the linear-time engine if it supports all of its constructs (and {@link Config#LINEAR_ROUTE_REGEX} is on),
+     * with {@link Pattern} otherwise
+     *
+     * @param regex the regex
+     * @return the compiled regex
+     * @throws PatternSyntaxException if the regex is invalid
+     */
+    public static LinearRegex compile(String regex) throws PatternSyntaxException {
+        if (Config.LINEAR_ROUTE_REGEX) {
+            try {
+                Parser parser = new Parser(regex);
+                Node tree = parser.parse();
+                Program program = new Program();
+
+                tree.emit(program);
+                program.add(MATCH, 0, 0, null);
+
+                return new LinearRegex(regex, program, null);
+            } catch (UnsupportedRegexException e) {
+                //Unsupported construct (or invalid regex, which Pattern reports properly)
+            }
+        }
+
+        return new LinearRegex(regex, null, Pattern.compile(regex));
+    }
+
+    /**
+     * @return the regex this was compiled from
+     */
+    public String pattern() {
+        return regex;
+    }
+
+    /**
+     * @return {@code true} if the regex is searched in linear time, {@code false} if it fell back to {@link Pattern}
+     */
+    public boolean isLinear() {
+        return fallback == null;
+    }
+
+    /**
+     * Same as {@link java.util.regex.Matcher#find()} for the whole input
+     *
+     * @param input the input
+     * @return {@code true} if the regex matches anywhere in the input
+     */
+    public boolean find(CharSequence input) {
+        return find(input, 0, input.length());
+    }
+
+    /**
+     * Same as {@link java.util.regex.Matcher#find()} on the region between {@code start} and {@code end} of the input, with anchoring
+     * bounds ("^" and "$" match at the bounds of the region)
+     *
+     * @param input the input
+     * @param start the start of the region (inclusive)
+     * @param end the end of the region (exclusive)
+     * @return {@code true} if the regex matches anywhere in the region
+     */
+    public boolean find(CharSequence input, int start, int end) {
+        if (fallback != null)
+            return fallback.matcher(input).region(start, end).find();
+
+        //The states reached before and after the current code point. Each state is added once per step at most, and pushes 2 states at most
+        int[] current = new int[code.length];
+        int[] next = new int[code.length];
+        int[] stack = new int[code.length * 2 + 1];
+        boolean[] onList = new boolean[code.length];
+        int currentSize = 0;
+
+        for (int i = start; ; ) {
+            //Unanchored search: a new thread starts at every position
+            int added = addState(0, current, currentSize, stack, onList, input, i, start, end);
+
+            if (added < 0)
+                return true;
+
+            currentSize = added;
+
+            if (i >= end)
+                return false;
+
+            //A surrogate pair cut by the end of the region is read as a lone surrogate
+            int codePoint = i + 1 < end ? Character.codePointAt(input, i) : input.charAt(i);
+            int nextSize = 0;
+
+            Arrays.fill(onList, false);
+
+            for (int t = 0; t < currentSize; t++) {
+                int pc = current[t];
+
+                if (code[pc] == CHAR && classes[pc].contains(codePoint)) {
+                    nextSize = addState(pc + 1, next, nextSize, stack, onList, input, i + Character.charCount(codePoint), start, end);
+
+                    if (nextSize < 0)
+                        return true;
+                }
+            }
+
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    /**
+     * Add the state, and every state reachable from it without consuming a code point, to the list
+     *
+     * @return the new size of the list, or -1 if the match state was reached
+     */
+    private int addState(int pc, int[] list, int size, int[] stack, boolean[] onList, CharSequence input, int position, int start, int end) {
+        int top = 0;
+        stack[top++] = pc;
+
+        while (top > 0) {
+            int state = stack[--top];
+
+            if (onList[state])
+                continue;
+
+            onList[state] = true;
+
+            switch (code[state]) {
+                case MATCH -> {
+                    return -1;
+                }
+                case CHAR -> list[size++] = state;
+                case JUMP -> stack[top++] = x[state];
+                case SPLIT -> {
+                    //The preferred branch is explored first, which doesn't matter for a search but keeps the order deterministic
+                    stack[top++] = y[state];
+                    stack[top++] = x[state];
+                }
+                case BEGIN -> {
+                    if (position == start)
+                        stack[top++] = state + 1;
+                }
+                case END -> {
+                    if (isEnd(input, position, end))
+                        stack[top++] = state + 1;
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * "$" matches at the end, and before a line terminator ending the input (as {@link Pattern} does without the MULTILINE flag)
+     */
+    private static boolean isEnd(CharSequence input, int position, int end) {
+        if (position == end)
+            return true;
+
+        if (position == end - 2)
+            return input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+
+        if (position == end - 1) {
+            char c = input.charAt(position);
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+
+        return false;
+    }
+
+    private static final class UnsupportedRegexException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedRegexException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The instructions, appended while the syntax tree is emitted
+     */
+    private static final class Program {
+        private final List<Integer> code = new ArrayList<>();
+        private final List<Integer> x = new ArrayList<>();
+        private final List<Integer> y = new ArrayList<>();
+        private final List<CharClass> classes = new ArrayList<>();
+
+        private int add(int op, int x, int y, CharClass charClass) throws UnsupportedRegexException {
+            if (code.size() == MAX_PROGRAM_SIZE)
+                throw new UnsupportedRegexException();
+
+            code.add(op);
+            this.x.add(x);
+            this.y.add(y);
+            classes.add(charClass);
+
+            return code.size() - 1;
+        }
+
+        private int size() {
+            return code.size();
+        }
+
+        private void patch(int pc, int x, int y) {
+            this.x.set(pc, x);
+            this.y.set(pc, y);
+        }
+    }
+
+    /**
+     * Set of code points, as sorted and disjoint ranges (inclusive)
+     */
+    private static final class CharClass {
+        //"." doesn't match line terminators
+        private static final CharClass ANY = new CharClass(new int[]{'\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'}).negate();
+        private static final CharClass DIGIT = new CharClass(new int[]{'0', '9'});
+        private static final CharClass WORD = new CharClass(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+        private static final CharClass SPACE = new CharClass(new int[]{'\t', '\r', ' ', ' '});
+
+        private final int[] ranges;
+
+        private CharClass(int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        private static CharClass of(int codePoint) {
+            return new CharClass(new int[]{codePoint, codePoint});
+        }
+
+        private boolean contains(int codePoint) {
+            for (int i = 0; i < ranges.length && ranges[i] <= codePoint; i += 2) {
+                if (codePoint <= ranges[i + 1])
+                    return true;
+            }
+
+            return false;
+        }
+
+        private CharClass negate() {
+            List<Integer> negated = new ArrayList<>();
+            int from = 0;
+
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > from) {
+                    negated.add(from);
+                    negated.add(ranges[i] - 1);
+                }
+
+                from = ranges[i + 1] + 1;
+            }
+
+            if (from <= Character.MAX_CODE_POINT) {
+                negated.add(from);
+                negated.add(Character.MAX_CODE_POINT);
+            }
+
+            return new CharClass(negated.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        /**
+         * @param ranges ranges in any order, possibly overlapping
+         */
+        private static CharClass union(List<int[]> ranges) {
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+            List<Integer> merged = new ArrayList<>();
+
+            for (int[] range : ranges) {
+                int last = merged.size() - 1;
+
+                if (last > 0 && range[0] <= merged.get(last) + 1)
+                    merged.set(last, Math.max(merged.get(last), range[1]));
+                else {
+                    merged.add(range[0]);
+                    merged.add(range[1]);
+                }
+            }
+
+            return new CharClass(merged.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private void addTo(List<int[]> ranges) {
+            for (int i = 0; i < this.ranges.length; i += 2)
+                ranges.add(new int[]{this.ranges[i], this.ranges[i + 1]});
+        }
+    }
+
+    /**
+     * Syntax tree of the regex
+     */
+    private interface Node {
+        void emit(Program program) throws UnsupportedRegexException;
+    }
+
+    private record Match(CharClass charClass) implements Node {
+        @Override
+        public void emit(Program program) throws UnsupportedRegexException {
+            program.add(CHAR, 0, 0, charClass);
+        }
+    }
+
+    private record Assertion(int op) implements Node {
+        @Override
+        public void emit(Program program) throws UnsupportedRegexException {
+            program.add(op, 0, 0, null);
+        }
+    }
+
+    private record Concat(List<Node> nodes) implements Node {
+        @Override
+        public void emit(Program program) throws UnsupportedRegexException {
+            for (Node node : nodes)
+                node.emit(program);
+        }
+    }
+
+    private record Alternation(List<Node> branches) implements Node {
+        @Override
+        public void emit(Program program) throws UnsupportedRegexException {
+            List<Integer> jumps = new ArrayList<>();
+
+            for (int i = 0; i < branches.size() - 1; i++) {
+                int split = program.add(SPLIT, 0, 0, null);
+
+                branches.get(i).emit(program);
+                jumps.add(program.add(JUMP, 0, 0, null));
+                program.patch(split, split + 1, program.size());
+            }
+
+            branches.get(branches.size() - 1).emit(program);
+
+            for (int jump : jumps)
+                program.patch(jump, program.size(), 0);
+        }
+    }
+
+    /**
+     * The node repeated between {@code min} and {@code max} times, {@code max} is -1 if unbounded
+     */
+    private record Repetition(Node node, int min, int max) implements Node {
+        @Override
+        public void emit(Program program) throws UnsupportedRegexException {
+            for (int i = 0; i < min; i++)
+                node.emit(program);
+
+            if (max == -1) {
+                //Loop: split into the node (then back to the split) or past it
+                int split = program.add(SPLIT, 0, 0, null);
+
+                node.emit(program);
+                program.add(JUMP, split, 0, null);
+                program.patch(split, split + 1, program.size());
+                return;
+            }
+
+            //Optional copies, each one skipping past all the remaining ones
+            List<Integer> splits = new ArrayList<>();
+
+            for (int i = min; i < max; i++) {
+                splits.add(program.add(SPLIT, 0, 0, null));
+                node.emit(program);
+            }
+
+            for (int split : splits)
+                program.patch(split, split + 1, program.size());
+        }
+    }
+
+    /**
+     * Recursive descent parser of the supported subset, anything else is reported as unsupported
+     */
+    private static final class Parser {
+        private final String regex;
+        private int pos;
+
+        private Parser(String regex) {
+            this.regex = regex;
+        }
+
+        private Node parse() throws UnsupportedRegexException {
+            Node node = parseAlternation();
+
+            if (pos != regex.length())
+                throw new UnsupportedRegexException();
+
+            return node;
+        }
+
+        private Node parseAlternation() throws UnsupportedRegexException {
+            List<Node> branches = new ArrayList<>();
+            branches.add(parseConcat());
+
+            while (pos < regex.length() && regex.charAt(pos) == '|') {
+                pos++;
+                branches.add(parseConcat());
+            }
+
+            return branches.size() == 1 ? branches.get(0) : new Alternation(branches);
+        }
+
+        private Node parseConcat() throws UnsupportedRegexException {
+            List<Node> nodes = new ArrayList<>();
+
+            while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')')
+                nodes.add(parseRepetition());
+
+            return new Concat(nodes);
+        }
+
+        private Node parseRepetition() throws UnsupportedRegexException {
+            Node atom = parseAtom();
+
+            if (pos == regex.length())
+                return atom;
+
+            int min;
+            int max;
+
+            switch (regex.charAt(pos)) {
+                case '*' -> { min = 0; max = -1; pos++; }
+                case '+' -> { min = 1; max = -1; pos++; }
+                case '?' -> { min = 0; max = 1; pos++; }
+                case '{' -> {
+                    pos++;
+                    min = parseNumber();
+                    max = min;
+
+                    if (pos < regex.length() && regex.charAt(pos) == ',') {
+                        pos++;
+                        max = pos < regex.length() && regex.charAt(pos) == '}' ? -1 : parseNumber();
+                    }
+
+                    if (pos == regex.length() || regex.charAt(pos) != '}' || max != -1 && max < min)
+                        throw new UnsupportedRegexException();
+
+                    pos++;
+                }
+                default -> {
+                    return atom;
+                }
+            }
+
+            //Lazy repetitions match the same inputs, possessive ones don't
+            if (pos < regex.length() && regex.charAt(pos) == '?')
+                pos++;
+
+            if (pos < regex.length() && "*+?{".indexOf(regex.charAt(pos)) != -1)
+                throw new UnsupportedRegexException();
+
+            if (atom instanceof Assertion)
+                throw new UnsupportedRegexException();
+
+            return new Repetition(atom, min, max);
+        }
+
+        private int parseNumber() throws UnsupportedRegexException {
+            int begin = pos;
+
+            while (pos < regex.length() && pos - begin < 4 && Character.isDigit(regex.charAt(pos)))
+                pos++;
+
+            if (pos == begin || pos < regex.length() && Character.isDigit(regex.charAt(pos)))
+                throw new UnsupportedRegexException();
+
+            return Integer.parseInt(regex, begin, pos, 10);
+        }
+
+        private Node parseAtom() throws UnsupportedRegexException {
+            int c = regex.codePointAt(pos);
+
+            switch (c) {
+                case '(' -> {
+                    pos++;
+
+                    if (regex.startsWith("?:", pos))
+                        pos += 2;
+                    else if (pos < regex.length() && regex.charAt(pos) == '?')
+                        throw new UnsupportedRegexException();
+
+                    Node group = parseAlternation();
+
+                    if (pos == regex.length() || regex.charAt(pos) != ')')
+                        throw new UnsupportedRegexException();
+
+                    pos++;
+                    return group;
+                }
+                case '[' -> {
+                    pos++;
+                    return new Match(parseClass());
+                }
+                case '.' -> {
+                    pos++;
+                    return new Match(CharClass.ANY);
+                }
+                case '^' -> {
+                    pos++;
+                    return new Assertion(BEGIN);
+                }
+                case '$' -> {
+                    pos++;
+                    return new Assertion(END);
+                }
+                case '\\' -> {
+                    pos++;
+                    return new Match(parseEscape());
+                }
+                case '*', '+', '?', '{', '}', ']', ')' -> throw new UnsupportedRegexException();
+                default -> {
+                    pos += Character.charCount(c);
+                    return new Match(CharClass.of(c));
+                }
+            }
+        }
+
+        /**
+         * Parse the escape sequence after the backslash
+         */
+        private CharClass parseEscape() throws UnsupportedRegexException {
+            if (pos == regex.length())
+                throw new UnsupportedRegexException();
+
+            int c = regex.codePointAt(pos);
+            pos += Character.charCount(c);
+
+            return switch (c) {
+                case 'd' -> CharClass.DIGIT;
+                case 'D' -> CharClass.DIGIT.negate();
+                case 'w' -> CharClass.WORD;
+                case 'W' -> CharClass.WORD.negate();
+                case 's' -> CharClass.SPACE;
+                case 'S' -> CharClass.SPACE.negate();
+                case 't' -> CharClass.of('\t');
+                case 'n' -> CharClass.of('\n');
+                case 'r' -> CharClass.of('\r');
+                case 'f' -> CharClass.of('\f');
+                case 'a' -> CharClass.of('\u0007');
+                case 'e' -> CharClass.of('\u001B');
+                default -> {
+                    //Other letters and digits are classes, references or assertions which aren't supported
+                    if (Character.isLetterOrDigit(c))
+                        throw new UnsupportedRegexException();
+
+                    yield CharClass.of(c);
+                }
+            };
+        }
+
+        /**
+         * Parse the class after the opening bracket, up to (and including) the closing bracket
+         */
+        private CharClass parseClass() throws UnsupportedRegexException {
+            List<int[]> ranges = new ArrayList<>();
+            boolean negated = pos < regex.length() && regex.charAt(pos) == '^';
+
+            if (negated)
+                pos++;
+
+            boolean first = true;
+
+            while (true) {
+                if (pos == regex.length())
+                    throw new UnsupportedRegexException();
+
+                int c = regex.codePointAt(pos);
+
+                if (c == ']') {
+                    //An empty class is left to Pattern
+                    if (first)
+                        throw new UnsupportedRegexException();
+
+                    break;
+                }
+
+                //Nested classes and intersections
+                if (c == '[' || regex.startsWith("&&", pos))
+                    throw new UnsupportedRegexException();
+
+                first = false;
+
+                CharClass member = parseClassMember();
+
+                if (member != null) {
+                    member.addTo(ranges);
+                    continue;
+                }
+
+                int from = c == '\\' ? parseClassEscapeLiteral() : nextCodePoint();
+
+                if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                    pos++;
+
+                    int to = regex.charAt(pos) == '\\' ? parseClassEscapeLiteral() : nextCodePoint();
+
+                    if (to < from || to == '[')
+                        throw new UnsupportedRegexException();
+
+                    ranges.add(new int[]{from, to});
+                } else {
+                    ranges.add(new int[]{from, from});
+                }
+            }
+
+            pos++;
+
+            CharClass charClass = CharClass.union(ranges);
+            return negated ? charClass.negate() : charClass;
+        }
+
+        /**
+         * @return the class of a "\d"-like escape at the current position (consumed), {@code null} if there's none
+         */
+        private CharClass parseClassMember() throws UnsupportedRegexException {
+            if (regex.charAt(pos) != '\\' || pos + 1 == regex.length() || "dDwWsS".indexOf(regex.charAt(pos + 1)) == -1)
+                return null;
+
+            pos++;
+            return parseEscape();
+        }
+
+        private int parseClassEscapeLiteral() throws UnsupportedRegexException {
+            pos++;
+
+            CharClass escaped = parseEscape();
+
+            if (escaped.ranges.length != 2 || escaped.ranges[0] != escaped.ranges[1])
+                throw new UnsupportedRegexException();
+
+            return escaped.ranges[0];
+        }
+
+        private int nextCodePoint() {
+            int c = regex.codePointAt(pos);
+            pos += Character.charCount(c);
+            return c;
+        }
+    }
+}
@@ -19,18 +19,20 @@ public class StreamTransfer {
     public static void transfer(InputStream in, OutputStream out, long len) throws IOException {
         if (len == 0 || out == null && len < 0 && in.read() < 0)
             return; // small optimization - avoid buffer creation
-        byte[] buf = new byte[4096];
-        while (len != 0) {
-            int count = len < 0 || buf.length < len ? buf.length : (int) len;
-            count = in.read(buf, 0, count);
-            if (count < 0) {
-                if (len > 0)
-                    throw new IOException("unexpected end of stream");
-                break;
+        try (BufferPool.PooledBuffer pooled = BufferPool.heap().acquire(4096)) {
+            byte[] buf = pooled.array();
+            while (len != 0) {
+                int count = len < 0 || buf.length < len ? buf.length : (int) len;
+                count = in.read(buf, 0, count);
+                if (count < 0) {
+                    if (len > 0)
+                        throw new IOException("unexpected end of stream");
+                    break;
+                }
+                if (out != null)
+                    out.write(buf, 0, count);
+                len -= len > 0 ? count : 0;
             }
-            if (out != null)
-                out.write(buf, 0, count);
-            len -= len > 0 ? count : 0;
         }
     }
 }
@@ -0,0 +1,37 @@
+package com.github.magic.core.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Pools keeping per-thread caches skip them on virtual threads: those are created per task, their cache would hardly ever be reused
+ */
+public final class VirtualThreads {
+    //Thread.isVirtual() only exists from Java 21, it's looked up reflectively so that the project still compiles against Java 17
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private VirtualThreads() {}
+
+    /**
+     * @return {@code true} if the current thread is a virtual thread
+     */
+    public static boolean isCurrent() {
+        if (IS_VIRTUAL == null)
+            return false;
+
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
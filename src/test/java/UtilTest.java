@@ -15,7 +15,7 @@ public class UtilTest extends HttpTest {
     @Test
     public void test_get_response() {
         try{
-            HttpURLConnection validConnection = TestUtils.getResponse(new URL("http://localhost:3000"), HttpMethod.GET);
+            HttpURLConnection validConnection = TestUtils.getResponse(new URL(BASE_URL), HttpMethod.GET);
             HttpURLConnection nullURL = TestUtils.getResponse(null, HttpMethod.GET);
 
             assertNotNull("This connection should be valid", validConnection);
@@ -0,0 +1,78 @@
+package core.cache;
+
+import com.github.magic.core.cache.CompressedFileCache;
+import com.github.magic.core.encoder.Encoder;
+import com.github.magic.core.encoder.EncoderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class CompressedFileCacheTest {
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("compressed-cache").toFile();
+        file = new File(directory, "app.js");
+        Files.writeString(file.toPath(), "console.log('magic');\n".repeat(1000));
+        CompressedFileCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : directory.listFiles())
+            child.delete();
+
+        directory.delete();
+    }
+
+    @Test
+    public void test_sidecarMustBeFresh() throws IOException {
+        assertNull(CompressedFileCache.sidecar(file, "gzip"));
+
+        File sidecar = new File(directory, "app.js.gz");
+        Files.write(sidecar.toPath(), new byte[]{1});
+
+        assertTrue(sidecar.setLastModified(file.lastModified() + 1000));
+        assertEquals(sidecar, CompressedFileCache.sidecar(file, "gzip"));
+        assertNull("Deflate has its own sidecar", CompressedFileCache.sidecar(file, "deflate"));
+
+        assertTrue(sidecar.setLastModified(file.lastModified() - 1000));
+        assertNull("Stale sidecar shouldn't be served", CompressedFileCache.sidecar(file, "gzip"));
+    }
+
+    @Test
+    public void test_compressedOnce() throws IOException {
+        Encoder encoder = EncoderFactory.getEncoder("gzip");
+        byte[] first = CompressedFileCache.compressed(file, encoder);
+
+        assertSame("Second request should be served from the cache", first, CompressedFileCache.compressed(file, encoder));
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(first))) {
+            assertArrayEquals(Files.readAllBytes(file.toPath()), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void test_modifiedFileCompressedAgain() throws IOException {
+        Encoder encoder = EncoderFactory.getEncoder("deflate");
+        byte[] first = CompressedFileCache.compressed(file, encoder);
+
+        Files.writeString(file.toPath(), "changed", StandardCharsets.US_ASCII);
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+
+        assertNotSame(first, CompressedFileCache.compressed(file, encoder));
+        assertNotSame("Each encoding has its own entry", first, CompressedFileCache.compressed(file, EncoderFactory.getEncoder("gzip")));
+    }
+}
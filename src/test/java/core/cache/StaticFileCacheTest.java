@@ -0,0 +1,125 @@
+package core.cache;
+
+import com.github.magic.core.cache.CachedFile;
+import com.github.magic.core.cache.StaticFileCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class StaticFileCacheTest {
+    private Path directory;
+    private StaticFileCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("static-cache");
+        Files.writeString(directory.resolve("a.txt"), "a".repeat(100));
+        Files.writeString(directory.resolve("b.txt"), "b".repeat(100));
+        Files.writeString(directory.resolve("large.txt"), "c".repeat(1000));
+        Files.writeString(directory.resolve(".hidden"), "secret");
+
+        cache = new StaticFileCache(directory, 150, 500, 1500);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+
+        for (File child : directory.toFile().listFiles())
+            child.delete();
+
+        directory.toFile().delete();
+    }
+
+    @Test
+    public void test_cachedFile() {
+        CachedFile cached = cache.get("/a.txt");
+
+        assertNotNull(cached);
+        assertSame("Second request should be a hit", cached, cache.get("a.txt"));
+        assertEquals(100, cached.length());
+        assertTrue(cached.etag(null).startsWith("\"64-"));
+        assertNotEquals(cached.etag(null), cached.etag("gzip"));
+    }
+
+    @Test
+    public void test_notCached() {
+        assertNull("Hidden", cache.get("/.hidden"));
+        assertNull("Missing", cache.get("/missing.txt"));
+        assertNull("Outside of the root", cache.get("/../a.txt"));
+    }
+
+    @Test
+    public void test_siblingDirectoryNotCached() throws IOException {
+        //Shares the root's name as a prefix, without being under it
+        Path sibling = Files.createDirectory(directory.resolveSibling(directory.getFileName() + "-private"));
+        Path secret = Files.writeString(sibling.resolve("secret.txt"), "secret");
+
+        try {
+            assertNull(cache.get("/../" + sibling.getFileName() + "/secret.txt"));
+        } finally {
+            Files.delete(secret);
+            Files.delete(sibling);
+        }
+    }
+
+    @Test
+    public void test_largeFileMapped() throws IOException {
+        Files.writeString(directory.resolve("huge.txt"), "d".repeat(2000));
+        assertNull("Too large to be mapped", cache.get("/huge.txt"));
+
+        CachedFile large = cache.get("/large.txt");
+
+        assertTrue(large.isMapped());
+        assertEquals(0, cache.size());
+        assertEquals(1000, cache.mappedSize());
+
+        ByteBuffer slice = large.slice(10, 5);
+        byte[] bytes = new byte[slice.remaining()];
+        slice.get(bytes);
+
+        assertEquals("ccccc", new String(bytes, StandardCharsets.US_ASCII));
+
+        //Still usable until released, even once dropped from the cache
+        cache.clear();
+        assertEquals(0, cache.mappedSize());
+        assertEquals('c', large.slice(999, 1).get());
+
+        large.release();
+    }
+
+    @Test
+    public void test_leastRecentlyUsedEvicted() {
+        CachedFile a = cache.get("/a.txt");
+        CachedFile b = cache.get("/b.txt");
+
+        assertNotNull(b);
+        assertEquals(100, cache.size());
+        assertNotSame("a.txt should have been evicted to make room for b.txt", a, cache.get("/a.txt"));
+    }
+
+    @Test
+    public void test_modifiedFileInvalidated() throws IOException, InterruptedException {
+        CachedFile first = cache.get("/a.txt");
+
+        Files.writeString(directory.resolve("a.txt"), "changed");
+
+        //Invalidation is asynchronous, wait for the watcher to pick the change up
+        for (int i = 0; i < 100 && cache.get("/a.txt") == first; i++)
+            Thread.sleep(50);
+
+        CachedFile second = cache.get("/a.txt");
+
+        assertNotSame(first, second);
+        assertEquals(7, second.length());
+    }
+}
@@ -0,0 +1,81 @@
+package core.encoder;
+
+import com.github.magic.core.encoder.Encoder;
+import com.github.magic.core.encoder.EncoderFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class EncoderTest {
+    private static final byte[] CONTENT = "MagicWebServer compresses this line. ".repeat(5000).getBytes(StandardCharsets.US_ASCII);
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void test_gzipRoundTrip() throws IOException {
+        byte[] encoded = EncoderFactory.getEncoder("gzip").encode(CONTENT, CONTENT.length);
+
+        assertTrue(encoded.length < CONTENT.length);
+        assertArrayEquals(CONTENT, gunzip(encoded));
+    }
+
+    @Test
+    public void test_deflateRoundTrip() throws IOException {
+        byte[] encoded = EncoderFactory.getEncoder("deflate").encode(CONTENT, 100);
+
+        assertEquals("Only the given length should be encoded", new String(CONTENT, 0, 100, StandardCharsets.US_ASCII), new String(inflate(encoded), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void test_reusedDeflaterStartsOver() throws IOException {
+        Encoder encoder = EncoderFactory.getEncoder("gzip");
+
+        //The second stream gets the deflater released by the first one
+        byte[] first = encoder.encode(CONTENT, CONTENT.length);
+        byte[] second = encoder.encode(CONTENT, CONTENT.length);
+
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void test_streamedWrites() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (OutputStream encoded = EncoderFactory.getEncoder("gzip").wrap(out)) {
+            for (int i = 0; i < CONTENT.length; i += 1000)
+                encoded.write(CONTENT, i, Math.min(1000, CONTENT.length - i));
+
+            encoded.write('!');
+        }
+
+        byte[] decoded = gunzip(out.toByteArray());
+
+        assertEquals(CONTENT.length + 1, decoded.length);
+        assertEquals('!', decoded[CONTENT.length]);
+    }
+
+    @Test
+    public void test_emptyContent() throws IOException {
+        assertEquals(0, gunzip(EncoderFactory.getEncoder("gzip").encode(new byte[0], 0)).length);
+        assertEquals(0, inflate(EncoderFactory.getEncoder("deflate").encode(new byte[0], 0)).length);
+    }
+}
@@ -0,0 +1,55 @@
+package core.models;
+
+import com.github.magic.core.models.ChunkedOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChunkedOutputStreamTest {
+
+    @Test
+    public void test_writeHonorsOffsetAndLength() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+
+        chunked.write("xxhello worldxx".getBytes(StandardCharsets.US_ASCII), 2, 11);
+
+        assertEquals("b\r\nhello world\r\n", out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void test_emptyWriteIsSkipped() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+
+        chunked.write(new byte[8], 0, 0);
+
+        assertEquals("", out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void test_singleByteWriteIsFramed() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+
+        chunked.write('a');
+
+        assertEquals("1\r\na\r\n", out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void test_terminateChunk() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+
+        chunked.write("Mozilla".getBytes(StandardCharsets.US_ASCII));
+        chunked.writeTerminateChunk();
+        chunked.writeTerminateChunk();
+
+        assertEquals("7\r\nMozilla\r\n0\r\n\r\n", out.toString(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,115 @@
+package core.models;
+
+import com.github.magic.core.consts.HttpDes;
+import com.github.magic.core.models.RequestParser;
+import com.github.magic.core.models.header.Header;
+import com.github.magic.core.models.header.Headers;
+import com.github.magic.core.models.header.KnownHeaders;
+import com.github.magic.core.models.header.PreEncodedHeader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HeadersTest {
+
+    @Test
+    public void test_knownHeaderSlots() {
+        assertEquals(KnownHeaders.ACCEPT_ENCODING, KnownHeaders.slotOf("accept-ENCODING"));
+        assertEquals(-1, KnownHeaders.slotOf("X-Custom"));
+
+        byte[] raw = "xxContent-Lengthxx".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(KnownHeaders.CONTENT_LENGTH, KnownHeaders.slotOf(raw, 2, 16));
+    }
+
+    @Test
+    public void test_findIsCaseInsensitive() {
+        Headers headers = new Headers();
+        headers.add(new Header("connection", "close"));
+        headers.add(new Header("X-Custom", "value"));
+
+        assertEquals("close", headers.find("Connection"));
+        assertEquals("close", headers.find(KnownHeaders.CONNECTION));
+        assertEquals("value", headers.find("x-custom"));
+        assertEquals("", headers.find(KnownHeaders.RANGE));
+    }
+
+    @Test
+    public void test_firstHeaderWins() {
+        Headers headers = new Headers();
+        headers.add(new Header("Vary", "Origin"));
+        headers.add(new Header("Vary", "Accept-Encoding"));
+
+        assertEquals("Origin", headers.find(KnownHeaders.VARY));
+
+        headers.removeIf(header -> header.getValue().equals("Origin"));
+        assertEquals("Accept-Encoding", headers.find(KnownHeaders.VARY));
+
+        headers.remove("Vary");
+        assertEquals("", headers.find(KnownHeaders.VARY));
+    }
+
+    @Test
+    public void test_parsedHeadersDecodedLazily() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = new ByteArrayInputStream("GET / HTTP/1.1\r\nHost: a\r\nAccept: */*\r\n\r\nGET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        while (!parser.parseHead())
+            parser.fill(in);
+
+        Headers headers = new Headers();
+
+        for (int i = 0; i < parser.headerCount(); i++)
+            headers.add(parser.header(i));
+
+        assertEquals("a", headers.find(KnownHeaders.HOST));
+        parser.readBody(in);
+
+        //Next request discards the buffered bytes of the previous one
+        assertTrue(parser.parseHead());
+        assertEquals("Decoded values should be kept", "a", headers.find(KnownHeaders.HOST));
+
+        try {
+            headers.find(KnownHeaders.ACCEPT);
+            fail("Undecoded values shouldn't be readable after the exchange");
+        } catch (IllegalStateException ignored) {}
+    }
+
+    @Test
+    public void test_putOverwritesExistingHeader() {
+        Headers headers = new Headers();
+        headers.add(new PreEncodedHeader("Connection", "keep-alive"));
+        headers.add(new Header("x-custom", "a"));
+
+        headers.put("connection", "close");
+        headers.put("X-Custom", "b");
+        headers.putIfAbsent(KnownHeaders.CONNECTION, "keep-alive");
+
+        assertEquals(2, headers.getHeaders().size());
+        assertEquals("close", headers.find(KnownHeaders.CONNECTION));
+        assertEquals("b", headers.find("x-custom"));
+    }
+
+    @Test
+    public void test_writeHeaderBlock() throws IOException {
+        Headers headers = new Headers();
+        headers.add(new PreEncodedHeader("Server", "MagicWebServer/1.2"));
+        headers.put(KnownHeaders.CONTENT_LENGTH, "4");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        headers.write(out, HttpDes.statusLine("1.1", 200));
+
+        assertEquals("HTTP/1.1 200 OK\r\nServer: MagicWebServer/1.2\r\nContent-Length: 4\r\n\r\n", out.toString(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void test_statusLines() {
+        assertEquals("HTTP/1.0 404 Not Found\r\n", new String(HttpDes.statusLine("1.0", 404), StandardCharsets.US_ASCII));
+        assertEquals("HTTP/2.0 505 HTTP Version Not Supported\r\n", new String(HttpDes.statusLine("2.0", 505), StandardCharsets.US_ASCII));
+    }
+}
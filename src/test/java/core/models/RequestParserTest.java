@@ -0,0 +1,322 @@
+package core.models;
+
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.models.MalformedBodyException;
+import com.github.magic.core.models.RequestParser;
+import com.github.magic.core.utils.BufferPool;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class RequestParserTest {
+
+    private static InputStream stream(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void parse(RequestParser parser, InputStream in) throws IOException {
+        while (!parser.parseHead())
+            assertTrue("Stream shouldn't end before the head", parser.fill(in) >= 0);
+    }
+
+    @Test
+    public void test_requestLineAndHeaders() throws IOException {
+        RequestParser parser = new RequestParser();
+
+        parse(parser, stream("GET /path?a=b HTTP/1.1\r\nHost: localhost\r\nX-Empty:\r\nAccept:  text/html \t\r\n\r\n"));
+
+        assertEquals(HttpMethod.GET, parser.method());
+        assertEquals("/path?a=b", parser.target());
+        assertEquals("1.1", parser.version());
+        assertEquals(3, parser.headerCount());
+        assertEquals("Host", parser.headerName(0));
+        assertEquals("localhost", parser.headerValue(0));
+        assertEquals("", parser.headerValue(1));
+        assertEquals("text/html", parser.headerValue(2));
+    }
+
+    @Test
+    public void test_headSplitAcrossReads() throws IOException {
+        RequestParser parser = new RequestParser();
+        byte[] head = "POST /upload HTTP/1.0\r\nContent-Length: 5\r\n\r\nhello".getBytes(StandardCharsets.US_ASCII);
+
+        //Feed the request one byte at a time
+        InputStream in = new ByteArrayInputStream(head) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        parse(parser, in);
+
+        assertEquals(HttpMethod.POST, parser.method());
+        assertEquals("1.0", parser.version());
+        assertEquals(5, parser.contentLength());
+        assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), parser.readBody(in));
+    }
+
+    @Test
+    public void test_pipelinedRequestsKeptInBuffer() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\ncontent-length: 3\r\n\r\nabc"
+                              + "\r\nGET /b HTTP/1.1\r\n\r\n");
+
+        parse(parser, in);
+        assertEquals("/a", parser.target());
+        assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII), parser.readBody(in));
+
+        //Stray line ending after the body should be ignored
+        assertTrue("Second request should already be buffered", parser.parseHead());
+        assertEquals("/b", parser.target());
+        assertEquals(0, parser.readBody(in).length);
+    }
+
+    @Test
+    public void test_chunkedBody() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\n"
+                              + "5;name=value\r\nhello\r\n6\r\n world\r\n0\r\nX-Trailer: a\r\n\r\n"
+                              + "GET /b HTTP/1.1\r\n\r\n");
+
+        parse(parser, in);
+        assertArrayEquals("hello world".getBytes(StandardCharsets.US_ASCII), parser.readBody(in));
+
+        assertTrue("Second request should already be buffered", parser.parseHead());
+        assertEquals("/b", parser.target());
+    }
+
+    @Test
+    public void test_bodyLargerThanBuffer() throws IOException {
+        RequestParser parser = new RequestParser();
+        String body = "a".repeat(10000);
+        InputStream in = stream("POST /a HTTP/1.1\r\ncontent-length: 10000\r\n\r\n" + body + "GET /b HTTP/1.1\r\n\r\n");
+
+        parse(parser, in);
+        assertArrayEquals(body.getBytes(StandardCharsets.US_ASCII), parser.openBody(in, 10000).readAllBytes());
+
+        //The rest of the body is read from the stream, never past its end
+        parse(parser, in);
+        assertEquals("/b", parser.target());
+    }
+
+    @Test
+    public void test_bodyLargerThanMaximum() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\na\r\n0123456789\r\n0\r\n\r\n");
+
+        parse(parser, in);
+
+        try {
+            parser.openBody(in, 5).readAllBytes();
+            fail("Body larger than the maximum should be rejected");
+        } catch (IOException e) {
+            assertEquals("Request body too large", e.getMessage());
+        }
+    }
+
+    @Test(expected = MalformedBodyException.class)
+    public void test_malformedChunk() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\nzz\r\nhello\r\n0\r\n\r\n");
+
+        parse(parser, in);
+        parser.readBody(in);
+    }
+
+    private static void assertUnsupportedEncoding(String head) {
+        try {
+            parse(new RequestParser(), stream("POST /a HTTP/1.1\r\n" + head + "\r\n5\r\nhello\r\n0\r\n\r\n"));
+            fail("Transfer-Encoding not ending with chunked should be rejected: " + head);
+        } catch (IOException e) {
+            assertEquals("Unsupported Transfer-Encoding", e.getMessage());
+        }
+    }
+
+    @Test
+    public void test_transferEncodingFinalCoding() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\nTransfer-Encoding: gzip ,  CHUNKED\r\n\r\n5\r\nhello\r\n0\r\n\r\n");
+
+        parse(parser, in);
+
+        assertTrue("Final coding should be compared case-insensitively", parser.isChunked());
+        assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), parser.readBody(in));
+    }
+
+    @Test
+    public void test_transferEncodingNotChunked() {
+        assertUnsupportedEncoding("Transfer-Encoding: xchunked\r\n");
+        assertUnsupportedEncoding("Transfer-Encoding: notchunked\r\n");
+        assertUnsupportedEncoding("Transfer-Encoding: gzip\r\n");
+        assertUnsupportedEncoding("Transfer-Encoding: chunked, gzip\r\n");
+        assertUnsupportedEncoding("Transfer-Encoding: chunked,\r\n");
+        assertUnsupportedEncoding("Transfer-Encoding: gzip\r\nContent-Length: 5\r\n");
+    }
+
+    @Test
+    public void test_repeatedTransferEncoding() throws IOException {
+        //The fields are a single list, ending with identity
+        assertUnsupportedEncoding("Transfer-Encoding: chunked\r\nTransfer-Encoding: identity\r\n");
+
+        RequestParser parser = new RequestParser();
+
+        parse(parser, stream("POST /a HTTP/1.1\r\nTransfer-Encoding: gzip\r\nTransfer-Encoding: chunked\r\n\r\n"));
+        assertTrue("The last field ends with chunked", parser.isChunked());
+    }
+
+    @Test
+    public void test_transferEncodingWithContentLength() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\nContent-Length: 3\r\nTransfer-Encoding: chunked\r\n\r\n"
+                              + "5\r\nhello\r\n0\r\n\r\n");
+
+        parse(parser, in);
+
+        assertTrue("Chunks should frame the body", parser.isChunked());
+        assertTrue("Connection should be closed afterward", parser.hasConflictingLength());
+        assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), parser.readBody(in));
+    }
+
+    private static void assertMalformedChunks(String chunks) throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\n" + chunks);
+
+        parse(parser, in);
+
+        try {
+            parser.readBody(in);
+            fail("Malformed chunks should be rejected: " + chunks);
+        } catch (MalformedBodyException ignored) {
+        }
+    }
+
+    @Test
+    public void test_chunkSizeHexDigitsOnly() throws IOException {
+        assertMalformedChunks("+5\r\nhello\r\n0\r\n\r\n");
+        assertMalformedChunks(" 5\r\nhello\r\n0\r\n\r\n");
+        assertMalformedChunks("0x5\r\nhello\r\n0\r\n\r\n");
+        assertMalformedChunks("5 5\r\nhello\r\n0\r\n\r\n");
+        assertMalformedChunks("1000000000000000\r\nhello\r\n0\r\n\r\n");
+
+        //Whitespace is allowed before the extensions
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\n5 ;name=value\r\nhello\r\n0\r\n\r\n");
+
+        parse(parser, in);
+        assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), parser.readBody(in));
+    }
+
+    @Test
+    public void test_trailerSectionTooLarge() throws IOException {
+        assertMalformedChunks("5\r\nhello\r\n0\r\n" + ("X-Trailer: " + "a".repeat(1000) + "\r\n").repeat(10) + "\r\n");
+    }
+
+    @Test
+    public void test_abandonedBufferNotPooled() throws IOException {
+        RequestParser parser = new RequestParser();
+        InputStream in = stream("POST /a HTTP/1.1\r\ncontent-length: 5\r\n\r\nhello");
+
+        parse(parser, in);
+
+        InputStream body = parser.openBody(in, 5);
+        long discarded = BufferPool.heap().metrics().discarded();
+
+        parser.abandon();
+
+        assertTrue("Buffer shouldn't go back to the pool", BufferPool.heap().metrics().discarded() > discarded);
+
+        try {
+            body.read();
+            fail("Body of an abandoned parser shouldn't be readable");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void test_chunkedBodyBuffered() throws IOException {
+        RequestParser parser = new RequestParser();
+        String head = "POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\n";
+        String[] parts = {"5;name=value\r\nhel", "lo\r", "\n6\r\n world\r\n", "0\r\nX-Trailer: a\r\n", "\r\n"};
+
+        parse(parser, stream(head));
+        assertFalse("No chunk received yet", parser.isBodyBuffered());
+
+        //Bytes arriving a few at a time, the scan resumes where the previous one stopped
+        for (int i = 0; i < parts.length; i++) {
+            parser.fill(stream(parts[i]));
+
+            assertEquals("Body is only buffered once the trailers are", i == parts.length - 1, parser.isBodyBuffered());
+        }
+    }
+
+    @Test
+    public void test_malformedChunkedBodyBuffered() throws IOException {
+        RequestParser parser = new RequestParser();
+
+        parse(parser, stream("POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\nzz\r\n"));
+
+        assertTrue("Malformed body should be handed over to be answered", parser.isBodyBuffered());
+    }
+
+    @Test
+    public void test_chunkFramingReadInBulk() throws IOException {
+        String head = "POST /a HTTP/1.1\r\ntransfer-encoding: chunked\r\n\r\n";
+        String chunks = "1\r\na\r\n".repeat(100) + "0\r\n\r\n";
+        int[] reads = new int[2];
+
+        //Hands the head over on its own, the chunks are only read from the stream afterward
+        InputStream in = new ByteArrayInputStream((head + chunks).getBytes(StandardCharsets.ISO_8859_1)) {
+            @Override
+            public synchronized int read() {
+                reads[0]++;
+                return super.read();
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                reads[1]++;
+                return super.read(b, off, reads[1] == 1 ? head.length() : len);
+            }
+        };
+
+        RequestParser parser = new RequestParser();
+
+        parse(parser, in);
+
+        assertArrayEquals("a".repeat(100).getBytes(StandardCharsets.US_ASCII), parser.readBody(in));
+        assertEquals("Framing shouldn't be read byte by byte", 0, reads[0]);
+        assertTrue("Framing should be read in bulk", reads[1] < 10);
+    }
+
+    @Test
+    public void test_mismatchedProtocol() throws IOException {
+        RequestParser parser = new RequestParser();
+
+        parse(parser, new ByteArrayInputStream(new byte[]{0x16, 0x03, 0x01, 0x02, 0x00}));
+
+        assertTrue(parser.isMismatched());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_malformedHeader() throws IOException {
+        parse(new RequestParser(), stream("GET / HTTP/1.1\r\nNo colon here\r\n\r\n"));
+    }
+
+    @Test
+    public void test_uriTooLong() {
+        RequestParser parser = new RequestParser();
+
+        try {
+            parse(parser, stream("GET /" + "a".repeat(3000)));
+            fail("Long request line should be rejected");
+        } catch (IOException e) {
+            assertEquals("URI too long", e.getMessage());
+        }
+    }
+}
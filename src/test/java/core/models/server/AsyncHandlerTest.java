@@ -0,0 +1,134 @@
+package core.models.server;
+
+import com.github.magic.core.config.ServerConfig;
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.middleware.Middleware;
+import com.github.magic.core.models.routing_tries.URITries;
+import com.github.magic.core.models.server.Server;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import test_utils.StandaloneServer;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncHandlerTest {
+    //Stands for the downstream services the handlers wait on
+    private static final ScheduledExecutorService downstream = Executors.newSingleThreadScheduledExecutor();
+
+    private static final CompletableFuture<Void> neverCompleted = new CompletableFuture<>();
+
+    private static StandaloneServer server;
+
+    @BeforeClass
+    public static void initServer() throws IOException, InterruptedException {
+        ServerConfig config = new ServerConfig();
+        config.setCorePoolSize(2);
+        config.setMaxPoolSize(2);
+        config.setThreadTimeoutDuration(1000);
+
+        Server app = new Server(0, new URITries(), config);
+
+        app.getAsync("/async", (req, res) -> {
+            CompletableFuture<Void> sent = new CompletableFuture<>();
+
+            downstream.schedule(() -> {
+                try {
+                    res.send("async");
+                    sent.complete(null);
+                } catch (Throwable t) {
+                    sent.completeExceptionally(t);
+                }
+            }, 500, TimeUnit.MILLISECONDS);
+
+            return sent;
+        });
+
+        app.getAsync("/async/failed", (req, res) ->
+                CompletableFuture.runAsync(() -> {
+                    throw new IllegalStateException("downstream failed");
+                }, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS)));
+
+        app.getAsync("/async/never", (req, res) -> neverCompleted);
+
+        app.getAsync("/async/middleware", new Middleware[]{(req, res, next) -> {
+            res.setHeader("X-Route", "true");
+            next.next();
+        }}, (req, res) -> CompletableFuture.runAsync(() -> res.send("async"), downstream));
+
+        server = StandaloneServer.start(app);
+    }
+
+    @Test(timeout = 10000)
+    public void request_more_than_the_pool() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            long start = System.currentTimeMillis();
+
+            for (int i = 0; i < 16; i++) {
+                responses.add(executor.submit(() -> {
+                    HttpURLConnection connection = TestUtils.getResponse(new URL(server.url("async")), HttpMethod.GET);
+
+                    Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+                    return TestUtils.readResponseBody(connection.getContent());
+                }));
+            }
+
+            for (Future<String> response : responses)
+                Assert.assertEquals("async", response.get());
+
+            //2 pinned workers would take 4 seconds
+            Assert.assertTrue("Workers should be freed while the handlers wait", System.currentTimeMillis() - start < 2500);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_failed_stage() throws Exception {
+        HttpURLConnection connection = TestUtils.getResponse(new URL(server.url("async/failed")), HttpMethod.GET);
+
+        Assert.assertEquals("Status code should be 500", HttpCode.INTERNAL_SERVER_ERROR, connection.getResponseCode());
+    }
+
+    @Test(timeout = 5000)
+    public void request_with_middlewares() throws Exception {
+        HttpURLConnection connection = TestUtils.getResponse(new URL(server.url("async/middleware")), HttpMethod.GET);
+
+        Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+        Assert.assertEquals("async", TestUtils.readResponseBody(connection.getContent()));
+        Assert.assertEquals("Route middleware should run", "true", connection.getHeaderField("X-Route"));
+    }
+
+    @Test(timeout = 5000)
+    public void request_timed_out_stage() throws Exception {
+        try {
+            TestUtils.getResponse(new URL(server.url("async/never")), HttpMethod.GET).getResponseCode();
+        } catch (IOException ignored) {
+            //The connection is closed without a response
+        }
+
+        Assert.assertTrue("Pending stage should be cancelled on timeout", neverCompleted.isCancelled());
+    }
+
+    @AfterClass
+    public static void close() throws InterruptedException {
+        server.close();
+        downstream.shutdownNow();
+    }
+}
@@ -0,0 +1,98 @@
+package core.models.server.GET_requests;
+
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.models.header.Header;
+import com.github.magic.core.models.header.Headers;
+import core.models.server.HttpTest;
+import org.junit.Assert;
+import org.junit.Test;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public class ConditionalGetTest extends HttpTest {
+
+    private static HttpURLConnection request(String headerName, String headerValue, String range) throws IOException {
+        Headers headers = new Headers();
+
+        if (headerName != null)
+            headers.add(new Header(headerName, headerValue));
+
+        if (range != null)
+            headers.add(new Header("Range", range));
+
+        return TestUtils.getResponse(new URL(BASE_URL + "image.png"), HttpMethod.GET, headers);
+    }
+
+    @Test(timeout = 5000)
+    public void request_if_none_match() {
+        try {
+            String etag = request(null, null, null).getHeaderField("ETag");
+            Assert.assertNotNull("Static files should have an ETag", etag);
+
+            HttpURLConnection connection = request("If-None-Match", "\"other\", " + etag, null);
+
+            Assert.assertEquals("Status code should be 304", HttpCode.NOT_MODIFIED, connection.getResponseCode());
+            Assert.assertEquals("ETag should be sent again", etag, connection.getHeaderField("ETag"));
+
+            connection = request("If-None-Match", "\"other\"", null);
+            Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_vary_accept_encoding() {
+        try {
+            HttpURLConnection connection = request(null, null, null);
+            String etag = connection.getHeaderField("ETag");
+
+            Assert.assertEquals("Identity content should vary on the encoding", "Accept-Encoding", connection.getHeaderField("Vary"));
+
+            connection = request("Accept-Encoding", "gzip", null);
+            Assert.assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+            Assert.assertEquals("Encoded content should vary on the encoding", "Accept-Encoding", connection.getHeaderField("Vary"));
+
+            connection = request("If-None-Match", etag, null);
+            Assert.assertEquals("Status code should be 304", HttpCode.NOT_MODIFIED, connection.getResponseCode());
+            Assert.assertEquals("Not modified response should vary on the encoding", "Accept-Encoding", connection.getHeaderField("Vary"));
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_if_modified_since() {
+        try {
+            String lastModified = request(null, null, null).getHeaderField("Last-Modified");
+
+            HttpURLConnection connection = request("If-Modified-Since", lastModified, null);
+            Assert.assertEquals("Status code should be 304", HttpCode.NOT_MODIFIED, connection.getResponseCode());
+
+            connection = request("If-Modified-Since", "Thu, 01 Jan 1970 00:00:00 GMT", null);
+            Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_if_range() {
+        try {
+            String etag = request(null, null, null).getHeaderField("ETag");
+
+            HttpURLConnection connection = request("If-Range", etag, "bytes=0-9");
+            Assert.assertEquals("Status code should be 206", HttpCode.PARTIAL_CONTENT, connection.getResponseCode());
+
+            connection = request("If-Range", "\"outdated\"", "bytes=0-9");
+            Assert.assertEquals("Outdated copy should get the whole file", HttpCode.OK, connection.getResponseCode());
+            Assert.assertNull(connection.getHeaderField("Content-Range"));
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+}
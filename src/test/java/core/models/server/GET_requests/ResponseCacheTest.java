@@ -0,0 +1,109 @@
+package core.models.server.GET_requests;
+
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.models.header.Header;
+import com.github.magic.core.models.header.Headers;
+import core.models.server.HttpTest;
+import org.junit.Assert;
+import org.junit.Test;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class ResponseCacheTest extends HttpTest {
+
+    private static String request(String path, String language) throws IOException {
+        Headers headers = new Headers();
+
+        if (language != null)
+            headers.add(new Header("Accept-Language", language));
+
+        HttpURLConnection connection = TestUtils.getResponse(new URL(BASE_URL + path), HttpMethod.GET, headers);
+
+        Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+        return TestUtils.readResponseBody(connection.getContent());
+    }
+
+    @Test(timeout = 5000)
+    public void request_cached_response() {
+        try {
+            String first = request("cached?page=1", null);
+            HttpURLConnection connection = TestUtils.getResponse(new URL(BASE_URL + "cached?page=1"), HttpMethod.GET);
+
+            Assert.assertEquals("Cached response should be replayed", first, TestUtils.readResponseBody(connection.getContent()));
+            Assert.assertNotNull("Replayed response should have an Age", connection.getHeaderField("Age"));
+            Assert.assertEquals("Content-Length should be kept", first.length(), Integer.parseInt(connection.getHeaderField("Content-Length")));
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_cached_response_keyed_on_query_and_vary_header() {
+        try {
+            String first = request("cached?page=2", "en");
+
+            Assert.assertEquals(first, request("cached?page=2", "en"));
+            Assert.assertNotEquals("Query should be part of the key", first, request("cached?page=3", "en"));
+            Assert.assertNotEquals("Vary header should be part of the key", first, request("cached?page=2", "fr"));
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_cached_compressed_response() {
+        try {
+            String first = request("cached/large", null);
+            Headers headers = new Headers();
+
+            headers.add(new Header("Accept-Encoding", "gzip"));
+
+            for (int i = 0; i < 2; i++) {
+                HttpURLConnection connection = TestUtils.getResponse(new URL(BASE_URL + "cached/large"), HttpMethod.GET, headers);
+
+                Assert.assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+
+                try (InputStream in = new GZIPInputStream(connection.getInputStream())) {
+                    Assert.assertEquals("Cached response should be replayed compressed", first, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_with_cookie_not_cached() {
+        try {
+            Headers headers = new Headers();
+
+            headers.add(new Header("Cookie", "session=a"));
+
+            String first = TestUtils.readResponseBody(TestUtils.getResponse(new URL(BASE_URL + "cached?page=4"), HttpMethod.GET, headers).getContent());
+            String second = TestUtils.readResponseBody(TestUtils.getResponse(new URL(BASE_URL + "cached?page=4"), HttpMethod.GET, headers).getContent());
+
+            Assert.assertNotEquals("Response to a request with cookies shouldn't be cached", first, second);
+            Assert.assertNotEquals("Response to a request with cookies shouldn't be replayed", first, request("cached?page=4", null));
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_no_store_response() {
+        try {
+            String first = request("cached/uncacheable", null);
+
+            Assert.assertNotEquals("no-store response shouldn't be cached", first, request("cached/uncacheable", null));
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+}
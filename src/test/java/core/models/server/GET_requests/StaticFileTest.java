@@ -0,0 +1,83 @@
+package core.models.server.GET_requests;
+
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.models.header.Header;
+import com.github.magic.core.models.header.Headers;
+import core.models.server.HttpTest;
+import org.junit.Assert;
+import org.junit.Test;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.github.magic.core.config.Config.STATIC_DIR;
+
+public class StaticFileTest extends HttpTest {
+    private static final Path IMAGE_PATH = Path.of(STATIC_DIR, "img.png");
+
+    @Test(timeout = 5000)
+    public void request_whole_file() {
+        try {
+            HttpURLConnection connection = TestUtils.getResponse(new URL(BASE_URL + "image.png"), HttpMethod.GET);
+
+            Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+
+            byte[] expected = Files.readAllBytes(IMAGE_PATH);
+            byte[] actual;
+
+            try (InputStream in = connection.getInputStream()) {
+                actual = in.readAllBytes();
+            }
+
+            Assert.assertEquals("Content-Length should be the file size", expected.length, connection.getContentLengthLong());
+            Assert.assertArrayEquals("Content should be the file", expected, actual);
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_byte_range() {
+        try {
+            Headers headers = new Headers();
+            headers.add(new Header("Range", "bytes=100-199"));
+
+            HttpURLConnection connection = TestUtils.getResponse(new URL(BASE_URL + "image.png"), HttpMethod.GET, headers);
+
+            Assert.assertEquals("Status code should be 206", HttpCode.PARTIAL_CONTENT, connection.getResponseCode());
+
+            byte[] expected = Arrays.copyOfRange(Files.readAllBytes(IMAGE_PATH), 100, 200);
+            byte[] actual;
+
+            try (InputStream in = connection.getInputStream()) {
+                actual = in.readAllBytes();
+            }
+
+            Assert.assertEquals("bytes 100-199/" + Files.size(IMAGE_PATH), connection.getHeaderField("Content-Range"));
+            Assert.assertArrayEquals("Content should be the requested range", expected, actual);
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_unsatisfiable_range() {
+        try {
+            Headers headers = new Headers();
+            headers.add(new Header("Range", "bytes=99999999-"));
+
+            HttpURLConnection connection = TestUtils.getResponse(new URL(BASE_URL + "image.png"), HttpMethod.GET, headers);
+
+            Assert.assertEquals("Status code should be 416", HttpCode.RANGE_NOT_SATISFIABLE, connection.getResponseCode());
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+}
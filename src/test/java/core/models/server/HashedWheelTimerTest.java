@@ -0,0 +1,54 @@
+package core.models.server;
+
+import com.github.magic.core.models.server.HashedWheelTimer;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HashedWheelTimerTest {
+    private static HashedWheelTimer timer;
+
+    @BeforeClass
+    public static void initTimer() {
+        //Small wheel, so that the timeouts below need more than one rotation
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, Executors.newSingleThreadExecutor());
+    }
+
+    @Test(timeout = 5000)
+    public void expired_task_should_run() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        HashedWheelTimer.Timeout timeout = timer.schedule(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue("Task should be run", latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue("Task shouldn't be run before its deadline", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+        Assert.assertTrue("Timeout should be marked as expired", timeout.isExpired());
+    }
+
+    @Test(timeout = 5000)
+    public void cancelled_task_should_not_run() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+
+        HashedWheelTimer.Timeout timeout = timer.schedule(counter::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue("First cancel should succeed", timeout.cancel());
+        Assert.assertFalse("Second cancel should have no effect", timeout.cancel());
+
+        Thread.sleep(300);
+
+        Assert.assertEquals("Cancelled task shouldn't be run", 0, counter.get());
+        Assert.assertTrue(timeout.isCancelled());
+    }
+
+    @AfterClass
+    public static void stopTimer() {
+        timer.stop();
+    }
+}
@@ -1,18 +1,22 @@
 package core.models.server;
 
+import com.github.magic.core.middleware.Middleware;
+import com.github.magic.core.middleware.ResponseCache;
 import com.github.magic.core.models.server.Server;
 import com.github.magic.core.path_handler.StaticFileHandler;
 import org.junit.*;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import test_utils.StandaloneServer;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @FixMethodOrder()
 @RunWith(JUnit4.class)
 public class HttpTest{
-    public final static int HTTP_PORT = 3000;
     public final static Path PROJECT_ROOT;
 
     static{
@@ -20,17 +24,13 @@ public class HttpTest{
         PROJECT_ROOT = currentPath.getParent().getParent().getParent().getParent();
     }
 
-    private static Thread serverThread;
-    private static boolean isServerStarted = false; //This is to prevent the server being boot up multiple times
-    public static final String BASE_URL = "http://localhost:" + HTTP_PORT + "/";
+    //Each test class gets its own server, on a port picked by the system
+    protected static StandaloneServer server;
+    public static String BASE_URL;
 
     @BeforeClass
-    public static void initServer(){
-        if (isServerStarted) return;
-
-        isServerStarted = true;
-
-        Server app = new Server(HTTP_PORT);
+    public static void initServer() throws IOException, InterruptedException {
+        Server app = new Server(0);
 
         //Root path
         app.get("/", (req, res) -> {
@@ -99,9 +99,26 @@ public class HttpTest{
         //For testing encoding
         app.get("/image.png", new StaticFileHandler("./img.png"));
 
-        serverThread = new Thread(app);
-        serverThread.setDaemon(true);
-        serverThread.start();
+        //For testing the response cache, the counter tells how many times the handler ran
+        AtomicInteger handlerCalls = new AtomicInteger();
+        Middleware[] responseCache = {new ResponseCache("Accept-Language")};
+
+        app.get("/cached", responseCache, (req, res) -> {
+            res.send("call " + handlerCalls.incrementAndGet());
+        });
+
+        //Large enough to be compressed
+        app.get("/cached/large", responseCache, (req, res) -> {
+            res.send(("call " + handlerCalls.incrementAndGet() + " ").repeat(10000));
+        });
+
+        app.get("/cached/uncacheable", responseCache, (req, res) -> {
+            res.setHeader("Cache-Control", "no-store");
+            res.send("call " + handlerCalls.incrementAndGet());
+        });
+
+        server = StandaloneServer.start(app);
+        BASE_URL = server.url("");
     }
 
     @Test
@@ -110,7 +127,7 @@ public class HttpTest{
     }
 
     @AfterClass
-    public static void close(){
-        serverThread.interrupt();
+    public static void close() throws InterruptedException {
+        server.close();
     }
 }
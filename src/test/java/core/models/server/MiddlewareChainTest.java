@@ -0,0 +1,117 @@
+package core.models.server;
+
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.middleware.Middleware;
+import com.github.magic.core.models.server.Server;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import test_utils.StandaloneServer;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MiddlewareChainTest {
+    private static final AtomicInteger middlewareCalls = new AtomicInteger();
+    private static final AtomicInteger stalledCalls = new AtomicInteger();
+
+    private static StandaloneServer server;
+
+    @BeforeClass
+    public static void initServer() throws IOException, InterruptedException {
+        Server app = new Server(0);
+
+        app.use((req, res, next) -> {
+            res.setHeader("X-Global", "true");
+            next.next();
+        });
+
+        //Slow enough for the requests to go through the chain at the same time
+        Middleware[] middlewares = {
+                (req, res, next) -> {
+                    middlewareCalls.incrementAndGet();
+                    Thread.sleep(50);
+                    next.next();
+                },
+                (req, res, next) -> {
+                    res.setHeader("X-Route", "true");
+                    next.next();
+                }
+        };
+
+        app.get("/chain", middlewares, (req, res) -> {
+            res.send("handler");
+        });
+
+        app.get("/served", new Middleware[]{(req, res, next) -> res.send("middleware")}, (req, res) -> {
+            res.send("handler");
+        });
+
+        app.get("/stalled", new Middleware[]{(req, res, next) -> stalledCalls.incrementAndGet()}, (req, res) -> {
+            res.send("handler");
+        });
+
+        server = StandaloneServer.start(app);
+    }
+
+    @Test(timeout = 5000)
+    public void request_concurrent_chains() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+
+        try {
+            List<Future<HttpURLConnection>> responses = new ArrayList<>();
+
+            for (int i = 0; i < 10; i++)
+                responses.add(executor.submit(() -> TestUtils.getResponse(new URL(server.url("chain")), HttpMethod.GET)));
+
+            for (Future<HttpURLConnection> response : responses) {
+                HttpURLConnection connection = response.get();
+
+                Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+                Assert.assertEquals("handler", TestUtils.readResponseBody(connection.getContent()));
+                Assert.assertEquals("Global middleware should run", "true", connection.getHeaderField("X-Global"));
+                Assert.assertEquals("Route middleware should run", "true", connection.getHeaderField("X-Route"));
+            }
+
+            Assert.assertEquals("Every middleware should run once per request", 10, middlewareCalls.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_served_by_middleware() throws Exception {
+        HttpURLConnection connection = TestUtils.getResponse(new URL(server.url("served")), HttpMethod.GET);
+
+        Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+        Assert.assertEquals("Handler should be skipped", "middleware", TestUtils.readResponseBody(connection.getContent()));
+        Assert.assertEquals("Global middleware should run", "true", connection.getHeaderField("X-Global"));
+    }
+
+    @Test(timeout = 5000)
+    public void request_stalled_by_middleware() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write("GET /stalled HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+            Assert.assertEquals("Connection should be closed without a response", -1, socket.getInputStream().read());
+            Assert.assertEquals("Middleware should only be called once", 1, stalledCalls.get());
+        }
+    }
+
+    @AfterClass
+    public static void close() throws InterruptedException {
+        server.close();
+    }
+}
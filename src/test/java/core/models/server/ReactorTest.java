@@ -0,0 +1,100 @@
+package core.models.server;
+
+import com.github.magic.core.config.ServerConfig;
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.consts.ServingMode;
+import com.github.magic.core.models.routing_tries.URITries;
+import com.github.magic.core.models.server.Server;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import test_utils.StandaloneServer;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class ReactorTest {
+    private static StandaloneServer server;
+
+    @BeforeClass
+    public static void initServer() throws IOException, InterruptedException {
+        ServerConfig config = new ServerConfig();
+        config.setServingMode(ServingMode.REACTOR);
+        config.setEventLoopCount(2);
+
+        Server app = new Server(0, new URITries(), config);
+
+        app.get("/", (req, res) -> res.send("root"));
+        app.get("/:data", (req, res) -> res.send(req.params.get("data")));
+        app.post("/echo", (req, res) -> res.send(req.body(StandardCharsets.UTF_8)));
+
+        server = StandaloneServer.start(app);
+    }
+
+    @Test(timeout = 5000)
+    public void request_root_path() {
+        try {
+            HttpURLConnection connection = TestUtils.getResponse(new URL(server.url("")), HttpMethod.GET);
+            String responseBody = TestUtils.readResponseBody(connection.getContent());
+
+            Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+            Assert.assertEquals("Content should be 'root'", "root", responseBody);
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void pipelined_requests_on_one_connection() {
+        String request = "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                       + "GET /second HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            String response = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+
+            Assert.assertTrue("First response should be served", response.contains("\r\n\r\nfirst"));
+            Assert.assertTrue("Second response should be served", response.endsWith("\r\n\r\nsecond"));
+        } catch (IOException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void chunked_body_sent_slowly() {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write("POST /echo HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n5\r\nhello\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            //The rest of the body arrives later, the event loop keeps buffering it meanwhile
+            Thread.sleep(200);
+            out.write("6\r\n world\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+
+            Assert.assertTrue("Chunks should be decoded", response.endsWith("\r\n\r\nhello world"));
+        } catch (IOException | InterruptedException e) {
+            Assert.fail("Exception raised: " + e.getMessage());
+        }
+    }
+
+    @AfterClass
+    public static void close() throws InterruptedException {
+        server.close();
+    }
+}
@@ -0,0 +1,120 @@
+package core.models.server;
+
+import com.github.magic.core.config.ServerConfig;
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.models.routing_tries.URITries;
+import com.github.magic.core.models.server.Server;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import test_utils.StandaloneServer;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class RequestBodyTest {
+    private static StandaloneServer server;
+
+    @BeforeClass
+    public static void initServer() throws IOException, InterruptedException {
+        ServerConfig config = new ServerConfig();
+        config.setMaximumRequestBodySize(1024);
+
+        Server app = new Server(0, new URITries(), config);
+
+        app.post("/echo", (req, res) -> {
+            res.send(req.body(StandardCharsets.UTF_8));
+        });
+
+        //Doesn't read the body, which must be skipped before the next request
+        app.post("/ignore", (req, res) -> {
+            res.send("ignored");
+        });
+
+        server = StandaloneServer.start(app);
+    }
+
+    private static HttpURLConnection post(String path, String body, boolean chunked) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.url(path)).openConnection();
+
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+
+        if (chunked)
+            connection.setChunkedStreamingMode(100);
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return connection;
+    }
+
+    @Test(timeout = 5000)
+    public void request_content_length_body() throws IOException {
+        HttpURLConnection connection = post("echo", "hello world", false);
+
+        Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+        Assert.assertEquals("hello world", TestUtils.readResponseBody(connection.getContent()));
+    }
+
+    @Test(timeout = 5000)
+    public void request_chunked_body() throws IOException {
+        String body = "chunk".repeat(100);
+        HttpURLConnection connection = post("echo", body, true);
+
+        Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+        Assert.assertEquals("Chunks should be decoded", body, TestUtils.readResponseBody(connection.getContent()));
+    }
+
+    @Test(timeout = 5000)
+    public void request_unread_body() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            HttpURLConnection connection = post("ignore", "unread body " + i, false);
+
+            Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+            Assert.assertEquals("ignored", TestUtils.readResponseBody(connection.getContent()));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_body_too_large() throws IOException {
+        HttpURLConnection connection = post("echo", "a".repeat(2048), false);
+
+        Assert.assertEquals("Status code should be 413", HttpCode.CONTENT_TOO_LARGE, connection.getResponseCode());
+    }
+
+    @Test(timeout = 5000)
+    public void request_chunked_body_too_large() throws IOException {
+        HttpURLConnection connection = post("echo", "a".repeat(2048), true);
+
+        Assert.assertEquals("Status code should be 413", HttpCode.CONTENT_TOO_LARGE, connection.getResponseCode());
+    }
+
+    @Test(timeout = 5000)
+    public void request_malformed_chunked_body() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+
+            out.write(("POST /echo HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                     + "+5\r\nhello\r\n0\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+
+            Assert.assertTrue("Status code should be 400", response.startsWith("HTTP/1.1 400"));
+            Assert.assertTrue("Connection should be closed", response.toLowerCase().contains("connection: close"));
+        }
+    }
+
+    @AfterClass
+    public static void close() throws InterruptedException {
+        server.close();
+    }
+}
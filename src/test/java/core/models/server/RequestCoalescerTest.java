@@ -0,0 +1,126 @@
+package core.models.server;
+
+import com.github.magic.core.config.ServerConfig;
+import com.github.magic.core.consts.HttpCode;
+import com.github.magic.core.consts.HttpMethod;
+import com.github.magic.core.models.routing_tries.URITries;
+import com.github.magic.core.models.server.Server;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import test_utils.StandaloneServer;
+import test_utils.TestUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescerTest {
+    private static final AtomicInteger handlerCalls = new AtomicInteger();
+    private static final AtomicInteger cookieCalls = new AtomicInteger();
+
+    private static StandaloneServer server;
+
+    @BeforeClass
+    public static void initServer() throws IOException, InterruptedException {
+        ServerConfig config = new ServerConfig();
+        config.setRequestCoalescing(true);
+
+        Server app = new Server(0, new URITries(), config);
+
+        //Slow enough for every request to arrive while the first one is in flight
+        app.get("/slow", (req, res) -> {
+            int call = handlerCalls.incrementAndGet();
+
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException ignored) {}
+
+            res.send("call " + call);
+        });
+
+        //Sets a personal cookie, which mustn't be handed to the other requests
+        app.get("/cookie", (req, res) -> {
+            int call = cookieCalls.incrementAndGet();
+
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException ignored) {}
+
+            res.setHeader("Set-Cookie", "session=" + call);
+            res.send("call " + call);
+        });
+
+        server = StandaloneServer.start(app);
+    }
+
+    @Test(timeout = 5000)
+    public void request_concurrent_identical_requests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+
+            for (int i = 0; i < 5; i++) {
+                responses.add(executor.submit(() -> {
+                    HttpURLConnection connection = TestUtils.getResponse(new URL(server.url("slow")), HttpMethod.GET);
+
+                    Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+                    return TestUtils.readResponseBody(connection.getContent());
+                }));
+            }
+
+            Set<String> bodies = new HashSet<>();
+
+            for (Future<String> response : responses)
+                bodies.add(response.get());
+
+            Assert.assertEquals("Every request should get the same response", 1, bodies.size());
+            Assert.assertEquals("Handler should only be called once", 1, handlerCalls.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void request_concurrent_requests_setting_cookies() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+
+            for (int i = 0; i < 3; i++) {
+                responses.add(executor.submit(() -> {
+                    HttpURLConnection connection = TestUtils.getResponse(new URL(server.url("cookie")), HttpMethod.GET);
+
+                    Assert.assertEquals("Status code should be 200", HttpCode.OK, connection.getResponseCode());
+                    return connection.getHeaderField("Set-Cookie");
+                }));
+            }
+
+            Set<String> cookies = new HashSet<>();
+
+            for (Future<String> response : responses)
+                cookies.add(response.get());
+
+            Assert.assertEquals("Every request should get its own cookie", 3, cookies.size());
+            Assert.assertEquals("Handler should be called for every request", 3, cookieCalls.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @AfterClass
+    public static void close() throws InterruptedException {
+        server.close();
+    }
+}
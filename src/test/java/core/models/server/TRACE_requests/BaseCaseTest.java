@@ -14,7 +14,6 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 
 import static core.models.server.HttpTest.BASE_URL;
-import static core.models.server.HttpTest.HTTP_PORT;
 
 public class BaseCaseTest extends HttpTest {
     @Test(timeout = 5000)
@@ -22,7 +21,7 @@ public class BaseCaseTest extends HttpTest {
         try {
             Headers headers = new Headers();
 
-            headers.add(new Header("Host", "localhost:" + HTTP_PORT));
+            headers.add(new Header("Host", "localhost:" + server.getPort()));
             headers.add(new Header("Max-Forwards", "5"));
 
             HttpURLConnection connection = TestUtils.getResponse(new URL(BASE_URL), HttpMethod.TRACE, headers);
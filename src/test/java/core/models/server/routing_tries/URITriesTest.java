@@ -4,6 +4,9 @@ import com.github.magic.core.consts.HttpMethod;
 import com.github.magic.core.models.routing_tries.URITries;
 import junit.framework.TestCase;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class URITriesTest extends TestCase {
 
     public void testGet() {
@@ -58,6 +61,112 @@ public class URITriesTest extends TestCase {
         assertNull(testTries.find(HttpMethod.GET, "/wildeard/manager/3/it_manager/Luna").handler());
     }
 
+    public void testGetRegex() {
+        URITries testTries = new URITries();
+
+        testTries.get("/files/index.html", null, (req, res) -> res.send("index"));
+        testTries.get("/users/:id(^\\d+$)", null, (req, res) -> res.send(req.params.get("id")));
+        testTries.get("/codes/^[a-z]{3}$", null, (req, res) -> res.send("code"));
+
+        //The dot of a literal isn't a regex wildcard
+        assertNotNull(testTries.find(HttpMethod.GET, "/files/index.html").handler());
+        assertNull(testTries.find(HttpMethod.GET, "/files/indexXhtml").handler());
+
+        //Route parameter with regex
+        assertEquals("42", testTries.find(HttpMethod.GET, "/users/42").params().get("id"));
+        assertNull(testTries.find(HttpMethod.GET, "/users/abc").handler());
+
+        //Regex token
+        assertNotNull(testTries.find(HttpMethod.GET, "/codes/abc").handler());
+        assertNull(testTries.find(HttpMethod.GET, "/codes/abcd").handler());
+    }
+
+    public void testLookup() {
+        URITries testTries = new URITries();
+
+        //Registered before the literal, yet the literal takes precedence
+        testTries.get("/users/:id", null, (req, res) -> res.send("user"));
+        testTries.get("/users/me", null, (req, res) -> res.send("me"));
+        testTries.post("/users/:id", null, (req, res) -> res.send("update"));
+
+        assertTrue(testTries.find(HttpMethod.GET, "/users/me").params().isEmpty());
+        assertEquals("42", testTries.find(HttpMethod.GET, "/users/42").params().get("id"));
+
+        //Each method has its own routes
+        assertNotNull(testTries.find(HttpMethod.POST, "/users/42").handler());
+        assertNull(testTries.find(HttpMethod.PUT, "/users/42").handler());
+
+        //Compressed chain of literals, the nodes in between have no handler
+        testTries.get("/api/v1/items/list", null, (req, res) -> res.send("list"));
+
+        assertNotNull(testTries.find(HttpMethod.GET, "/api/v1/items/list").handler());
+        assertNull(testTries.find(HttpMethod.GET, "/api/v1").handler());
+        assertNull(testTries.find(HttpMethod.GET, "/api/v2/items/list").handler());
+
+        //Routes registered after a lookup are found as well
+        for (int i = 0; i < 2000; i++)
+            testTries.get("/route" + i + "/:param", null, (req, res) -> res.send("route"));
+
+        assertEquals("value", testTries.find(HttpMethod.GET, "/route1999/value").params().get("param"));
+    }
+
+    public void testLookupWithoutParams() {
+        URITries testTries = new URITries();
+
+        testTries.get("/static/page", null, (req, res) -> res.send("page"));
+        testTries.get("/items/:id/*", null, (req, res) -> res.send("item"));
+
+        //Nothing is allocated for a route without params, the same result is handed out
+        assertSame(testTries.find(HttpMethod.GET, "/static/page"), testTries.find(HttpMethod.GET, "static/page/"));
+        assertNotNull(testTries.find(HttpMethod.GET, " //static/page// ").handler());
+        assertTrue(testTries.find(HttpMethod.GET, "/static/page").params().isEmpty());
+
+        //Params and wildcard path are cut out of the path
+        assertEquals("7", testTries.find(HttpMethod.GET, "/items/7/a//b").params().get("id"));
+        assertEquals("/a//b", testTries.find(HttpMethod.GET, "/items/7/a//b").params().get("wildcard"));
+    }
+
+    public void testRemove() {
+        URITries testTries = new URITries();
+
+        testTries.get("/tenants/:id/orders", null, (req, res) -> res.send("orders"));
+        testTries.get("/tenants/:id", null, (req, res) -> res.send("tenant"));
+
+        assertTrue(testTries.remove(HttpMethod.GET, "/tenants/:id/orders"));
+        assertFalse("Already removed", testTries.remove(HttpMethod.GET, "/tenants/:id/orders"));
+
+        assertNull(testTries.find(HttpMethod.GET, "/tenants/1/orders").handler());
+        assertNotNull("The parent route stays", testTries.find(HttpMethod.GET, "/tenants/1").handler());
+    }
+
+    public void testRegisterWhileLookingUp() throws InterruptedException {
+        URITries testTries = new URITries();
+        testTries.get("/stable/:id", null, (req, res) -> res.send("stable"));
+
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+
+        Thread reader = new Thread(() -> {
+            while (isRunning.get()) {
+                if (testTries.find(HttpMethod.GET, "/stable/1").handler() == null)
+                    misses.incrementAndGet();
+            }
+        });
+
+        reader.start();
+
+        for (int i = 0; i < 500; i++) {
+            testTries.get("/tenant" + i + "/:id", null, (req, res) -> res.send("tenant"));
+            testTries.remove(HttpMethod.GET, "/tenant" + (i / 2) + "/:id");
+        }
+
+        isRunning.set(false);
+        reader.join();
+
+        assertEquals("Lookups should never see a half-registered trie", 0, misses.get());
+        assertNotNull(testTries.find(HttpMethod.GET, "/tenant499/2").handler());
+    }
+
     public void testPost() {
     }
 
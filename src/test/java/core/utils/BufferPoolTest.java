@@ -0,0 +1,67 @@
+package core.utils;
+
+import com.github.magic.core.config.Config;
+import com.github.magic.core.utils.BufferPool;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void test_sizeClasses() {
+        BufferPool pool = BufferPool.heap();
+
+        try (BufferPool.PooledBuffer small = pool.acquire(1);
+             BufferPool.PooledBuffer medium = pool.acquire(BufferPool.MINIMUM_SIZE + 1)) {
+            assertEquals(BufferPool.MINIMUM_SIZE, small.capacity());
+            assertEquals(BufferPool.MINIMUM_SIZE * 2, medium.capacity());
+        }
+    }
+
+    @Test
+    public void test_releasedBufferIsReused() {
+        BufferPool pool = BufferPool.heap();
+
+        BufferPool.PooledBuffer first = pool.acquire(100);
+        first.buffer().put((byte) 1);
+        first.release();
+
+        long hits = pool.metrics().hits();
+
+        try (BufferPool.PooledBuffer second = pool.acquire(100)) {
+            assertSame("Same thread should get its buffer back", first.buffer(), second.buffer());
+            assertEquals("Buffer should be cleared", 0, second.buffer().position());
+            assertEquals(hits + 1, pool.metrics().hits());
+        }
+    }
+
+    @Test
+    public void test_largeBufferIsUnpooled() {
+        BufferPool pool = BufferPool.direct();
+        long unpooled = pool.metrics().unpooled();
+
+        try (BufferPool.PooledBuffer large = pool.acquire(Config.BODY_BUFFER_SIZE + 1)) {
+            assertTrue(large.buffer().isDirect());
+            assertEquals(Config.BODY_BUFFER_SIZE + 1, large.capacity());
+            assertEquals(unpooled + 1, pool.metrics().unpooled());
+        }
+    }
+
+    @Test
+    public void test_releaseTwice() {
+        BufferPool.PooledBuffer buffer = BufferPool.heap().acquire(10);
+        int outstanding = BufferPool.heap().metrics().outstanding();
+
+        buffer.release();
+
+        try {
+            buffer.release();
+            assertTrue("Double release should only be ignored without leak detection", !Config.BUFFER_LEAK_DETECTION);
+        } catch (IllegalStateException e) {
+            assertTrue(Config.BUFFER_LEAK_DETECTION);
+        }
+
+        assertEquals("Buffer should only be given back once", outstanding - 1, BufferPool.heap().metrics().outstanding());
+    }
+}
@@ -0,0 +1,63 @@
+package core.utils;
+
+import com.github.magic.core.utils.HttpDateClock;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class HttpDateClockTest {
+    @Test
+    public void test_format() {
+        assertEquals("Sun, 09 Sep 2001 01:46:40 UTC", HttpDateClock.format(1_000_000_000_000L));
+    }
+
+    @Test
+    public void test_nowIsCachedWithinSecond() {
+        //Retry in the unlikely case the second changes between both calls
+        for (int i = 0; i < 3; i++) {
+            long second = System.currentTimeMillis() / 1000;
+            String first = HttpDateClock.now();
+            String again = HttpDateClock.now();
+
+            if (System.currentTimeMillis() / 1000 == second) {
+                assertSame(first, again);
+                assertEquals(HttpDateClock.format(second * 1000), first);
+                return;
+            }
+        }
+    }
+
+    @Test
+    public void test_dateHeaderMatchesNow() {
+        assertEquals("Date", HttpDateClock.dateHeader().getKey());
+        assertNotNull(HttpDateClock.dateHeader().getValue());
+    }
+
+    @Test
+    public void test_lastModifiedFollowsFileChanges() throws IOException {
+        File file = Files.createTempFile("magic", ".txt").toFile();
+
+        try {
+            Files.write(file.toPath(), "a".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(file.setLastModified(1000));
+            assertEquals("Thu, 01 Jan 1970 00:00:01 UTC", HttpDateClock.lastModified(file));
+
+            assertTrue(file.setLastModified(2000));
+            assertEquals("Thu, 01 Jan 1970 00:00:02 UTC", HttpDateClock.lastModified(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void test_parse() {
+        assertEquals(1000, HttpDateClock.parse("Thu, 01 Jan 1970 00:00:01 UTC"));
+        assertEquals(2000, HttpDateClock.parse("Thu, 01 Jan 1970 00:00:02 GMT"));
+        assertEquals(-1, HttpDateClock.parse("yesterday"));
+    }
+}
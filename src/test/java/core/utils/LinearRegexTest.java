@@ -0,0 +1,64 @@
+package core.utils;
+
+import com.github.magic.core.utils.LinearRegex;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LinearRegexTest {
+    private static final String[] REGEXES = {
+            "[0-9]+", "^[0-9]+$", "\\d{2,4}", "^\\w+@\\w+\\.com$", "[^/]+", "a|b|", "(ab|cd)*e", "(?:x|y){3}", "colou?r",
+            "^$", "[a-c-]x", "[\\d\\s]", "[^\\D]", "\\.", "a.c", "^(a+)+$", "[A-Z][a-z]*?", "gmail\\.com$", "^abc|xyz$", "a{2,}"
+    };
+
+    private static final String[] INPUTS = {
+            "", "123", "ab12", "12345", "magic@gmail.com", "magic-gmail.com", "ababcde", "xyxyx", "color", "colour",
+            "-x", "bx", " ", "a\nc", "abc", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab", "Hello", "abc\n", "漢字", "😀x"
+    };
+
+    @Test
+    public void testSameAsPattern() {
+        for (String regex : REGEXES) {
+            LinearRegex linear = LinearRegex.compile(regex);
+            Pattern pattern = Pattern.compile(regex);
+
+            assertTrue(regex, linear.isLinear());
+
+            for (String input : INPUTS)
+                assertEquals(regex + " / " + input, pattern.matcher(input).find(), linear.find(input));
+        }
+    }
+
+    @Test
+    public void testRegion() {
+        LinearRegex linear = LinearRegex.compile("^[0-9]+$");
+
+        assertTrue(linear.find("/user/123/", 6, 9));
+        assertFalse(linear.find("/user/123a/", 6, 10));
+    }
+
+    @Test
+    public void testFallback() {
+        //Back references and lookarounds can't be matched by an automaton
+        LinearRegex backReference = LinearRegex.compile("(a)\\1");
+        LinearRegex lookahead = LinearRegex.compile("a(?=b)");
+
+        assertFalse(backReference.isLinear());
+        assertTrue(backReference.find("xaa"));
+        assertFalse(lookahead.isLinear());
+        assertFalse(lookahead.find("ac"));
+    }
+
+    @Test(timeout = 2000)
+    public void testNoBacktracking() {
+        //Takes exponential time with java.util.regex
+        LinearRegex linear = LinearRegex.compile("^(a|aa)+$");
+
+        assertTrue(linear.isLinear());
+        assertFalse(linear.find("a".repeat(5000) + "b"));
+    }
+}
@@ -0,0 +1,88 @@
+package test_utils;
+
+import com.github.magic.core.models.server.Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * <p>A server started on its own thread for a single test class, listening on a port picked by the system so that test classes
+ * never compete for the same port.</p>
+ * <br>
+ * <p>Start it once the routes are registered, from {@code @BeforeClass}, and close it from {@code @AfterClass}</p>
+ */
+public class StandaloneServer {
+    private static final int STARTUP_TIMEOUT_DURATION = 5000; //5s to bind
+
+    private final Server app;
+    private final Thread serverThread;
+    private final int port;
+
+    private StandaloneServer(Server app, Thread serverThread, int port) {
+        this.app = app;
+        this.serverThread = serverThread;
+        this.port = port;
+    }
+
+    /**
+     * Listen on an ephemeral port, and wait until it accepts connections
+     *
+     * @param app the server, with its routes registered
+     * @return the started server
+     * @throws IOException if the server isn't accepting connections in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static StandaloneServer start(Server app) throws IOException, InterruptedException {
+        app.setPort(0);
+
+        Thread serverThread = new Thread(app);
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_DURATION;
+
+        while (System.currentTimeMillis() < deadline) {
+            int port = app.getLocalPort();
+
+            if (port > 0) {
+                try (Socket probe = new Socket()) {
+                    probe.connect(new InetSocketAddress("localhost", port), STARTUP_TIMEOUT_DURATION);
+                    return new StandaloneServer(app, serverThread, port);
+                } catch (IOException ignored) {
+                    //Bound, but not accepting yet
+                }
+            }
+
+            Thread.sleep(10);
+        }
+
+        app.close();
+        throw new IOException("Server isn't accepting connections after " + STARTUP_TIMEOUT_DURATION + "ms");
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param path the path, without the leading "/"
+     * @return the url of the path on this server
+     */
+    public String url(String path) {
+        return "http://localhost:" + port + "/" + path;
+    }
+
+    /**
+     * Close the server socket, and wait for the listening thread to return
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        app.close();
+        serverThread.join(STARTUP_TIMEOUT_DURATION);
+
+        if (serverThread.isAlive())
+            throw new IllegalStateException("Server is still listening on port " + port + " after being closed");
+    }
+}